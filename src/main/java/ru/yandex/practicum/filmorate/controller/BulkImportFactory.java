@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.service.BulkImport;
+
+import javax.validation.Validator;
+import java.io.InputStream;
+
+// тело запроса на импорт читается потоком, формат - по Content-Type: CSV или NDJSON
+@Component
+@RequiredArgsConstructor
+public class BulkImportFactory {
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType(BulkImport.TEXT_CSV_VALUE);
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    public BulkImport open(InputStream body, MediaType contentType) {
+        return new BulkImport(body, TEXT_CSV.includes(contentType), objectMapper, validator);
+    }
+}
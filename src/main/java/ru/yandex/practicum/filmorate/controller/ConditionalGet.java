@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.model.Projection;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// условный GET по ETag из версии ресурса: версия известна без чтения хранилища, поэтому при совпадении
+// с If-None-Match ответ 304 отдается без запросов к БД и сериализации
+final class ConditionalGet {
+    // фильмы меняются в любой момент, клиент каждый раз сверяет версию
+    static final CacheControl REVALIDATE = CacheControl.noCache();
+    // справочники меняются только с перезапуском приложения
+    static final CacheControl REFERENCE_DATA = CacheControl.maxAge(1, TimeUnit.HOURS);
+
+    private ConditionalGet() {
+    }
+
+    static String eTag(String resource, long version) {
+        return "\"" + resource + "-" + version + "\"";
+    }
+
+    // ответы с разными ?fields= и ?include= различаются, поэтому projection входит в тег.
+    // Имена полей и коллекций уже проверены по спискам известных, кавычек и запятых в них нет
+    static String eTag(String resource, long version, Projection projection) {
+        if (projection.getFields() == null) {
+            return eTag(resource, version);
+        }
+
+        return eTag(resource + "-fields." + sorted(projection.getFields())
+                + "-include." + sorted(projection.getRelations()), version);
+    }
+
+    // "*" совпадает с любой версией, поэтому годится только для ресурсов, которые существуют всегда
+    static boolean isNotModified(List<String> ifNoneMatch, String eTag) {
+        for (String clientETag : ifNoneMatch) {
+            // для If-None-Match теги сравниваются без учета признака W/
+            if (clientETag.equals("*") || clientETag.replaceFirst("^W/", "").equals(eTag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    static boolean matchesAnyVersion(List<String> ifNoneMatch) {
+        return ifNoneMatch.contains("*");
+    }
+
+    static ResponseEntity<Object> notModified(String eTag, CacheControl cacheControl) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(cacheControl).build();
+    }
+
+    static ResponseEntity<Object> ok(Object body, String eTag, CacheControl cacheControl) {
+        return ResponseEntity.ok().eTag(eTag).cacheControl(cacheControl).body(body);
+    }
+
+    private static String sorted(Set<String> names) {
+        return names.stream()
+                .sorted()
+                .collect(Collectors.joining("."));
+    }
+}
@@ -2,14 +2,27 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.LikeResult;
 import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.Projection;
+import ru.yandex.practicum.filmorate.service.BulkImport;
+import ru.yandex.practicum.filmorate.service.PageCursor;
+import ru.yandex.practicum.filmorate.service.Projections;
 import ru.yandex.practicum.filmorate.service.film.FilmService;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -18,17 +31,78 @@ import java.util.Map;
 @Slf4j
 public class FilmController {
     private final FilmService filmService;
+    private final NdjsonWriter ndjsonWriter;
+    private final BulkImportFactory bulkImportFactory;
+    private final ProjectionWriter projectionWriter;
 
+    // без параметров страницы отдается весь список, с ними - страница и курсор следующей в заголовке.
+    // fields - поля фильма в ответе, include - загружаемые коллекции genres и likes
     @GetMapping("/films")
-    public List<Film> getFilms() {
-        log.info("Получение списка фильмов");
-        return filmService.getFilms();
+    public ResponseEntity<Object> getFilms(@RequestParam(name = "limit", required = false) Integer limit,
+                                           @RequestParam(name = "cursor", required = false) String cursor,
+                                           @RequestParam(name = "fields", required = false) String fields,
+                                           @RequestParam(name = "include", required = false) String include) {
+        Projection projection = parseProjection(fields, include);
+
+        if (limit == null && cursor == null) {
+            log.info("Получение списка фильмов");
+            return ResponseEntity.ok(projectionWriter.write(filmService.getFilms(projection), projection));
+        }
+
+        log.info("Получение страницы фильмов: limit {}, курсор {}", limit, cursor);
+        Page<Film> page = filmService.getFilmsPage(cursor, limit == null ? PageCursor.DEFAULT_LIMIT : limit,
+                projection);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(PageCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(projectionWriter.write(page.getItems(), projection));
     }
 
+    @GetMapping("/films/export")
+    public WebAsyncTask<Void> exportFilms(HttpServletResponse response) {
+        log.info("Выгрузка всех фильмов в NDJSON");
+        return ndjsonWriter.stream(response, filmService::exportFilms);
+    }
+
+    // тело - поток NDJSON или CSV, в ответе число импортированных строк и ошибки по номерам строк
+    @PostMapping(value = "/films/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, BulkImport.TEXT_CSV_VALUE})
+    public ImportResult importFilms(InputStream body, @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) {
+        log.info("Импорт фильмов в формате {}", contentType);
+        return filmService.importFilms(bulkImportFactory.open(body, contentType));
+    }
+
+    @PostMapping(value = "/films/likes/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE,
+            BulkImport.TEXT_CSV_VALUE})
+    public ImportResult importLikes(InputStream body, @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) {
+        log.info("Импорт лайков в формате {}", contentType);
+        return filmService.importLikes(bulkImportFactory.open(body, contentType));
+    }
+
+    // ETag - версия фильма, с совпадающим If-None-Match фильм не читается из хранилища.
+    // If-None-Match: * совпадает с любой версией, но только существующего фильма: отсутствующий - 404
     @GetMapping("/films/{id}")
-    public Film getFilmById(@PathVariable(name = "id") Integer filmId) {
+    public ResponseEntity<Object> getFilmById(@PathVariable(name = "id") Integer filmId,
+                                              @RequestParam(name = "fields", required = false) String fields,
+                                              @RequestParam(name = "include", required = false) String include,
+                                              @RequestHeader HttpHeaders headers) {
         log.info("Получение фильма по id: {}", filmId);
-        return filmService.getFilmById(filmId);
+        Projection projection = parseProjection(fields, include);
+        String eTag = ConditionalGet.eTag("film-" + filmId, filmService.getFilmVersion(filmId), projection);
+        boolean anyVersion = ConditionalGet.matchesAnyVersion(headers.getIfNoneMatch());
+
+        if (!anyVersion && ConditionalGet.isNotModified(headers.getIfNoneMatch(), eTag)) {
+            return ConditionalGet.notModified(eTag, ConditionalGet.REVALIDATE);
+        }
+
+        Film film = filmService.getFilmById(filmId, projection);
+
+        if (anyVersion) {
+            return ConditionalGet.notModified(eTag, ConditionalGet.REVALIDATE);
+        }
+
+        return ConditionalGet.ok(projectionWriter.write(film, projection), eTag, ConditionalGet.REVALIDATE);
     }
 
     @PostMapping("/films")
@@ -57,30 +131,86 @@ public class FilmController {
     }
 
     @PutMapping("/films/{id}/like/{userId}")
-    public Film addLikeToFilm(@PathVariable(name = "id") Integer filmId,
-                              @PathVariable(name = "userId") Integer userId) {
+    public LikeResult addLikeToFilm(@PathVariable(name = "id") Integer filmId,
+                                    @PathVariable(name = "userId") Integer userId,
+                                    @RequestParam(name = "withFilm", defaultValue = "false") boolean withFilm) {
         log.info("Пользователь с id {} добавляет лайк фильму с id {}", userId, filmId);
-        return filmService.addLikeToFilm(filmId, userId);
+        return filmService.addLike(filmId, userId, withFilm);
     }
 
     @DeleteMapping("/films/{id}/like/{userId}")
-    public Film deleteFilmFromFilm(@PathVariable(name = "id") Integer filmId,
-                                   @PathVariable(name = "userId") Integer userId) {
+    public LikeResult deleteFilmFromFilm(@PathVariable(name = "id") Integer filmId,
+                                         @PathVariable(name = "userId") Integer userId,
+                                         @RequestParam(name = "withFilm", defaultValue = "false") boolean withFilm) {
         log.info("Пользователь с id {} удаляет лайк у фильма с id {}", userId, filmId);
-        return filmService.deleteLikeFromFilm(filmId, userId);
+        return filmService.deleteLike(filmId, userId, withFilm);
+    }
+
+    @GetMapping("/films/search")
+    public List<Film> searchFilms(@RequestParam(name = "query") String query,
+                                  @RequestParam(name = "from", defaultValue = "0") int from,
+                                  @RequestParam(name = "size", defaultValue = "10") int size,
+                                  @RequestParam(name = "boostByLikes", defaultValue = "false") boolean boostByLikes) {
+        log.info("Поиск фильмов по запросу '{}'", query);
+        return filmService.searchFilms(query, from, size, boostByLikes);
+    }
+
+    @GetMapping("/films/autocomplete")
+    public List<Film> autocompleteFilms(@RequestParam(name = "prefix") String prefix,
+                                        @RequestParam(name = "count", defaultValue = "10") int count) {
+        log.info("Автодополнение названий фильмов по префиксу '{}'", prefix);
+        return filmService.autocompleteFilms(prefix, count);
+    }
+
+    @GetMapping("/films/{id}/similar")
+    public List<Film> getSimilarFilms(@PathVariable(name = "id") Integer filmId,
+                                      @RequestParam(name = "count", defaultValue = "10") int count) {
+        log.info("Получение фильмов, похожих на фильм с id {}", filmId);
+        return filmService.getSimilarFilms(filmId, count);
     }
 
+    @GetMapping("/users/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable(name = "id") Integer userId,
+                                         @RequestParam(name = "count", defaultValue = "10") int count) {
+        log.info("Получение рекомендаций фильмов для пользователя с id {}", userId);
+        return filmService.getRecommendations(userId, count);
+    }
+
+    // ETag - версия каталога: меняется при любом изменении фильмов и лайков.
+    // Размер топа, фильтры и projection тоже входят в тег, иначе разные топы совпадали бы по ETag
     @GetMapping("/films/popular")
-    public List<Film> getPopularFilm(@RequestParam(name = "count", defaultValue = "10") String count) {
+    public ResponseEntity<Object> getPopularFilm(@RequestParam(name = "count", defaultValue = "10") String count,
+                                                 @RequestParam(name = "genreId", required = false) Integer genreId,
+                                                 @RequestParam(name = "mpaId", required = false) Integer mpaId,
+                                                 @RequestParam(name = "year", required = false) Integer year,
+                                                 @RequestParam(name = "fields", required = false) String fields,
+                                                 @RequestParam(name = "include", required = false) String include,
+                                                 @RequestHeader HttpHeaders headers) {
         log.info("Получение топ-{} фильмов", count);
         Integer intCount = Integer.parseInt(count);
-        return filmService.getPopularFilms(intCount);
+        Projection projection = parseProjection(fields, include);
+        String eTag = ConditionalGet.eTag(String.format("popular-%d-genre.%s-mpa.%s-year.%s",
+                intCount, genreId, mpaId, year), filmService.getCatalogVersion(), projection);
+
+        if (ConditionalGet.isNotModified(headers.getIfNoneMatch(), eTag)) {
+            return ConditionalGet.notModified(eTag, ConditionalGet.REVALIDATE);
+        }
+
+        return ConditionalGet.ok(projectionWriter.write(
+                filmService.getPopularFilms(intCount, genreId, mpaId, year, projection), projection),
+                eTag, ConditionalGet.REVALIDATE);
     }
 
     @GetMapping("/genres")
-    public List<Genre> gerAllGenres() {
+    public ResponseEntity<Object> gerAllGenres(@RequestHeader HttpHeaders headers) {
         log.info("Получение списка всех жанров");
-        return filmService.getAllGenres();
+        String eTag = ConditionalGet.eTag("genres", filmService.getReferenceDataVersion());
+
+        if (ConditionalGet.isNotModified(headers.getIfNoneMatch(), eTag)) {
+            return ConditionalGet.notModified(eTag, ConditionalGet.REFERENCE_DATA);
+        }
+
+        return ConditionalGet.ok(filmService.getAllGenres(), eTag, ConditionalGet.REFERENCE_DATA);
     }
 
     @GetMapping("/genres/{id}")
@@ -90,9 +220,15 @@ public class FilmController {
     }
 
     @GetMapping("/mpa")
-    public List<MPA> getAllMPA() {
+    public ResponseEntity<Object> getAllMPA(@RequestHeader HttpHeaders headers) {
         log.info("Получение списка всех рейтингов возрастного ограничения");
-        return filmService.getAllMPA();
+        String eTag = ConditionalGet.eTag("mpa", filmService.getReferenceDataVersion());
+
+        if (ConditionalGet.isNotModified(headers.getIfNoneMatch(), eTag)) {
+            return ConditionalGet.notModified(eTag, ConditionalGet.REFERENCE_DATA);
+        }
+
+        return ConditionalGet.ok(filmService.getAllMPA(), eTag, ConditionalGet.REFERENCE_DATA);
     }
 
     @GetMapping("/mpa/{id}")
@@ -100,4 +236,8 @@ public class FilmController {
         log.info("Получение рейнтинга возрастного ограничения по id {}", mpaId);
         return filmService.getMPAById(mpaId);
     }
+
+    private static Projection parseProjection(String fields, String include) {
+        return Projections.parse(fields, include, Projections.FILM_FIELDS, Projections.FILM_RELATIONS);
+    }
 }
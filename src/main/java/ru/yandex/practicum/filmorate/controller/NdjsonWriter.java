@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+// ответ в формате NDJSON: по одному JSON-объекту на строку. Объекты пишутся в ответ по мере
+// получения от source, поэтому размер выгрузки не ограничен памятью.
+// Выгрузка идет в асинхронном запросе со своим таймаутом, остальные запросы живут с таймаутом по умолчанию
+@Component
+@RequiredArgsConstructor
+public class NdjsonWriter {
+    private final ObjectMapper objectMapper;
+    @Value("${filmorate.export.timeout:30m}")
+    private Duration timeout = Duration.ofMinutes(30);
+
+    public <T> WebAsyncTask<Void> stream(HttpServletResponse response, Consumer<Consumer<T>> source) {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        return new WebAsyncTask<>(timeout.toMillis(), () -> {
+            write(response.getOutputStream(), source);
+            return null;
+        });
+    }
+
+    <T> void write(OutputStream outputStream, Consumer<Consumer<T>> source) throws IOException {
+        // сброс в сеть - по заполнении буфера генератора, а не после каждого объекта
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+
+            source.accept(item -> {
+                try {
+                    writer.writeValue(generator, item);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    // клиент закрыл соединение - чтение из БД прерывается
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
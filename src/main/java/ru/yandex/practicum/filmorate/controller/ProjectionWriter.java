@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Projection;
+
+// в ответе остаются только поля из projection; без ?fields= и ?include= ответ отдается как есть.
+// Поля, которые отдаются только по запросу (likeCount фильма), здесь сериализуются
+@Component
+public class ProjectionWriter {
+    private final ObjectMapper objectMapper;
+
+    public ProjectionWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper.copy().addMixIn(Film.class, RequestedFilmFields.class);
+    }
+
+    // body - объект или список объектов
+    public Object write(Object body, Projection projection) {
+        if (projection.getFields() == null) {
+            return body;
+        }
+
+        JsonNode tree = objectMapper.valueToTree(body);
+        if (tree.isArray()) {
+            for (JsonNode item : tree) {
+                ((ObjectNode) item).retain(projection.getFields());
+            }
+        } else {
+            ((ObjectNode) tree).retain(projection.getFields());
+        }
+
+        return tree;
+    }
+
+    private abstract static class RequestedFilmFields {
+        @JsonIgnore(false)
+        @JsonProperty
+        abstract Integer getLikeCount();
+    }
+}
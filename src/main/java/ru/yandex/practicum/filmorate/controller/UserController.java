@@ -2,12 +2,24 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.Projection;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.BulkImport;
+import ru.yandex.practicum.filmorate.service.PageCursor;
+import ru.yandex.practicum.filmorate.service.Projections;
 import ru.yandex.practicum.filmorate.service.user.UserService;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -17,17 +29,69 @@ import java.util.Map;
 @Slf4j
 public class UserController {
     private final UserService userService;
+    private final NdjsonWriter ndjsonWriter;
+    private final BulkImportFactory bulkImportFactory;
+    private final ProjectionWriter projectionWriter;
 
+    // без параметров страницы отдается весь список, с ними - страница и курсор следующей в заголовке.
+    // fields - поля пользователя в ответе, include=friends - загрузить друзей
     @GetMapping
-    public List<User> getUsers() {
-        log.info("Получение списка пользователей");
-        return userService.getUsers();
+    public ResponseEntity<Object> getUsers(@RequestParam(name = "limit", required = false) Integer limit,
+                                           @RequestParam(name = "cursor", required = false) String cursor,
+                                           @RequestParam(name = "fields", required = false) String fields,
+                                           @RequestParam(name = "include", required = false) String include) {
+        Projection projection = parseProjection(fields, include);
+
+        if (limit == null && cursor == null) {
+            log.info("Получение списка пользователей");
+            return ResponseEntity.ok(projectionWriter.write(userService.getUsers(projection), projection));
+        }
+
+        log.info("Получение страницы пользователей: limit {}, курсор {}", limit, cursor);
+        Page<User> page = userService.getUsersPage(cursor, limit == null ? PageCursor.DEFAULT_LIMIT : limit,
+                projection);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(PageCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(projectionWriter.write(page.getItems(), projection));
+    }
+
+    @GetMapping("/export")
+    public WebAsyncTask<Void> exportUsers(HttpServletResponse response) {
+        log.info("Выгрузка всех пользователей в NDJSON");
+        return ndjsonWriter.stream(response, userService::exportUsers);
+    }
+
+    // тело - поток NDJSON или CSV, в ответе число импортированных строк и ошибки по номерам строк
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, BulkImport.TEXT_CSV_VALUE})
+    public ImportResult importUsers(InputStream body, @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) {
+        log.info("Импорт пользователей в формате {}", contentType);
+        return userService.importUsers(bulkImportFactory.open(body, contentType));
+    }
+
+    @PostMapping(value = "/friends/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, BulkImport.TEXT_CSV_VALUE})
+    public ImportResult importFriends(InputStream body,
+                                      @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) {
+        log.info("Импорт дружб в формате {}", contentType);
+        return userService.importFriends(bulkImportFactory.open(body, contentType));
+    }
+
+    @GetMapping("/autocomplete")
+    public List<User> autocompleteUsers(@RequestParam(name = "prefix") String prefix,
+                                        @RequestParam(name = "count", defaultValue = "10") int count) {
+        log.info("Автодополнение логинов пользователей по префиксу '{}'", prefix);
+        return userService.autocompleteUsers(prefix, count);
     }
 
     @GetMapping("/{id}")
-    public User getUserById(@PathVariable(name = "id") Integer id) {
+    public Object getUserById(@PathVariable(name = "id") Integer id,
+                              @RequestParam(name = "fields", required = false) String fields,
+                              @RequestParam(name = "include", required = false) String include) {
         log.info("Получение пользователя по id: {}", id);
-        return userService.getUserById(id);
+        Projection projection = parseProjection(fields, include);
+        return projectionWriter.write(userService.getUserById(id, projection), projection);
     }
 
     @PostMapping
@@ -70,16 +134,39 @@ public class UserController {
     }
 
     @GetMapping("/{id}/friends")
-    public List<User> getFriendList(@PathVariable(name = "id") Integer userId) {
+    public Object getFriendList(@PathVariable(name = "id") Integer userId,
+                                @RequestParam(name = "fields", required = false) String fields,
+                                @RequestParam(name = "include", required = false) String include) {
         log.info("Получение списка друзей пользователя {}", userId);
-        return userService.getFriendList(userId);
+        Projection projection = parseProjection(fields, include);
+        return projectionWriter.write(userService.getFriendList(userId, projection), projection);
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<User> getCommonFriendList(@PathVariable(name = "id") Integer userId,
-                                          @PathVariable(name = "otherId") Integer otherId) {
+                                          @PathVariable(name = "otherId") Integer otherId,
+                                          @RequestParam(name = "from", defaultValue = "0") int from,
+                                          @RequestParam(name = "size", required = false) Integer size) {
         log.info("Получение списка общих друзей пользователя с id {} с пользователем с id {}",
                 userId, otherId);
-        return userService.getCommonFriendList(userId, otherId);
+        return userService.getCommonFriendList(userId, otherId, from, size);
+    }
+
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable(name = "id") Integer userId,
+                                           @RequestParam(name = "count", defaultValue = "10") int count) {
+        log.info("Получение возможных друзей пользователя с id {}", userId);
+        return userService.getFriendSuggestions(userId, count);
+    }
+
+    @GetMapping("/{id}/friends/common/{otherId}/ids")
+    public int[] getCommonFriendIds(@PathVariable(name = "id") Integer userId,
+                                    @PathVariable(name = "otherId") Integer otherId) {
+        log.info("Получение id общих друзей пользователя с id {} с пользователем с id {}", userId, otherId);
+        return userService.getCommonFriendIds(userId, otherId);
+    }
+
+    private static Projection parseProjection(String fields, String include) {
+        return Projections.parse(fields, include, Projections.USER_FIELDS, Projections.USER_RELATIONS);
     }
 }
@@ -1,5 +1,9 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -7,10 +11,11 @@ import lombok.Data;
 import javax.validation.constraints.*;
 import java.time.LocalDate;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Data
 @Builder
-@AllArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class Film {
     private Integer id;
     @NotBlank(message = "Наименование не должно быть пустым")
@@ -23,14 +28,36 @@ public class Film {
     private long duration;
     private Set<Genre> genres;
     private MPA mpa;
+    @JsonDeserialize(as = IntSet.class)
     private Set<Integer> likes;
-    private static int count = 0;
+    // число лайков из счетчика в БД, когда сами лайки не загружены
+    private Integer likeCount;
+    private static final AtomicInteger count = new AtomicInteger();
+
+    @JsonCreator
+    public Film(Integer id, String name, String description, LocalDate releaseDate, long duration,
+                Set<Genre> genres, MPA mpa, Set<Integer> likes) {
+        this(id, name, description, releaseDate, duration, genres, mpa, likes, null);
+    }
+
+    // в JSON только в ответах с ?fields= или ?include=, см. ProjectionWriter: без параметров ответ прежний
+    @JsonIgnore
+    public Integer getLikeCount() {
+        return likes != null ? Integer.valueOf(likes.size()) : likeCount;
+    }
+
+    // копия без коллекций, не запрошенных в projection; сами коллекции не копируются
+    public Film project(Projection projection) {
+        return new Film(id, name, description, releaseDate, duration,
+                projection.includes(Projection.GENRES) ? genres : null, mpa,
+                projection.includes(Projection.LIKES) ? likes : null, getLikeCount());
+    }
 
     public void generateId() {
-        this.id = ++count;
+        this.id = count.incrementAndGet();
     }
 
     public static void resetCount() {
-        count = 0;
+        count.set(0);
     }
 }
@@ -1,13 +1,18 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
 
-@Data
-@AllArgsConstructor
-@NoArgsConstructor
+@Value
 public class Genre {
-    private int id;
-    private String name;
+    int id;
+    String name;
+
+    @JsonCreator
+    public Genre(@JsonProperty("id") int id,
+                 @JsonProperty("name") String name) {
+        this.id = id;
+        this.name = name;
+    }
 }
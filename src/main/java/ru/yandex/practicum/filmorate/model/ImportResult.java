@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class ImportResult {
+    int imported;
+    int failed;
+    // только первые ошибки, чтобы ответ на импорт с миллионом плохих строк оставался небольшим
+    List<ImportError> errors;
+
+    @Value
+    public static class ImportError {
+        int line;
+        String message;
+    }
+}
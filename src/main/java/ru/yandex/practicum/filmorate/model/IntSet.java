@@ -0,0 +1,204 @@
+package ru.yandex.practicum.filmorate.model;
+
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+// компактное множество id на сжатом битмапе (Roaring) вместо HashSet<Integer>:
+// несколько байт на элемент вместо десятков, в JSON пишется тем же массивом чисел.
+// Методы синхронизированы, итератор обходит снимок, поэтому множество можно
+// одновременно менять и сериализовать из разных потоков
+public class IntSet extends AbstractSet<Integer> {
+    private final RoaringBitmap bitmap;
+
+    public IntSet() {
+        this(new RoaringBitmap());
+    }
+
+    private IntSet(RoaringBitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public static IntSet of(int... ids) {
+        return new IntSet(RoaringBitmap.bitmapOf(ids));
+    }
+
+    public static IntSet copyOf(Collection<Integer> ids) {
+        IntSet intSet = new IntSet();
+
+        if (ids != null) {
+            intSet.addAll(ids);
+        }
+
+        return intSet;
+    }
+
+    // пересечение по контейнерам битмапа: плотные части - побитовым AND по словам,
+    // разреженные - слиянием отсортированных массивов с галопирующим поиском
+    public static IntSet intersection(IntSet first, IntSet second) {
+        RoaringBitmap firstBitmap = first.snapshot();
+
+        synchronized (second) {
+            return new IntSet(RoaringBitmap.and(firstBitmap, second.bitmap));
+        }
+    }
+
+    public synchronized boolean add(int id) {
+        return bitmap.checkedAdd(id);
+    }
+
+    @Override
+    public boolean add(Integer id) {
+        return add(id.intValue());
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Integer> ids) {
+        if (!(ids instanceof IntSet)) {
+            return super.addAll(ids);
+        }
+
+        RoaringBitmap other = ((IntSet) ids).snapshot();
+
+        synchronized (this) {
+            int size = bitmap.getCardinality();
+            bitmap.or(other);
+            return bitmap.getCardinality() != size;
+        }
+    }
+
+    public synchronized boolean remove(int id) {
+        return bitmap.checkedRemove(id);
+    }
+
+    @Override
+    public boolean remove(Object id) {
+        return id instanceof Integer && remove(((Integer) id).intValue());
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> ids) {
+        if (!(ids instanceof IntSet)) {
+            return super.retainAll(ids);
+        }
+
+        RoaringBitmap other = ((IntSet) ids).snapshot();
+
+        synchronized (this) {
+            int size = bitmap.getCardinality();
+            bitmap.and(other);
+            return bitmap.getCardinality() != size;
+        }
+    }
+
+    public synchronized boolean contains(int id) {
+        return bitmap.contains(id);
+    }
+
+    @Override
+    public boolean contains(Object id) {
+        return id instanceof Integer && contains(((Integer) id).intValue());
+    }
+
+    @Override
+    public synchronized int size() {
+        return bitmap.getCardinality();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return bitmap.isEmpty();
+    }
+
+    @Override
+    public synchronized void clear() {
+        bitmap.clear();
+    }
+
+    public int[] toIntArray() {
+        return snapshot().toArray();
+    }
+
+    // первые maxSize id по возрастанию, без копирования всего множества
+    public synchronized int[] toIntArray(int maxSize) {
+        return bitmap.getCardinality() <= maxSize ? bitmap.toArray() : bitmap.limit(maxSize).toArray();
+    }
+
+    // не больше maxSize id, выбранных равновероятно (алгоритм Флойда по номерам в битмапе),
+    // по возрастанию. В отличие от toIntArray(maxSize) выборка не смещена к меньшим id
+    public synchronized int[] sample(int maxSize) {
+        int size = bitmap.getCardinality();
+
+        if (size <= maxSize) {
+            return bitmap.toArray();
+        }
+
+        Random random = ThreadLocalRandom.current();
+        RoaringBitmap ranks = new RoaringBitmap();
+
+        for (int bound = size - maxSize; bound < size; bound++) {
+            int rank = random.nextInt(bound + 1);
+
+            if (!ranks.checkedAdd(rank)) {
+                ranks.add(bound);
+            }
+        }
+
+        int[] ids = new int[maxSize];
+        PeekableIntIterator rankIterator = ranks.getIntIterator();
+
+        for (int i = 0; i < maxSize; i++) {
+            ids[i] = bitmap.select(rankIterator.next());
+        }
+
+        return ids;
+    }
+
+    public synchronized long getSizeInBytes() {
+        return bitmap.getLongSizeInBytes();
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        PeekableIntIterator ids = snapshot().getIntIterator();
+
+        return new Iterator<>() {
+            private Integer last;
+
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Integer next() {
+                if (!ids.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                last = ids.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+
+                IntSet.this.remove(last.intValue());
+                last = null;
+            }
+        };
+    }
+
+    private synchronized RoaringBitmap snapshot() {
+        return bitmap.clone();
+    }
+}
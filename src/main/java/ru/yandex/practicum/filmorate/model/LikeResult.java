@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LikeResult {
+    private Integer filmId;
+    private Integer userId;
+    private int likeCount;
+    // лайк действительно добавлен или удален; повтор ничего не меняет, и индексы о нем не узнают
+    @JsonIgnore
+    private boolean changed;
+    // заполняется только по запросу клиента (withFilm=true)
+    private Film film;
+}
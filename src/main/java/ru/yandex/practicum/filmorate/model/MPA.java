@@ -1,14 +1,21 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
 
-@Data
-@AllArgsConstructor
-@NoArgsConstructor
+@Value
 public class MPA {
-    private int id;
-    private String name;
-    private int minViewingAge;
+    int id;
+    String name;
+    int minViewingAge;
+
+    @JsonCreator
+    public MPA(@JsonProperty("id") int id,
+               @JsonProperty("name") String name,
+               @JsonProperty("minViewingAge") int minViewingAge) {
+        this.id = id;
+        this.name = name;
+        this.minViewingAge = minViewingAge;
+    }
 }
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Value;
+
+import java.util.Set;
+
+// какие поля нужны в ответе и какие связанные коллекции загружать из хранилища
+@Value
+public class Projection {
+    public static final String GENRES = "genres";
+    public static final String LIKES = "likes";
+    public static final String FRIENDS = "friends";
+    public static final Projection ALL = new Projection(null, null);
+
+    // поля ответа, null - все поля
+    Set<String> fields;
+    // загружаемые коллекции, null - все коллекции
+    Set<String> relations;
+
+    public boolean includes(String relation) {
+        return relations == null || relations.contains(relation);
+    }
+}
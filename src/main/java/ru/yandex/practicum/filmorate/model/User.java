@@ -1,10 +1,12 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.*;
 
 import javax.validation.constraints.*;
 import java.time.LocalDate;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Data
 @Builder
@@ -20,14 +22,20 @@ public class User {
     @Past(message = "birthday должен быть раньше текущей даты")
     @NotNull(message = "birthday обязателен к заполнению")
     private LocalDate birthday;
+    @JsonDeserialize(as = IntSet.class)
     private Set<Integer> friends;
-    private static int count = 0;
+    private static final AtomicInteger count = new AtomicInteger();
 
     public void generateId() {
-        this.id = ++count;
+        this.id = count.incrementAndGet();
+    }
+
+    // копия без друзей, если они не запрошены в projection; сам набор друзей не копируется
+    public User project(Projection projection) {
+        return new User(id, email, login, name, birthday, projection.includes(Projection.FRIENDS) ? friends : null);
     }
 
     public static void resetCount() {
-        count = 0;
+        count.set(0);
     }
 }
@@ -0,0 +1,300 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// импорт из потока NDJSON (JSON-объект на строку) или CSV (первая строка - заголовок с именами полей).
+// Колонка CSV "mpa.id" становится вложенным объектом, "genres[].id" - списком объектов со значениями через ';'.
+// Строки читаются по одной и пишутся пакетами по chunkSize, ошибка в строке не прерывает импорт
+@Slf4j
+public class BulkImport {
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    private final BufferedReader reader;
+    private final boolean csv;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final List<ImportResult.ImportError> errors = new ArrayList<>();
+    private List<String> columns;
+    private int lineNumber;
+    private int imported;
+    private int failed;
+
+    public BulkImport(InputStream input, boolean csv, ObjectMapper objectMapper, Validator validator) {
+        this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        this.csv = csv;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+    }
+
+    // parser разбирает и проверяет строку, writer пишет пакет и возвращает для каждой строки текст ошибки или null
+    public <T> ImportResult run(int chunkSize, Function<Row, T> parser, Function<List<T>, List<String>> writer) {
+        List<T> chunk = new ArrayList<>(chunkSize);
+        List<Integer> chunkLines = new ArrayList<>(chunkSize);
+
+        for (Row row = nextRow(); row != null; row = nextRow()) {
+            try {
+                chunk.add(parser.apply(row));
+                chunkLines.add(row.getLine());
+            } catch (ValidationException | NotFoundException e) {
+                addError(row.getLine(), e.getMessage());
+            } catch (DataAccessException e) {
+                // проверка строки обращается к БД: сбой запроса - ошибка этой строки, импорт продолжается
+                log.warn("Не удалось проверить строку {} импорта: {}", row.getLine(), e.getMessage());
+                addError(row.getLine(), "Не удалось проверить строку: " + e.getMostSpecificCause().getMessage());
+            }
+
+            if (chunk.size() == chunkSize) {
+                write(chunk, chunkLines, writer);
+            }
+        }
+
+        write(chunk, chunkLines, writer);
+        return new ImportResult(imported, failed, List.copyOf(errors));
+    }
+
+    private <T> void write(List<T> chunk, List<Integer> chunkLines, Function<List<T>, List<String>> writer) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<String> rowErrors;
+        try {
+            rowErrors = writer.apply(chunk);
+        } catch (DataAccessException e) {
+            // пакет пишется в своей транзакции и откатывается целиком: строки пишутся заново по одной,
+            // каждая в своей транзакции, чтобы ошибку получили только строки, которые не записываются
+            log.warn("Не удалось записать пакет импорта, запись по одной строке: {}", e.getMessage());
+            rowErrors = writeRows(chunk, chunkLines, writer);
+        }
+
+        for (int i = 0; i < rowErrors.size(); i++) {
+            if (rowErrors.get(i) == null) {
+                imported++;
+            } else {
+                addError(chunkLines.get(i), rowErrors.get(i));
+            }
+        }
+
+        chunk.clear();
+        chunkLines.clear();
+    }
+
+    private <T> List<String> writeRows(List<T> chunk, List<Integer> chunkLines,
+                                       Function<List<T>, List<String>> writer) {
+        List<String> rowErrors = new ArrayList<>(chunk.size());
+
+        for (int i = 0; i < chunk.size(); i++) {
+            try {
+                rowErrors.add(writer.apply(List.of(chunk.get(i))).get(0));
+            } catch (DataAccessException e) {
+                log.warn("Не удалось записать строку {} импорта: {}", chunkLines.get(i), e.getMessage());
+                rowErrors.add("Не удалось записать строку: " + e.getMostSpecificCause().getMessage());
+            }
+        }
+
+        return rowErrors;
+    }
+
+    private void addError(int line, String message) {
+        failed++;
+
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new ImportResult.ImportError(line, message));
+        }
+    }
+
+    private Row nextRow() {
+        try {
+            for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+                lineNumber++;
+
+                if (text.isBlank()) {
+                    continue;
+                }
+
+                if (csv && columns == null) {
+                    columns = new ArrayList<>();
+                    for (String column : parseCsvLine(text)) {
+                        columns.add(column.strip());
+                    }
+                    continue;
+                }
+
+                return new Row(lineNumber, text);
+            }
+
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // значение в кавычках может содержать запятые, кавычка внутри него удваивается
+    static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new ValidationException("Не закрыта кавычка в строке CSV");
+        }
+
+        values.add(value.toString());
+        return values;
+    }
+
+    public class Row {
+        @Getter
+        private final int line;
+        private final String text;
+        private ObjectNode fields;
+
+        private Row(int line, String text) {
+            this.line = line;
+            this.text = text;
+        }
+
+        // строка в объект тем же ObjectMapper и с теми же аннотациями валидации, что и тело запроса
+        public <T> T read(Class<T> type) {
+            T value;
+            try {
+                value = objectMapper.treeToValue(getFields(), type);
+            } catch (JsonProcessingException e) {
+                throw new ValidationException("Некорректное значение поля: " + e.getOriginalMessage());
+            }
+
+            Set<ConstraintViolation<T>> violations = validator.validate(value);
+            if (!violations.isEmpty()) {
+                throw new ValidationException(violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+            }
+
+            return value;
+        }
+
+        public int getInt(String field) {
+            JsonNode value = getFields().get(field);
+
+            if (value == null || value.isNull()) {
+                throw new ValidationException(String.format("Не заполнено поле %s", field));
+            }
+
+            if (value.isInt()) {
+                return value.intValue();
+            }
+
+            try {
+                return Integer.parseInt(value.asText().strip());
+            } catch (NumberFormatException e) {
+                throw new ValidationException(String.format("Поле %s должно быть целым числом", field));
+            }
+        }
+
+        private ObjectNode getFields() {
+            if (fields == null) {
+                fields = csv ? parseCsvFields() : parseJsonFields();
+            }
+
+            return fields;
+        }
+
+        private ObjectNode parseJsonFields() {
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(text);
+            } catch (JsonProcessingException e) {
+                throw new ValidationException("Некорректный JSON: " + e.getOriginalMessage());
+            }
+
+            if (!node.isObject()) {
+                throw new ValidationException("Строка должна содержать JSON-объект");
+            }
+
+            return (ObjectNode) node;
+        }
+
+        // пустое значение CSV - незаполненное поле
+        private ObjectNode parseCsvFields() {
+            List<String> values = parseCsvLine(text);
+
+            if (values.size() != columns.size()) {
+                throw new ValidationException(String.format("Ожидалось значений: %d, получено: %d",
+                        columns.size(), values.size()));
+            }
+
+            ObjectNode node = objectMapper.createObjectNode();
+            for (int i = 0; i < columns.size(); i++) {
+                String column = columns.get(i);
+                String value = values.get(i);
+
+                if (value.isEmpty()) {
+                    continue;
+                }
+
+                int listMark = column.indexOf("[].");
+                int dot = column.indexOf('.');
+                if (listMark >= 0) {
+                    ArrayNode items = node.putArray(column.substring(0, listMark));
+                    for (String item : value.split(";")) {
+                        items.addObject().put(column.substring(listMark + 3), item.strip());
+                    }
+                } else if (dot >= 0) {
+                    node.with(column.substring(0, dot)).put(column.substring(dot + 1), value);
+                } else {
+                    node.put(column, value);
+                }
+            }
+
+            return node;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.function.Supplier;
+
+// индекс в памяти, который строится из хранилища при первом обращении и дальше обновляется по изменениям.
+// Данные для построения читаются под той же блокировкой (монитор индекса), что и изменения: изменение,
+// записанное в хранилище до чтения, попадет в данные, более позднее дождется конца построения.
+// Поэтому до первого построения изменения можно пропускать - проверкой isLoaded в synchronized-методах
+public abstract class LazyIndex<T> {
+    private volatile boolean loaded;
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized void rebuild(Supplier<? extends T> source) {
+        reset();
+        load(source.get());
+        loaded = true;
+    }
+
+    // пустой построенный индекс, например после удаления всех данных
+    public synchronized void clear() {
+        reset();
+    }
+
+    // индекс будет перестроен из хранилища при следующем обращении
+    public synchronized void invalidate() {
+        reset();
+        loaded = false;
+    }
+
+    // вызываются под монитором индекса
+    protected abstract void reset();
+
+    protected abstract void load(T data);
+}
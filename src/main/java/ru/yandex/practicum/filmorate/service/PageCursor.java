@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Page;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+// постраничная выдача по ключу: курсор хранит id последнего элемента страницы, следующая страница
+// начинается сразу после него, поэтому стоимость страницы не зависит от ее номера.
+// Для клиента курсор непрозрачен, формат можно менять без изменения API
+public final class PageCursor {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+    private static final String PREFIX = "id:";
+
+    private PageCursor() {
+    }
+
+    public static String encode(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // id, после которого начинается страница; 0 - первая страница
+    public static int decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+
+            if (decoded.startsWith(PREFIX)) {
+                return Integer.parseInt(decoded.substring(PREFIX.length()));
+            }
+        } catch (IllegalArgumentException e) {
+            // обрабатывается ниже вместе с неверным префиксом
+        }
+
+        throw new ValidationException("Некорректный курсор страницы: " + cursor);
+    }
+
+    public static void validateLimit(int limit) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + MAX_LIMIT);
+        }
+    }
+
+    // items запрошены с запасом в один элемент: если он пришел, есть следующая страница
+    public static <T> Page<T> toPage(List<T> items, int limit, ToIntFunction<T> id) {
+        if (items.size() <= limit) {
+            return new Page<>(items, null);
+        }
+
+        List<T> pageItems = items.subList(0, limit);
+        return new Page<>(pageItems, encode(id.applyAsInt(pageItems.get(limit - 1))));
+    }
+}
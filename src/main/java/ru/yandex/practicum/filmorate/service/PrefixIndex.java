@@ -0,0 +1,135 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+// автодополнение по началу любого слова текста (названия фильма, логина, почты).
+// Ключи "хвост текста с начала слова + \0 + id" лежат в отсортированной карте, поэтому все
+// совпадения с префиксом - один непрерывный диапазон. Найденные id ранжируются по популярности.
+// Если есть готовый рейтинг, а совпадений больше MAX_SCANNED, топ берется обходом рейтинга сверху
+// с проверкой префикса: для коротких префиксов это дешевле, чем оценивать весь диапазон
+public class PrefixIndex extends LazyIndex<Map<Integer, ? extends Collection<String>>> {
+    private static final int MAX_SCANNED = 2000;
+    private static final char SEPARATOR = '\0';
+
+    private final ConcurrentSkipListMap<String, Integer> entries = new ConcurrentSkipListMap<>();
+    private final Map<Integer, List<String>> keysById = new ConcurrentHashMap<>();
+
+    public synchronized void update(Integer id, Collection<String> texts) {
+        if (isLoaded()) {
+            remove(id);
+            put(id, texts);
+        }
+    }
+
+    public synchronized void remove(Integer id) {
+        List<String> keys = keysById.remove(id);
+
+        if (keys != null) {
+            for (String key : keys) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    public List<Integer> complete(String prefix, int count, IntUnaryOperator popularity) {
+        return complete(prefix, count, popularity, null);
+    }
+
+    // ranking - id по убыванию той же популярности, может быть null
+    public List<Integer> complete(String prefix, int count, IntUnaryOperator popularity, Ranking ranking) {
+        String normalizedPrefix = normalize(prefix).strip();
+
+        if (normalizedPrefix.isEmpty()) {
+            return List.of();
+        }
+
+        NavigableMap<String, Integer> matches = entries.subMap(normalizedPrefix, true,
+                normalizedPrefix + Character.MAX_VALUE, false);
+        Map<Integer, Integer> scores = new HashMap<>();
+        int scanned = 0;
+
+        for (Integer id : matches.values()) {
+            if (ranking != null && ++scanned > MAX_SCANNED) {
+                return ranking.getTopIds(count, matchId -> matches(matchId, normalizedPrefix));
+            }
+
+            scores.computeIfAbsent(id, popularity::applyAsInt);
+        }
+
+        return TopScores.getTopIds(scores, count);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    protected void reset() {
+        entries.clear();
+        keysById.clear();
+    }
+
+    @Override
+    protected void load(Map<Integer, ? extends Collection<String>> textsById) {
+        for (Map.Entry<Integer, ? extends Collection<String>> texts : textsById.entrySet()) {
+            put(texts.getKey(), texts.getValue());
+        }
+    }
+
+    private boolean matches(int id, String normalizedPrefix) {
+        for (String key : keysById.getOrDefault(id, List.of())) {
+            if (key.startsWith(normalizedPrefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void put(Integer id, Collection<String> texts) {
+        Set<String> keys = new LinkedHashSet<>();
+
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+
+            String normalized = normalize(text);
+
+            for (int i = 0; i < normalized.length(); i++) {
+                boolean wordStart = Character.isLetterOrDigit(normalized.charAt(i))
+                        && (i == 0 || !Character.isLetterOrDigit(normalized.charAt(i - 1)));
+
+                if (wordStart) {
+                    keys.add(normalized.substring(i) + SEPARATOR + id);
+                }
+            }
+        }
+
+        for (String key : keys) {
+            entries.put(key, id);
+        }
+
+        keysById.put(id, new ArrayList<>(keys));
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    public interface Ranking {
+        List<Integer> getTopIds(int count, IntPredicate filter);
+    }
+}
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Projection;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// разбор параметров ?fields= и ?include=. Без них в ответе все поля и все коллекции, как раньше.
+// С ними коллекция загружается и попадает в ответ, только если названа в include или в fields
+public final class Projections {
+    public static final Set<String> FILM_FIELDS = Set.of("id", "name", "description", "releaseDate", "duration",
+            "mpa", "likeCount");
+    public static final Set<String> FILM_RELATIONS = Set.of(Projection.GENRES, Projection.LIKES);
+    public static final Set<String> USER_FIELDS = Set.of("id", "email", "login", "name", "birthday");
+    public static final Set<String> USER_RELATIONS = Set.of(Projection.FRIENDS);
+
+    private Projections() {
+    }
+
+    public static Projection parse(String fields, String include, Set<String> knownFields,
+                                   Set<String> knownRelations) {
+        if (fields == null && include == null) {
+            return Projection.ALL;
+        }
+
+        Set<String> relations = split(include, "include");
+        for (String relation : relations) {
+            if (!knownRelations.contains(relation)) {
+                throw new ValidationException(String.format("Неизвестная коллекция в параметре include: %s",
+                        relation));
+            }
+        }
+
+        Set<String> responseFields;
+        if (fields == null) {
+            responseFields = new LinkedHashSet<>(knownFields);
+        } else {
+            responseFields = split(fields, "fields");
+            for (String field : responseFields) {
+                if (knownRelations.contains(field)) {
+                    relations.add(field);
+                } else if (!knownFields.contains(field)) {
+                    throw new ValidationException(String.format("Неизвестное поле в параметре fields: %s", field));
+                }
+            }
+        }
+
+        responseFields.addAll(relations);
+        return new Projection(Set.copyOf(responseFields), Set.copyOf(relations));
+    }
+
+    private static Set<String> split(String value, String parameter) {
+        Set<String> names = new LinkedHashSet<>();
+
+        if (value == null) {
+            return names;
+        }
+
+        for (String name : value.split(",")) {
+            if (!name.isBlank()) {
+                names.add(name.strip());
+            }
+        }
+
+        if (names.isEmpty()) {
+            throw new ValidationException(String.format("Параметр %s не должен быть пустым", parameter));
+        }
+
+        return names;
+    }
+}
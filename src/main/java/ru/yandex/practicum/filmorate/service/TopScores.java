@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// отбор top-K через кучу размера K вместо сортировки всех кандидатов:
+// по убыванию оценки, при равенстве - по возрастанию id
+public final class TopScores {
+    private TopScores() {
+    }
+
+    public static <S extends Comparable<S>> List<Integer> getTopIds(Map<Integer, S> scores, int count) {
+        Comparator<Map.Entry<Integer, S>> order = Map.Entry.<Integer, S>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<Integer, S>> top = new PriorityQueue<>(order.reversed());
+
+        for (Map.Entry<Integer, S> candidate : scores.entrySet()) {
+            top.add(candidate);
+
+            if (top.size() > count) {
+                top.poll();
+            }
+        }
+
+        List<Map.Entry<Integer, S>> sorted = new ArrayList<>(top);
+        sorted.sort(order);
+
+        List<Integer> ids = new ArrayList<>(sorted.size());
+        for (Map.Entry<Integer, S> candidate : sorted) {
+            ids.add(candidate.getKey());
+        }
+
+        return ids;
+    }
+
+    // то же для оценок в массивах: в кучу попадают только кандидаты лучше худшего из уже отобранных
+    public static List<Integer> getTopIds(int[] ids, double[] scores, int count) {
+        Comparator<Integer> order = (first, second) -> {
+            int byScore = Double.compare(scores[second], scores[first]);
+            return byScore != 0 ? byScore : Integer.compare(ids[first], ids[second]);
+        };
+        PriorityQueue<Integer> top = new PriorityQueue<>(order.reversed());
+
+        for (int i = 0; i < ids.length && count > 0; i++) {
+            if (top.size() < count) {
+                top.add(i);
+            } else if (order.compare(i, top.peek()) < 0) {
+                top.poll();
+                top.add(i);
+            }
+        }
+
+        List<Integer> sorted = new ArrayList<>(top);
+        sorted.sort(order);
+
+        List<Integer> topIds = new ArrayList<>(sorted.size());
+        for (Integer index : sorted) {
+            topIds.add(ids[index]);
+        }
+
+        return topIds;
+    }
+}
@@ -0,0 +1,287 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import lombok.Value;
+import lombok.With;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.service.LazyIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// рейтинги популярности фильмов по жанру, рейтингу MPA, году выпуска и их сочетаниям.
+// Рейтинги по одному признаку ведутся всегда. Рейтинг сочетания признаков строится при первом запросе
+// из самого короткого подходящего рейтинга и дальше обновляется вместе с остальными,
+// поэтому топ с любыми фильтрами стоит примерно как глобальный топ
+public class FacetLeaderboards extends LazyIndex<Collection<Film>> implements FilmIndex {
+    private final Map<FacetKey, PopularityLeaderboard> leaderboards = new HashMap<>();
+    private final Map<Integer, FilmFacets> facets = new HashMap<>();
+
+    // новый или измененный фильм: количество лайков сохраняется, меняются только признаки
+    public synchronized void update(Film film) {
+        if (!isLoaded()) {
+            return;
+        }
+
+        FilmFacets oldFacets = facets.get(film.getId());
+        int likeCount = oldFacets == null ? 0 : oldFacets.getLikeCount();
+
+        remove(film.getId());
+        put(film.getId(), toFacets(film, likeCount));
+    }
+
+    // как и в PopularityLeaderboard, лайки меняют счетчик на разницу: порядок прихода изменений не важен.
+    // Фильма нет среди признаков - он удален или рейтинги еще не построены
+    public synchronized void addToLikeCount(Integer filmId, int delta) {
+        FilmFacets filmFacets = facets.get(filmId);
+
+        if (filmFacets != null) {
+            updateLikeCount(filmId, Math.max(0, filmFacets.getLikeCount() + delta));
+        }
+    }
+
+    public synchronized void updateLikeCount(Integer filmId, int likeCount) {
+        FilmFacets filmFacets = facets.get(filmId);
+
+        if (!isLoaded() || filmFacets == null) {
+            return;
+        }
+
+        facets.put(filmId, filmFacets.withLikeCount(likeCount));
+
+        for (PopularityLeaderboard leaderboard : getLeaderboards(filmFacets)) {
+            leaderboard.update(filmId, likeCount);
+        }
+    }
+
+    public synchronized void remove(Integer filmId) {
+        FilmFacets filmFacets = facets.remove(filmId);
+
+        if (filmFacets != null) {
+            for (PopularityLeaderboard leaderboard : getLeaderboards(filmFacets)) {
+                leaderboard.remove(filmId);
+            }
+        }
+    }
+
+    public synchronized int getLikeCount(int filmId) {
+        FilmFacets filmFacets = facets.get(filmId);
+        return filmFacets == null ? 0 : filmFacets.getLikeCount();
+    }
+
+    public synchronized List<Integer> getTopFilmIds(int count, Integer genreId, Integer mpaId, Integer year) {
+        FacetKey key = new FacetKey(genreId, mpaId, year);
+        PopularityLeaderboard leaderboard = leaderboards.get(key);
+
+        if (leaderboard == null && key.isCombined()) {
+            leaderboard = newCombinedLeaderboard(key);
+        }
+
+        return leaderboard == null ? List.of() : leaderboard.getTopFilmIds(count);
+    }
+
+    @Override
+    public void filmUpdated(Film film) {
+        update(film);
+    }
+
+    @Override
+    public void filmDeleted(Integer filmId) {
+        remove(filmId);
+    }
+
+    @Override
+    public void allFilmsDeleted() {
+        clear();
+    }
+
+    @Override
+    public void likeAdded(Integer filmId, Integer userId) {
+        addToLikeCount(filmId, 1);
+    }
+
+    @Override
+    public void likeDeleted(Integer filmId, Integer userId) {
+        addToLikeCount(filmId, -1);
+    }
+
+    @Override
+    public synchronized void userDeleted(Integer userId, Set<Integer> likedFilmIds) {
+        for (Integer filmId : likedFilmIds) {
+            addToLikeCount(filmId, -1);
+        }
+    }
+
+    @Override
+    public synchronized void allUsersDeleted() {
+        for (Integer filmId : new ArrayList<>(facets.keySet())) {
+            updateLikeCount(filmId, 0);
+        }
+    }
+
+    @Override
+    public void filmsImported() {
+        invalidate();
+    }
+
+    @Override
+    public void likesImported() {
+        invalidate();
+    }
+
+    @Override
+    protected void reset() {
+        leaderboards.clear();
+        facets.clear();
+    }
+
+    @Override
+    protected void load(Collection<Film> films) {
+        for (Film film : films) {
+            put(film.getId(), toFacets(film, film.getLikes() == null ? 0 : film.getLikes().size()));
+        }
+    }
+
+    // нет фильмов хотя бы с одним из признаков - пересечение пустое, рейтинг не заводится
+    private PopularityLeaderboard newCombinedLeaderboard(FacetKey key) {
+        List<PopularityLeaderboard> singleLeaderboards = new ArrayList<>();
+
+        for (FacetKey singleKey : key.getSingleKeys()) {
+            PopularityLeaderboard singleLeaderboard = leaderboards.get(singleKey);
+
+            if (singleLeaderboard == null) {
+                return null;
+            }
+
+            singleLeaderboards.add(singleLeaderboard);
+        }
+
+        PopularityLeaderboard shortest = singleLeaderboards.stream()
+                .min(Comparator.comparingInt(PopularityLeaderboard::size))
+                .orElseThrow();
+        PopularityLeaderboard leaderboard = newLeaderboard();
+
+        for (Integer filmId : shortest.getTopFilmIds(shortest.size(), filmId -> key.matches(facets.get(filmId)))) {
+            leaderboard.update(filmId, facets.get(filmId).getLikeCount());
+        }
+
+        leaderboards.put(key, leaderboard);
+        return leaderboard;
+    }
+
+    // рейтинги по одному признаку заводятся сразу, в рейтинги сочетаний фильм попадает, если они уже есть
+    private void put(Integer filmId, FilmFacets filmFacets) {
+        facets.put(filmId, filmFacets);
+
+        for (FacetKey key : getAllKeys(filmFacets)) {
+            PopularityLeaderboard leaderboard = key.isCombined() ? leaderboards.get(key)
+                    : leaderboards.computeIfAbsent(key, singleKey -> newLeaderboard());
+
+            if (leaderboard != null) {
+                leaderboard.update(filmId, filmFacets.getLikeCount());
+            }
+        }
+    }
+
+    private List<PopularityLeaderboard> getLeaderboards(FilmFacets filmFacets) {
+        List<PopularityLeaderboard> filmLeaderboards = new ArrayList<>();
+
+        for (FacetKey key : getAllKeys(filmFacets)) {
+            PopularityLeaderboard leaderboard = leaderboards.get(key);
+
+            if (leaderboard != null) {
+                filmLeaderboards.add(leaderboard);
+            }
+        }
+
+        return filmLeaderboards;
+    }
+
+    // все сочетания признаков фильма: каждый признак либо задан, либо не участвует в фильтре
+    private static List<FacetKey> getAllKeys(FilmFacets filmFacets) {
+        List<Integer> genreIds = new ArrayList<>(filmFacets.getGenreIds());
+        genreIds.add(null);
+        List<Integer> mpaIds = new ArrayList<>();
+        mpaIds.add(null);
+        if (filmFacets.getMpaId() != null) {
+            mpaIds.add(filmFacets.getMpaId());
+        }
+
+        List<FacetKey> keys = new ArrayList<>();
+        for (Integer genreId : genreIds) {
+            for (Integer mpaId : mpaIds) {
+                keys.add(new FacetKey(genreId, mpaId, filmFacets.getYear()));
+                if (genreId != null || mpaId != null) {
+                    keys.add(new FacetKey(genreId, mpaId, null));
+                }
+            }
+        }
+
+        return keys;
+    }
+
+    private static PopularityLeaderboard newLeaderboard() {
+        PopularityLeaderboard leaderboard = new PopularityLeaderboard();
+        leaderboard.rebuild(Map::of);
+        return leaderboard;
+    }
+
+    private static FilmFacets toFacets(Film film, int likeCount) {
+        Set<Integer> genreIds = film.getGenres() == null ? Set.of() : film.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toUnmodifiableSet());
+        Integer mpaId = film.getMpa() == null ? null : film.getMpa().getId();
+
+        return new FilmFacets(genreIds, mpaId, film.getReleaseDate().getYear(), likeCount);
+    }
+
+    @Value
+    private static class FilmFacets {
+        Set<Integer> genreIds;
+        Integer mpaId;
+        int year;
+        @With
+        int likeCount;
+    }
+
+    // фильтр топа, null - признак не участвует
+    @Value
+    private static class FacetKey {
+        Integer genreId;
+        Integer mpaId;
+        Integer year;
+
+        private boolean isCombined() {
+            return getSingleKeys().size() > 1;
+        }
+
+        private List<FacetKey> getSingleKeys() {
+            List<FacetKey> keys = new ArrayList<>();
+
+            if (genreId != null) {
+                keys.add(new FacetKey(genreId, null, null));
+            }
+            if (mpaId != null) {
+                keys.add(new FacetKey(null, mpaId, null));
+            }
+            if (year != null) {
+                keys.add(new FacetKey(null, null, year));
+            }
+
+            return keys;
+        }
+
+        private boolean matches(FilmFacets filmFacets) {
+            return filmFacets != null
+                    && (genreId == null || filmFacets.getGenreIds().contains(genreId))
+                    && (mpaId == null || mpaId.equals(filmFacets.getMpaId()))
+                    && (year == null || year == filmFacets.getYear());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.Set;
+
+// индекс фильмов в памяти: FilmService сообщает всем индексам об изменении уже после записи в хранилище.
+// Индекс переопределяет только те события, которые его затрагивают
+public interface FilmIndex {
+    default void filmCreated(Film film) {
+        filmUpdated(film);
+    }
+
+    default void filmUpdated(Film film) {
+    }
+
+    default void filmDeleted(Integer filmId) {
+    }
+
+    default void allFilmsDeleted() {
+    }
+
+    default void likeAdded(Integer filmId, Integer userId) {
+    }
+
+    default void likeDeleted(Integer filmId, Integer userId) {
+    }
+
+    // likedFilmIds - фильмы, лайки которых удалены вместе с пользователем
+    default void userDeleted(Integer userId, Set<Integer> likedFilmIds) {
+    }
+
+    default void allUsersDeleted() {
+    }
+
+    // после пакетного импорта индекс дешевле перестроить, чем обновлять по одной строке
+    default void filmsImported() {
+    }
+
+    default void likesImported() {
+    }
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.PrefixIndex;
+
+import java.util.List;
+
+// автодополнение названий фильмов
+public class FilmNameIndex extends PrefixIndex implements FilmIndex {
+    @Override
+    public void filmUpdated(Film film) {
+        update(film.getId(), List.of(film.getName()));
+    }
+
+    @Override
+    public void filmDeleted(Integer filmId) {
+        remove(filmId);
+    }
+
+    @Override
+    public void allFilmsDeleted() {
+        clear();
+    }
+
+    @Override
+    public void filmsImported() {
+        invalidate();
+    }
+}
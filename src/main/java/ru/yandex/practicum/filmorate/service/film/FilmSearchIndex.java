@@ -0,0 +1,195 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import lombok.RequiredArgsConstructor;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.service.LazyIndex;
+import ru.yandex.practicum.filmorate.service.TopScores;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
+
+// обратный индекс для полнотекстового поиска по названию и описанию фильмов: терм -> id фильмов.
+// Находятся фильмы, содержащие все термы запроса; релевантность - сумма idf термов,
+// совпадение в названии весит больше совпадения в описании
+public class FilmSearchIndex extends LazyIndex<Collection<Film>> implements FilmIndex {
+    private static final double NAME_WEIGHT = 3;
+    private static final double DESCRIPTION_WEIGHT = 1;
+
+    private final Map<String, Postings> postings = new ConcurrentHashMap<>();
+    private final Map<Integer, IndexedFilm> films = new ConcurrentHashMap<>();
+
+    public synchronized void update(Film film) {
+        if (isLoaded()) {
+            remove(film.getId());
+            put(film);
+        }
+    }
+
+    public synchronized void remove(Integer filmId) {
+        IndexedFilm film = films.remove(filmId);
+
+        if (film == null) {
+            return;
+        }
+
+        for (Postings termPostings : film.nameTerms) {
+            termPostings.name.remove(filmId.intValue());
+            removeIfEmpty(termPostings);
+        }
+
+        for (Postings termPostings : film.descriptionTerms) {
+            termPostings.description.remove(filmId.intValue());
+            removeIfEmpty(termPostings);
+        }
+    }
+
+    // likeCounts - количество лайков фильма для повышения популярных фильмов в выдаче, может быть null
+    public List<Integer> search(String query, int from, int size, IntUnaryOperator likeCounts) {
+        List<Postings> queryPostings = new ArrayList<>();
+
+        for (String term : SearchTokenizer.tokenize(query)) {
+            Postings termPostings = postings.get(term);
+
+            if (termPostings == null) {
+                return List.of();
+            }
+
+            queryPostings.add(termPostings);
+        }
+
+        if (queryPostings.isEmpty()) {
+            return List.of();
+        }
+
+        // пересечение множеств фильмов по всем термам, начиная с самого редкого
+        queryPostings.sort((first, second) -> Integer.compare(first.size(), second.size()));
+        IntSet matches = null;
+        double[] idf = new double[queryPostings.size()];
+        int filmsCount = films.size();
+
+        for (int i = 0; i < queryPostings.size(); i++) {
+            IntSet termFilms = queryPostings.get(i).getFilms();
+            idf[i] = Math.log(1 + (double) filmsCount / Math.max(1, termFilms.size()));
+            matches = matches == null ? termFilms : IntSet.intersection(matches, termFilms);
+        }
+
+        // оценки считаются в массивах: совпадения по названию проходятся слиянием отсортированных id
+        int[] filmIds = matches.toIntArray();
+        double[] scores = new double[filmIds.length];
+
+        for (int i = 0; i < queryPostings.size(); i++) {
+            int[] nameIds = IntSet.intersection(matches, queryPostings.get(i).name).toIntArray();
+
+            for (int j = 0, k = 0; j < filmIds.length; j++) {
+                boolean inName = k < nameIds.length && nameIds[k] == filmIds[j];
+                scores[j] += idf[i] * (inName ? NAME_WEIGHT : DESCRIPTION_WEIGHT);
+
+                if (inName) {
+                    k++;
+                }
+            }
+        }
+
+        if (likeCounts != null) {
+            for (int j = 0; j < filmIds.length; j++) {
+                scores[j] += Math.log1p(likeCounts.applyAsInt(filmIds[j]));
+            }
+        }
+
+        int count = (int) Math.min((long) from + size, Integer.MAX_VALUE);
+        List<Integer> topIds = TopScores.getTopIds(filmIds, scores, count);
+        return from >= topIds.size() ? List.of() : topIds.subList(from, topIds.size());
+    }
+
+    public int getTermsCount() {
+        return postings.size();
+    }
+
+    @Override
+    public void filmUpdated(Film film) {
+        update(film);
+    }
+
+    @Override
+    public void filmDeleted(Integer filmId) {
+        remove(filmId);
+    }
+
+    @Override
+    public void allFilmsDeleted() {
+        clear();
+    }
+
+    @Override
+    public void filmsImported() {
+        invalidate();
+    }
+
+    @Override
+    protected void reset() {
+        postings.clear();
+        films.clear();
+    }
+
+    @Override
+    protected void load(Collection<Film> allFilms) {
+        for (Film film : allFilms) {
+            put(film);
+        }
+    }
+
+    private void put(Film film) {
+        films.put(film.getId(), new IndexedFilm(
+                addTerms(film.getId(), SearchTokenizer.tokenize(film.getName()), true),
+                addTerms(film.getId(), SearchTokenizer.tokenize(film.getDescription()), false)));
+    }
+
+    // фильм хранит ссылки на свои списки, чтобы при удалении не разбирать текст повторно
+    private Postings[] addTerms(Integer filmId, Set<String> terms, boolean name) {
+        Postings[] filmPostings = new Postings[terms.size()];
+        int i = 0;
+
+        for (String term : terms) {
+            Postings termPostings = postings.computeIfAbsent(term, Postings::new);
+            (name ? termPostings.name : termPostings.description).add(filmId.intValue());
+            filmPostings[i++] = termPostings;
+        }
+
+        return filmPostings;
+    }
+
+    private void removeIfEmpty(Postings termPostings) {
+        if (termPostings.name.isEmpty() && termPostings.description.isEmpty()) {
+            postings.remove(termPostings.term, termPostings);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Postings {
+        private final String term;
+        private final IntSet name = new IntSet();
+        private final IntSet description = new IntSet();
+
+        private int size() {
+            return name.size() + description.size();
+        }
+
+        private IntSet getFilms() {
+            IntSet films = IntSet.copyOf(name);
+            films.addAll(description);
+            return films;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class IndexedFilm {
+        private final Postings[] nameTerms;
+        private final Postings[] descriptionTerms;
+    }
+}
@@ -1,64 +1,411 @@
 package ru.yandex.practicum.filmorate.service.film;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.LikeResult;
 import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.Projection;
+import ru.yandex.practicum.filmorate.service.BulkImport;
+import ru.yandex.practicum.filmorate.service.PageCursor;
+import ru.yandex.practicum.filmorate.service.user.UserDeletedEvent;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import javax.annotation.PostConstruct;
 import java.time.LocalDate;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 @Getter
 @Slf4j
 public class FilmService {
+    static final int IMPORT_CHUNK_SIZE = 1000;
+
     private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
     private final LocalDate creationDate = LocalDate.of(1895, 12, 28);
+    private final PopularityLeaderboard popularityLeaderboard = new PopularityLeaderboard();
+    private final FacetLeaderboards facetLeaderboards = new FacetLeaderboards();
+    private final SimilarFilmsIndex similarFilmsIndex = new SimilarFilmsIndex();
+    private final RecommendationIndex recommendationIndex = new RecommendationIndex();
+    private final FilmSearchIndex filmSearchIndex = new FilmSearchIndex();
+    private final FilmNameIndex filmNameIndex = new FilmNameIndex();
+    private final FilmVersions filmVersions = new FilmVersions();
+    // индексы узнают об изменениях в этом порядке, версии для ETag меняются последними
+    private final List<FilmIndex> indexes = List.of(popularityLeaderboard, facetLeaderboards, similarFilmsIndex,
+            recommendationIndex, filmSearchIndex, filmNameIndex, filmVersions);
+    // рейтинги меняют счетчик лайков на +1/-1. Лайк, записанный в хранилище, пока рейтинг читает данные,
+    // попал бы в него дважды, поэтому запись лайка вместе с рассылкой индексам и перестроение рейтинга
+    // не пересекаются: лайки идут параллельно друг другу под общей блокировкой, перестроение - под монопольной
+    @Getter(AccessLevel.NONE)
+    private final ReadWriteLock likeChanges = new ReentrantReadWriteLock();
+
+    @PostConstruct
+    public void loadPopularity() {
+        likeChanges.writeLock().lock();
+        try {
+            popularityLeaderboard.rebuild(filmStorage::getFilmLikeCounts);
+        } finally {
+            likeChanges.writeLock().unlock();
+        }
+        log.info("Загружен рейтинг популярности фильмов");
+    }
+
+    public void loadFacets() {
+        likeChanges.writeLock().lock();
+        try {
+            facetLeaderboards.rebuild(filmStorage::getFilms);
+        } finally {
+            likeChanges.writeLock().unlock();
+        }
+        log.info("Загружены рейтинги популярности фильмов по жанрам, MPA и годам");
+    }
+
+    // рейтинги по признакам строятся в фоне, до этого фильтрованный топ берется из БД
+    @Scheduled(initialDelayString = "${filmorate.popular.facets.initial-delay-ms:0}",
+            fixedDelayString = "${filmorate.popular.facets.reload-interval-ms:10000}")
+    public void reloadFacetsIfNeeded() {
+        if (!facetLeaderboards.isLoaded()) {
+            loadFacets();
+        }
+    }
+
+    public void loadSearchIndex() {
+        filmSearchIndex.rebuild(filmStorage::getFilms);
+        log.info("Построен поисковый индекс фильмов");
+    }
+
+    public void loadFilmNames() {
+        filmNameIndex.rebuild(() -> {
+            Map<Integer, List<String>> names = new HashMap<>();
+            filmStorage.getFilmNames().forEach((filmId, name) -> names.put(filmId, List.of(name)));
+            return names;
+        });
+        log.info("Построен индекс автодополнения названий фильмов");
+    }
+
+    public void loadSimilarFilms() {
+        similarFilmsIndex.rebuild(filmStorage::getAllFilmLikes);
+        log.info("Построен индекс похожих фильмов");
+    }
+
+    // индекс строится и обновляется в фоне, запросы читают уже посчитанные списки соседей
+    @Scheduled(initialDelayString = "${filmorate.similar-films.initial-delay-ms:0}",
+            fixedDelayString = "${filmorate.similar-films.refresh-interval-ms:10000}")
+    public void refreshSimilarFilms() {
+        if (!similarFilmsIndex.isLoaded()) {
+            loadSimilarFilms();
+        } else {
+            similarFilmsIndex.refresh();
+        }
+    }
+
+    public void loadRecommendations() {
+        recommendationIndex.rebuild(filmStorage::getAllFilmLikes);
+        log.info("Построен индекс рекомендаций фильмов");
+    }
+
+    @Scheduled(initialDelayString = "${filmorate.recommendations.initial-delay-ms:0}",
+            fixedDelayString = "${filmorate.recommendations.refresh-interval-ms:10000}")
+    public void refreshRecommendations() {
+        if (!recommendationIndex.isLoaded()) {
+            loadRecommendations();
+        } else {
+            recommendationIndex.refresh();
+        }
+    }
 
     public List<Film> getFilms() {
-        return filmStorage.getFilms();
+        return getFilms(Projection.ALL);
+    }
+
+    public List<Film> getFilms(Projection projection) {
+        return filmStorage.getFilms(projection);
+    }
+
+    public void exportFilms(Consumer<Film> action) {
+        filmStorage.exportFilms(action);
+    }
+
+    public Page<Film> getFilmsPage(String cursor, int limit) {
+        return getFilmsPage(cursor, limit, Projection.ALL);
+    }
+
+    public Page<Film> getFilmsPage(String cursor, int limit, Projection projection) {
+        PageCursor.validateLimit(limit);
+        List<Film> films = filmStorage.getFilmsAfterId(PageCursor.decode(cursor), limit + 1, projection);
+        return PageCursor.toPage(films, limit, Film::getId);
     }
 
     public Film getFilmById(Integer filmId) {
-        return filmStorage.getFilmById(filmId);
+        return getFilmById(filmId, Projection.ALL);
+    }
+
+    public Film getFilmById(Integer filmId, Projection projection) {
+        return filmStorage.getFilmById(filmId, projection);
     }
 
     public Film createFilm(Film film) {
         validate(film, "создать");
-        return filmStorage.createFilm(film);
+        Film createdFilm = filmStorage.createFilm(film);
+        indexes.forEach(index -> index.filmCreated(createdFilm));
+        return createdFilm;
     }
 
     public Film updateFilm(Film film) {
         validate(film, "обновить");
-        return filmStorage.updateFilm(film);
+        Film updatedFilm = filmStorage.updateFilm(film);
+        indexes.forEach(index -> index.filmUpdated(updatedFilm));
+        return updatedFilm;
+    }
+
+    // строки проверяются так же, как при создании фильма, и пишутся пакетами, каждый в своей транзакции.
+    // Индексы после импорта строятся заново: это дешевле, чем обновлять их по одной строке
+    public ImportResult importFilms(BulkImport bulkImport) {
+        ImportResult result = bulkImport.run(IMPORT_CHUNK_SIZE,
+                row -> {
+                    Film film = row.read(Film.class);
+                    validate(film, "импортировать");
+                    return film;
+                },
+                films -> {
+                    filmStorage.createFilms(films);
+                    return Collections.nCopies(films.size(), null);
+                });
+
+        indexes.forEach(FilmIndex::filmsImported);
+        log.info("Импортировано фильмов: {}, строк с ошибками: {}", result.getImported(), result.getFailed());
+        return result;
+    }
+
+    public ImportResult importLikes(BulkImport bulkImport) {
+        ImportResult result = bulkImport.run(IMPORT_CHUNK_SIZE,
+                row -> new FilmLike(row.getInt("filmId"), row.getInt("userId")),
+                likes -> {
+                    boolean[] added = filmStorage.addLikes(likes);
+
+                    List<String> errors = new ArrayList<>(likes.size());
+                    for (int i = 0; i < added.length; i++) {
+                        errors.add(added[i] ? null : String.format("Фильм с id %d или пользователь с id %d не найден",
+                                likes.get(i).getFilmId(), likes.get(i).getUserId()));
+                    }
+                    return errors;
+                });
+
+        indexes.forEach(FilmIndex::likesImported);
+        log.info("Импортировано лайков: {}, строк с ошибками: {}", result.getImported(), result.getFailed());
+        return result;
     }
 
     public Map<String, String> deleteFilmById(Integer filmId) {
-        return filmStorage.deleteFilmById(filmId);
+        Map<String, String> result = filmStorage.deleteFilmById(filmId);
+        indexes.forEach(index -> index.filmDeleted(filmId));
+        return result;
     }
 
     public Map<String, String> deleteAllFilms() {
-        return filmStorage.deleteAllFilms();
+        Map<String, String> result = filmStorage.deleteAllFilms();
+        indexes.forEach(FilmIndex::allFilmsDeleted);
+        return result;
     }
 
     public Film addLikeToFilm(Integer filmId, Integer userId) {
-        return filmStorage.addLikeToFilm(filmId, userId);
+        return addLike(filmId, userId, true).getFilm();
     }
 
     public Film deleteLikeFromFilm(Integer filmId, Integer userId) {
-        return filmStorage.deleteLikeFromFilm(filmId, userId);
+        return deleteLike(filmId, userId, true).getFilm();
+    }
+
+    // повторный лайк или удаление отсутствующего лайка ничего не меняют: индексы и версии для ETag не трогаются
+    public LikeResult addLike(Integer filmId, Integer userId, boolean withFilm) {
+        LikeResult likeResult;
+        likeChanges.readLock().lock();
+        try {
+            likeResult = filmStorage.addLike(filmId, userId);
+            if (likeResult.isChanged()) {
+                indexes.forEach(index -> index.likeAdded(filmId, userId));
+            }
+        } finally {
+            likeChanges.readLock().unlock();
+        }
+
+        if (withFilm) {
+            likeResult.setFilm(filmStorage.getFilmById(filmId));
+        }
+
+        return likeResult;
+    }
+
+    public LikeResult deleteLike(Integer filmId, Integer userId, boolean withFilm) {
+        LikeResult likeResult;
+        likeChanges.readLock().lock();
+        try {
+            likeResult = filmStorage.deleteLike(filmId, userId);
+            if (likeResult.isChanged()) {
+                indexes.forEach(index -> index.likeDeleted(filmId, userId));
+            }
+        } finally {
+            likeChanges.readLock().unlock();
+        }
+
+        if (withFilm) {
+            likeResult.setFilm(filmStorage.getFilmById(filmId));
+        }
+
+        return likeResult;
     }
 
     public List<Film> getPopularFilms(Integer count) {
-        return filmStorage.getPopularFilms(count);
+        return getPopularFilms(count, Projection.ALL);
+    }
+
+    public List<Film> getPopularFilms(Integer count, Projection projection) {
+        validateCount(count);
+
+        if (!popularityLeaderboard.isLoaded()) {
+            loadPopularity();
+        }
+
+        return filmStorage.getFilmsByIds(popularityLeaderboard.getTopFilmIds(count), projection);
+    }
+
+    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
+        return getPopularFilms(count, genreId, mpaId, year, Projection.ALL);
+    }
+
+    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year,
+                                      Projection projection) {
+        validateCount(count);
+
+        if (genreId == null && mpaId == null && year == null) {
+            return getPopularFilms(count, projection);
+        }
+
+        // проверка существования жанра и рейтинга
+        if (genreId != null) {
+            filmStorage.getGenreById(genreId);
+        }
+        if (mpaId != null) {
+            filmStorage.getMPAById(mpaId);
+        }
+
+        // пока индексы срезов строятся, фильмы читаются целиком и лишнее убирается после
+        if (!facetLeaderboards.isLoaded()) {
+            List<Film> films = new ArrayList<>();
+            for (Film film : filmStorage.getPopularFilms(count, genreId, mpaId, year)) {
+                films.add(film.project(projection));
+            }
+            return films;
+        }
+
+        return filmStorage.getFilmsByIds(facetLeaderboards.getTopFilmIds(count, genreId, mpaId, year), projection);
+    }
+
+    public List<Film> searchFilms(String query, int from, int size, boolean boostByLikes) {
+        if (from < 0 || size <= 0) {
+            throw new ValidationException("Параметр from не может быть отрицательным, а size должен быть больше 0");
+        }
+
+        if (!filmSearchIndex.isLoaded()) {
+            loadSearchIndex();
+        }
+
+        if (boostByLikes && !popularityLeaderboard.isLoaded()) {
+            loadPopularity();
+        }
+
+        List<Integer> filmIds = filmSearchIndex.search(query, from, size,
+                boostByLikes ? popularityLeaderboard::getLikeCount : null);
+        return filmStorage.getFilmsByIds(filmIds);
+    }
+
+    // подсказки по началу слов названия, популярные фильмы выше
+    public List<Film> autocompleteFilms(String prefix, int count) {
+        validateCount(count);
+
+        if (!filmNameIndex.isLoaded()) {
+            loadFilmNames();
+        }
+
+        if (!popularityLeaderboard.isLoaded()) {
+            loadPopularity();
+        }
+
+        return filmStorage.getFilmsByIds(filmNameIndex.complete(prefix, count, popularityLeaderboard::getLikeCount,
+                popularityLeaderboard::getTopFilmIds));
+    }
+
+    public List<Film> getSimilarFilms(Integer filmId, int count) {
+        validateCount(count);
+
+        // проверка существования фильма
+        filmStorage.getFilmById(filmId);
+
+        if (!similarFilmsIndex.isLoaded()) {
+            loadSimilarFilms();
+        }
+
+        return filmStorage.getFilmsByIds(similarFilmsIndex.getSimilarFilmIds(filmId, count));
+    }
+
+    public List<Film> getRecommendations(Integer userId, int count) {
+        validateCount(count);
+
+        // проверка существования пользователя, его друзья не нужны
+        userStorage.getUserById(userId, new Projection(null, Set.of()));
+
+        if (!recommendationIndex.isLoaded()) {
+            loadRecommendations();
+        }
+
+        return filmStorage.getFilmsByIds(recommendationIndex.getRecommendedFilmIds(userId, count));
+    }
+
+    // хранилища обрабатывают событие раньше, новая версия фильмов выдается уже по их новому состоянию
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        if (event.getUserId() == null) {
+            indexes.forEach(FilmIndex::allUsersDeleted);
+        } else {
+            indexes.forEach(index -> index.userDeleted(event.getUserId(), event.getLikedFilmIds()));
+        }
+    }
+
+    // версии для ETag читаются без обращения к хранилищу
+    public long getFilmVersion(Integer filmId) {
+        return filmVersions.getFilmVersion(filmId);
+    }
+
+    public long getCatalogVersion() {
+        return filmVersions.getCatalogVersion();
+    }
+
+    public long getReferenceDataVersion() {
+        return filmVersions.getReferenceVersion();
     }
 
     public List<Genre> getAllGenres() {
@@ -77,12 +424,18 @@ public class FilmService {
         return filmStorage.getMPAById(mpaId);
     }
 
+    private static void validateCount(Integer count) {
+        if (count == null || count <= 0) {
+            throw new ValidationException("Параметр count должен быть больше 0");
+        }
+    }
+
     public void validate(Film film, String messagePath) throws ValidationException {
         if (film.getName() == null || film.getName().trim().isBlank()) {
             throw new ValidationException("Не удалось " + messagePath + " фильм, т.к. наименование не заполнено");
         }
 
-        if (film.getDescription().trim().length() > 200) {
+        if (film.getDescription() != null && film.getDescription().trim().length() > 200) {
             throw new ValidationException("Не удалось " + messagePath +
                     " фильм, т.к. максимальная длина описания 200 символов.");
         }
@@ -98,17 +451,30 @@ public class FilmService {
         }
 
         if (film.getLikes() == null) {
-            film.setLikes(new HashSet<>());
+            film.setLikes(new IntSet());
         }
 
-        if (film.getGenres() == null) {
-            film.setGenres(new HashSet<>());
+        // жанры и рейтинг проверяются по справочнику и заменяются его экземплярами;
+        // неизвестный id в теле запроса - некорректные данные, а не отсутствующий ресурс
+        Set<Genre> genres = new LinkedHashSet<>();
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                try {
+                    genres.add(filmStorage.getGenreById(genre.getId()));
+                } catch (NotFoundException e) {
+                    throw new ValidationException("Не удалось " + messagePath + " фильм, " +
+                            "т.к. жанр с id " + genre.getId() + " не найден.");
+                }
+            }
         }
+        film.setGenres(genres);
 
-        if (film.getMpa() == null) {
-            film.setMpa(new MPA(1, "G", 0));
-        } else if (film.getMpa().getId() > 5) {
-            throw new RuntimeException("Указан несуществующий рейнтинг возрастного ограничения");
+        Integer mpaId = film.getMpa() == null ? 1 : film.getMpa().getId();
+        try {
+            film.setMpa(filmStorage.getMPAById(mpaId));
+        } catch (NotFoundException e) {
+            throw new ValidationException("Не удалось " + messagePath + " фильм, " +
+                    "т.к. рейтинг возрастного ограничения с id " + mpaId + " не найден.");
         }
     }
 }
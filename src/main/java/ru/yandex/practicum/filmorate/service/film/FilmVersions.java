@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// версии фильмов и каталога для ETag. Номера берутся из одной возрастающей последовательности,
+// начало которой зависит от времени старта, поэтому ETag не повторяются и после перезапуска
+public class FilmVersions implements FilmIndex {
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final ConcurrentHashMap<Integer, Long> filmVersions = new ConcurrentHashMap<>();
+    // справочники жанров и рейтингов меняются только вместе с перезапуском
+    private final long referenceVersion = sequence.incrementAndGet();
+    private final AtomicLong baseVersion = new AtomicLong(sequence.incrementAndGet());
+    private final AtomicLong catalogVersion = new AtomicLong(baseVersion.get());
+
+    // версия меняется уже после изменения данных, чтобы новый ETag не достался старому ответу
+    public void filmChanged(Integer filmId) {
+        long version = sequence.incrementAndGet();
+        filmVersions.merge(filmId, version, Math::max);
+        catalogVersion.accumulateAndGet(version, Math::max);
+    }
+
+    public void allFilmsChanged() {
+        long version = sequence.incrementAndGet();
+        baseVersion.accumulateAndGet(version, Math::max);
+        catalogVersion.accumulateAndGet(version, Math::max);
+    }
+
+    @Override
+    public void filmUpdated(Film film) {
+        filmChanged(film.getId());
+    }
+
+    @Override
+    public void filmDeleted(Integer filmId) {
+        filmChanged(filmId);
+    }
+
+    @Override
+    public void allFilmsDeleted() {
+        allFilmsChanged();
+    }
+
+    @Override
+    public void likeAdded(Integer filmId, Integer userId) {
+        filmChanged(filmId);
+    }
+
+    @Override
+    public void likeDeleted(Integer filmId, Integer userId) {
+        filmChanged(filmId);
+    }
+
+    @Override
+    public void userDeleted(Integer userId, Set<Integer> likedFilmIds) {
+        likedFilmIds.forEach(this::filmChanged);
+    }
+
+    @Override
+    public void allUsersDeleted() {
+        allFilmsChanged();
+    }
+
+    @Override
+    public void filmsImported() {
+        allFilmsChanged();
+    }
+
+    @Override
+    public void likesImported() {
+        allFilmsChanged();
+    }
+
+    public long getFilmVersion(Integer filmId) {
+        return Math.max(filmVersions.getOrDefault(filmId, 0L), baseVersion.get());
+    }
+
+    // меняется при любом изменении фильмов и лайков
+    public long getCatalogVersion() {
+        return catalogVersion.get();
+    }
+
+    public long getReferenceVersion() {
+        return referenceVersion;
+    }
+}
@@ -0,0 +1,179 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import lombok.Value;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.LazyIndex;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+// рейтинг фильмов по количеству лайков: изменение за O(log n), топ-N за O(N) без обращения к БД
+public class PopularityLeaderboard extends LazyIndex<Map<Integer, Integer>> implements FilmIndex {
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt(Entry::getLikeCount).reversed()
+            .thenComparingInt(Entry::getFilmId);
+
+    private final TreeSet<Entry> ranking = new TreeSet<>(ORDER);
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    public synchronized void update(Integer filmId, int likeCount) {
+        if (!isLoaded()) {
+            return;
+        }
+
+        Entry entry = entries.get(filmId);
+
+        if (entry != null) {
+            if (entry.getLikeCount() == likeCount) {
+                return;
+            }
+
+            ranking.remove(entry);
+        }
+
+        put(filmId, likeCount);
+    }
+
+    public synchronized void remove(Integer filmId) {
+        Entry entry = entries.remove(filmId);
+
+        if (entry != null) {
+            ranking.remove(entry);
+        }
+    }
+
+    // лайки меняют счетчик на разницу, а не ставят число из ответа хранилища: изменения от разных
+    // запросов могут прийти в другом порядке, а сумма от порядка не зависит. Фильма нет в рейтинге -
+    // он удален, и запоздавший лайк не должен вернуть его обратно
+    public synchronized void addToLikeCount(Integer filmId, int delta) {
+        Entry entry = entries.get(filmId);
+
+        if (entry == null) {
+            return;
+        }
+
+        ranking.remove(entry);
+        put(filmId, Math.max(0, entry.getLikeCount() + delta));
+    }
+
+    // счетчики фильмов, которые лайкал удаленный пользователь, уменьшаются на один
+    public synchronized void decrementLikeCounts(Set<Integer> filmIds) {
+        for (Integer filmId : filmIds) {
+            addToLikeCount(filmId, -1);
+        }
+    }
+
+    public synchronized void resetLikeCounts() {
+        List<Integer> filmIds = new ArrayList<>(entries.keySet());
+        reset();
+
+        for (Integer filmId : filmIds) {
+            put(filmId, 0);
+        }
+    }
+
+    public synchronized int getLikeCount(int filmId) {
+        Entry entry = entries.get(filmId);
+        return entry == null ? 0 : entry.getLikeCount();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public List<Integer> getTopFilmIds(int count) {
+        return getTopFilmIds(count, filmId -> true);
+    }
+
+    // обход рейтинга сверху с пропуском фильмов, не подходящих под фильтр
+    public synchronized List<Integer> getTopFilmIds(int count, IntPredicate filter) {
+        List<Integer> filmIds = new ArrayList<>(Math.min(count, ranking.size()));
+        Iterator<Entry> iterator = ranking.iterator();
+
+        while (filmIds.size() < count && iterator.hasNext()) {
+            int filmId = iterator.next().getFilmId();
+
+            if (filter.test(filmId)) {
+                filmIds.add(filmId);
+            }
+        }
+
+        return filmIds;
+    }
+
+    @Override
+    public void filmCreated(Film film) {
+        update(film.getId(), 0);
+    }
+
+    @Override
+    public void filmDeleted(Integer filmId) {
+        remove(filmId);
+    }
+
+    @Override
+    public void allFilmsDeleted() {
+        clear();
+    }
+
+    @Override
+    public void likeAdded(Integer filmId, Integer userId) {
+        addToLikeCount(filmId, 1);
+    }
+
+    @Override
+    public void likeDeleted(Integer filmId, Integer userId) {
+        addToLikeCount(filmId, -1);
+    }
+
+    @Override
+    public void userDeleted(Integer userId, Set<Integer> likedFilmIds) {
+        decrementLikeCounts(likedFilmIds);
+    }
+
+    @Override
+    public void allUsersDeleted() {
+        resetLikeCounts();
+    }
+
+    @Override
+    public void filmsImported() {
+        invalidate();
+    }
+
+    @Override
+    public void likesImported() {
+        invalidate();
+    }
+
+    @Override
+    protected void reset() {
+        ranking.clear();
+        entries.clear();
+    }
+
+    @Override
+    protected void load(Map<Integer, Integer> likeCounts) {
+        for (Map.Entry<Integer, Integer> likeCount : likeCounts.entrySet()) {
+            put(likeCount.getKey(), likeCount.getValue());
+        }
+    }
+
+    private void put(Integer filmId, int likeCount) {
+        Entry entry = new Entry(filmId, likeCount);
+        entries.put(filmId, entry);
+        ranking.add(entry);
+    }
+
+    @Value
+    private static class Entry {
+        int filmId;
+        int likeCount;
+    }
+}
@@ -0,0 +1,297 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.service.LazyIndex;
+import ru.yandex.practicum.filmorate.service.TopScores;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// рекомендации фильмов по лайкам пользователей с похожими вкусами.
+// Для каждого пользователя хранится MinHash-подпись множества лайкнутых фильмов, разбитая на полосы (LSH):
+// пользователи с совпадающей полосой попадают в одну корзину и становятся кандидатами в соседи.
+// Среди кандидатов выбираются самые похожие по точному коэффициенту Жаккара, фильмы соседей
+// оцениваются суммой их сходства с пользователем. Подписи пересчитываются в refresh вне монитора индекса,
+// поэтому лайки не ждут окончания пересчета, в том числе первого построения
+public class RecommendationIndex extends LazyIndex<Map<Integer, ? extends Set<Integer>>> implements FilmIndex {
+    static final int BANDS = 32;
+    static final int ROWS = 2;
+    private static final int SIGNATURE_SIZE = BANDS * ROWS;
+    private static final int MAX_BUCKET_CANDIDATES = 1000;
+    private static final int MAX_NEIGHBORS = 50;
+    private static final long[] SEEDS = new Random(42).longs(SIGNATURE_SIZE).toArray();
+
+    private final Map<Integer, IntSet> userLikes = new ConcurrentHashMap<>();
+    private final Map<Integer, int[]> signatures = new ConcurrentHashMap<>();
+    private final Map<Long, IntSet> buckets = new ConcurrentHashMap<>();
+    private final Set<Integer> dirtyUsers = ConcurrentHashMap.newKeySet();
+    // пересчеты выполняются по одному
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    @Override
+    public void rebuild(Supplier<? extends Map<Integer, ? extends Set<Integer>>> filmLikes) {
+        super.rebuild(filmLikes);
+        refresh();
+    }
+
+    public synchronized void addLike(Integer filmId, Integer userId) {
+        if (isLoaded() && userLikes.computeIfAbsent(userId, id -> new IntSet()).add(filmId.intValue())) {
+            dirtyUsers.add(userId);
+        }
+    }
+
+    public synchronized void deleteLike(Integer filmId, Integer userId) {
+        IntSet films = userLikes.get(userId);
+
+        if (isLoaded() && films != null && films.remove(filmId.intValue())) {
+            dirtyUsers.add(userId);
+        }
+    }
+
+    // фильм убирается из лайков пользователей, их подписи пересчитываются при следующем refresh
+    public synchronized void removeFilm(Integer filmId) {
+        for (Map.Entry<Integer, IntSet> likes : userLikes.entrySet()) {
+            if (likes.getValue().remove(filmId.intValue())) {
+                dirtyUsers.add(likes.getKey());
+            }
+        }
+    }
+
+    public synchronized void removeUser(Integer userId) {
+        userLikes.remove(userId);
+        dirtyUsers.remove(userId);
+        unindex(userId);
+    }
+
+    // пересчет подписей пользователей, у которых изменились лайки, вызывается по расписанию.
+    // Подписи считаются в отдельную карту и раскладываются по корзинам под монитором; пользователь,
+    // лайкнувший фильм во время пересчета, снова помечен и будет пересчитан следующим вызовом
+    public void refresh() {
+        refreshLock.lock();
+
+        try {
+            if (dirtyUsers.isEmpty()) {
+                return;
+            }
+
+            List<Integer> userIds = new ArrayList<>(dirtyUsers);
+            dirtyUsers.removeAll(userIds);
+
+            Map<Integer, int[]> computedSignatures = new ConcurrentHashMap<>();
+            userIds.parallelStream().forEach(userId -> {
+                IntSet likes = userLikes.get(userId);
+
+                if (likes != null && !likes.isEmpty()) {
+                    computedSignatures.put(userId, computeSignature(likes.toIntArray()));
+                }
+            });
+
+            synchronized (this) {
+                for (Integer userId : userIds) {
+                    unindex(userId);
+
+                    int[] signature = computedSignatures.get(userId);
+                    if (signature != null && userLikes.containsKey(userId)) {
+                        index(userId, signature);
+                    }
+                }
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    @Override
+    public void filmDeleted(Integer filmId) {
+        removeFilm(filmId);
+    }
+
+    @Override
+    public void allFilmsDeleted() {
+        clear();
+    }
+
+    @Override
+    public void likeAdded(Integer filmId, Integer userId) {
+        addLike(filmId, userId);
+    }
+
+    @Override
+    public void likeDeleted(Integer filmId, Integer userId) {
+        deleteLike(filmId, userId);
+    }
+
+    @Override
+    public void userDeleted(Integer userId, Set<Integer> likedFilmIds) {
+        removeUser(userId);
+    }
+
+    @Override
+    public void allUsersDeleted() {
+        clear();
+    }
+
+    @Override
+    public void likesImported() {
+        invalidate();
+    }
+
+    @Override
+    protected void reset() {
+        userLikes.clear();
+        signatures.clear();
+        buckets.clear();
+        dirtyUsers.clear();
+    }
+
+    @Override
+    protected void load(Map<Integer, ? extends Set<Integer>> filmLikes) {
+        for (Map.Entry<Integer, ? extends Set<Integer>> filmUsers : filmLikes.entrySet()) {
+            for (Integer userId : filmUsers.getValue()) {
+                userLikes.computeIfAbsent(userId, id -> new IntSet()).add(filmUsers.getKey().intValue());
+            }
+        }
+
+        dirtyUsers.addAll(userLikes.keySet());
+    }
+
+    public int getDirtyUsersCount() {
+        return dirtyUsers.size();
+    }
+
+    public List<Integer> getRecommendedFilmIds(Integer userId, int count) {
+        IntSet likes = userLikes.get(userId);
+
+        if (likes == null || likes.isEmpty()) {
+            return List.of();
+        }
+
+        // подпись еще не пересчитана после последних лайков - считается на лету
+        int[] signature = signatures.get(userId);
+        if (signature == null || dirtyUsers.contains(userId)) {
+            signature = computeSignature(likes.toIntArray());
+        }
+
+        Map<Integer, Double> filmScores = new HashMap<>();
+        for (Map.Entry<Integer, Double> neighbor : getNeighbors(userId, likes, signature).entrySet()) {
+            IntSet neighborLikes = userLikes.get(neighbor.getKey());
+
+            if (neighborLikes == null) {
+                continue;
+            }
+
+            for (int filmId : neighborLikes.toIntArray()) {
+                if (!likes.contains(filmId)) {
+                    filmScores.merge(filmId, neighbor.getValue(), Double::sum);
+                }
+            }
+        }
+
+        return TopScores.getTopIds(filmScores, count);
+    }
+
+    private Map<Integer, Double> getNeighbors(Integer userId, IntSet likes, int[] signature) {
+        Set<Integer> candidates = new HashSet<>();
+
+        for (int band = 0; band < BANDS; band++) {
+            IntSet bucket = buckets.get(bucketKey(band, signature));
+
+            if (bucket != null) {
+                // из большой корзины берется случайная выборка, а не пользователи с меньшими id
+                for (int candidateId : bucket.sample(MAX_BUCKET_CANDIDATES)) {
+                    if (candidateId != userId) {
+                        candidates.add(candidateId);
+                    }
+                }
+            }
+        }
+
+        Map<Integer, Double> similarities = new HashMap<>();
+        int likesCount = likes.size();
+        for (Integer candidateId : candidates) {
+            IntSet candidateLikes = userLikes.get(candidateId);
+
+            if (candidateLikes != null) {
+                int intersection = IntSet.intersection(likes, candidateLikes).size();
+                similarities.put(candidateId,
+                        (double) intersection / (likesCount + candidateLikes.size() - intersection));
+            }
+        }
+
+        Map<Integer, Double> neighbors = new HashMap<>();
+        for (Integer neighborId : TopScores.getTopIds(similarities, MAX_NEIGHBORS)) {
+            neighbors.put(neighborId, similarities.get(neighborId));
+        }
+
+        return neighbors;
+    }
+
+    private void index(Integer userId, int[] signature) {
+        signatures.put(userId, signature);
+
+        for (int band = 0; band < BANDS; band++) {
+            buckets.computeIfAbsent(bucketKey(band, signature), key -> new IntSet()).add(userId.intValue());
+        }
+    }
+
+    private void unindex(Integer userId) {
+        int[] signature = signatures.remove(userId);
+
+        if (signature == null) {
+            return;
+        }
+
+        for (int band = 0; band < BANDS; band++) {
+            buckets.computeIfPresent(bucketKey(band, signature), (key, users) -> {
+                users.remove(userId.intValue());
+                return users.isEmpty() ? null : users;
+            });
+        }
+    }
+
+    // i-я компонента подписи - минимум i-й хеш-функции по всем лайкнутым фильмам
+    static int[] computeSignature(int[] filmIds) {
+        int[] signature = new int[SIGNATURE_SIZE];
+
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            int min = Integer.MAX_VALUE;
+
+            for (int filmId : filmIds) {
+                min = Math.min(min, hash(filmId, SEEDS[i]));
+            }
+
+            signature[i] = min;
+        }
+
+        return signature;
+    }
+
+    private static long bucketKey(int band, int[] signature) {
+        int hash = 1;
+
+        for (int row = 0; row < ROWS; row++) {
+            hash = 31 * hash + signature[band * ROWS + row];
+        }
+
+        return ((long) band << 32) | (hash & 0xFFFFFFFFL);
+    }
+
+    // перемешивание битов из MurmurHash3 (fmix64)
+    private static int hash(int value, long seed) {
+        long h = value ^ seed;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// разбиение текста на термы для поиска: нижний регистр, ё -> е, слова из букв и цифр,
+// отбрасывание типичных окончаний русских и английских слов ("фильмы" и "фильма" -> "фильм")
+final class SearchTokenizer {
+    private static final int MIN_STEM_LENGTH = 3;
+    private static final String[] RUSSIAN_ENDINGS = {
+        "иями", "ями", "ами", "ого", "его", "ому", "ему", "ыми", "ими", "ых", "их",
+        "ая", "яя", "ое", "ее", "ые", "ие", "ый", "ий", "ой", "ую", "юю", "ом", "ем", "ах", "ях",
+        "ов", "ев", "ей", "ам", "ям", "ия", "ья", "ье", "ию", "ью",
+        "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+    private static final String[] ENGLISH_ENDINGS = {"ing", "ed", "s"};
+
+    private SearchTokenizer() {
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+
+        if (text == null) {
+            return terms;
+        }
+
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letterOrDigit = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+
+            if (letterOrDigit && start < 0) {
+                start = i;
+            } else if (!letterOrDigit && start >= 0) {
+                terms.add(stem(normalized.substring(start, i)));
+                start = -1;
+            }
+        }
+
+        return terms;
+    }
+
+    static String stem(String word) {
+        String[] endings = isCyrillic(word) ? RUSSIAN_ENDINGS : ENGLISH_ENDINGS;
+
+        for (String ending : endings) {
+            // "class" и "glass" не теряют последнюю s
+            if (word.endsWith(ending) && word.length() - ending.length() >= MIN_STEM_LENGTH
+                    && !word.endsWith("ss")) {
+                return word.substring(0, word.length() - ending.length());
+            }
+        }
+
+        return word;
+    }
+
+    private static boolean isCyrillic(String word) {
+        return Character.UnicodeBlock.of(word.charAt(0)) == Character.UnicodeBlock.CYRILLIC;
+    }
+}
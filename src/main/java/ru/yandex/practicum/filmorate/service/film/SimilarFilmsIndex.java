@@ -0,0 +1,281 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.service.LazyIndex;
+import ru.yandex.practicum.filmorate.service.TopScores;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// похожие фильмы по лайкам ("кто лайкнул этот фильм, лайкнул и ..."): для каждого фильма хранится
+// топ соседей по коэффициенту Жаккара |A ∩ B| / |A ∪ B| множеств лайкнувших пользователей.
+// Лайки помечают затронутые фильмы, их соседи пересчитываются в refresh параллельно через fork/join.
+// Пересчет идет вне монитора индекса, поэтому лайки не ждут его окончания, а запросы до конца
+// пересчета получают прежних соседей
+public class SimilarFilmsIndex extends LazyIndex<Map<Integer, ? extends Set<Integer>>> implements FilmIndex {
+    static final int NEIGHBORS_COUNT = 20;
+    private static final int FILMS_PER_TASK = 64;
+
+    private final Map<Integer, IntSet> filmLikes = new ConcurrentHashMap<>();
+    private final Map<Integer, IntSet> userLikes = new ConcurrentHashMap<>();
+    private final Map<Integer, List<Integer>> neighbors = new ConcurrentHashMap<>();
+    private final Set<Integer> dirtyFilms = ConcurrentHashMap.newKeySet();
+    // пересчеты выполняются по одному
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    @Override
+    public void rebuild(Supplier<? extends Map<Integer, ? extends Set<Integer>>> likes) {
+        super.rebuild(likes);
+        refresh();
+    }
+
+    public synchronized void addLike(Integer filmId, Integer userId) {
+        if (isLoaded() && put(filmId, userId)) {
+            markDirty(filmId, userId);
+        }
+    }
+
+    public synchronized void deleteLike(Integer filmId, Integer userId) {
+        IntSet users = filmLikes.get(filmId);
+
+        if (!isLoaded() || users == null || !users.remove(userId.intValue())) {
+            return;
+        }
+
+        IntSet films = userLikes.get(userId);
+        if (films != null) {
+            films.remove(filmId.intValue());
+        }
+
+        markDirty(filmId, userId);
+    }
+
+    public synchronized void removeFilm(Integer filmId) {
+        IntSet users = filmLikes.remove(filmId);
+
+        if (users != null) {
+            for (int userId : users.toIntArray()) {
+                userLikes.get(userId).remove(filmId.intValue());
+            }
+        }
+
+        List<Integer> filmNeighbors = neighbors.remove(filmId);
+        if (filmNeighbors != null) {
+            dirtyFilms.addAll(filmNeighbors);
+        }
+        dirtyFilms.remove(filmId);
+    }
+
+    // лайки удаленного пользователя убираются, затронутые фильмы пересчитываются при следующем refresh
+    public synchronized void removeUser(Integer userId) {
+        IntSet films = userLikes.remove(userId);
+
+        if (films == null) {
+            return;
+        }
+
+        for (int filmId : films.toIntArray()) {
+            IntSet users = filmLikes.get(filmId);
+
+            if (users != null) {
+                users.remove(userId.intValue());
+            }
+
+            dirtyFilms.add(filmId);
+            dirtyFilms.addAll(neighbors.getOrDefault(filmId, List.of()));
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+        neighbors.clear();
+    }
+
+    // пересчет соседей измененных фильмов, вызывается по расписанию. Соседи считаются в отдельную
+    // карту и подменяются под монитором; фильм, измененный во время пересчета, снова помечен и будет
+    // пересчитан следующим вызовом
+    public void refresh() {
+        refreshLock.lock();
+
+        try {
+            if (dirtyFilms.isEmpty()) {
+                return;
+            }
+
+            List<Integer> filmIds = new ArrayList<>(dirtyFilms);
+            dirtyFilms.removeAll(filmIds);
+
+            Map<Integer, List<Integer>> computedNeighbors = new ConcurrentHashMap<>();
+            ForkJoinPool.commonPool().invoke(new RefreshTask(filmIds, 0, filmIds.size(), computedNeighbors));
+
+            synchronized (this) {
+                for (Integer filmId : filmIds) {
+                    List<Integer> filmNeighbors = computedNeighbors.getOrDefault(filmId, List.of());
+
+                    if (filmNeighbors.isEmpty() || !filmLikes.containsKey(filmId)) {
+                        neighbors.remove(filmId);
+                    } else {
+                        neighbors.put(filmId, filmNeighbors);
+                    }
+                }
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    @Override
+    public void filmDeleted(Integer filmId) {
+        removeFilm(filmId);
+    }
+
+    @Override
+    public void allFilmsDeleted() {
+        clear();
+    }
+
+    @Override
+    public void likeAdded(Integer filmId, Integer userId) {
+        addLike(filmId, userId);
+    }
+
+    @Override
+    public void likeDeleted(Integer filmId, Integer userId) {
+        deleteLike(filmId, userId);
+    }
+
+    @Override
+    public void userDeleted(Integer userId, Set<Integer> likedFilmIds) {
+        removeUser(userId);
+    }
+
+    @Override
+    public void allUsersDeleted() {
+        clear();
+    }
+
+    @Override
+    public void likesImported() {
+        invalidate();
+    }
+
+    public int getDirtyFilmsCount() {
+        return dirtyFilms.size();
+    }
+
+    public List<Integer> getSimilarFilmIds(Integer filmId, int count) {
+        List<Integer> filmNeighbors = neighbors.getOrDefault(filmId, List.of());
+        return filmNeighbors.subList(0, Math.min(count, filmNeighbors.size()));
+    }
+
+    // соседи не сбрасываются: после перестроения они отдаются, пока refresh не посчитает новые
+    @Override
+    protected void reset() {
+        filmLikes.clear();
+        userLikes.clear();
+        dirtyFilms.clear();
+    }
+
+    @Override
+    protected void load(Map<Integer, ? extends Set<Integer>> likes) {
+        for (Map.Entry<Integer, ? extends Set<Integer>> filmUsers : likes.entrySet()) {
+            for (Integer userId : filmUsers.getValue()) {
+                put(filmUsers.getKey(), userId);
+            }
+        }
+
+        neighbors.keySet().retainAll(filmLikes.keySet());
+        dirtyFilms.addAll(filmLikes.keySet());
+    }
+
+    private boolean put(Integer filmId, Integer userId) {
+        boolean added = filmLikes.computeIfAbsent(filmId, id -> new IntSet()).add(userId.intValue());
+        userLikes.computeIfAbsent(userId, id -> new IntSet()).add(filmId.intValue());
+        return added;
+    }
+
+    // лайк меняет сходство фильма со всеми фильмами пользователя и с текущими соседями фильма
+    private void markDirty(Integer filmId, Integer userId) {
+        dirtyFilms.add(filmId);
+        dirtyFilms.addAll(neighbors.getOrDefault(filmId, List.of()));
+
+        for (int likedFilmId : userLikes.get(userId).toIntArray()) {
+            dirtyFilms.add(likedFilmId);
+        }
+    }
+
+    private List<Integer> computeNeighbors(Integer filmId) {
+        IntSet users = filmLikes.get(filmId);
+
+        if (users == null || users.isEmpty()) {
+            return List.of();
+        }
+
+        // число общих лайкнувших считается обходом фильмов каждого лайкнувшего пользователя
+        Map<Integer, Integer> commonUsers = new HashMap<>();
+        for (int userId : users.toIntArray()) {
+            IntSet films = userLikes.get(userId);
+
+            if (films == null) {
+                continue;
+            }
+
+            for (int otherFilmId : films.toIntArray()) {
+                if (otherFilmId != filmId) {
+                    commonUsers.merge(otherFilmId, 1, Integer::sum);
+                }
+            }
+        }
+
+        int filmUsersCount = users.size();
+        Map<Integer, Double> similarities = new HashMap<>();
+        for (Map.Entry<Integer, Integer> common : commonUsers.entrySet()) {
+            IntSet otherUsers = filmLikes.get(common.getKey());
+
+            if (otherUsers != null) {
+                int intersection = common.getValue();
+                similarities.put(common.getKey(),
+                        (double) intersection / (filmUsersCount + otherUsers.size() - intersection));
+            }
+        }
+
+        return List.copyOf(TopScores.getTopIds(similarities, NEIGHBORS_COUNT));
+    }
+
+    private class RefreshTask extends RecursiveAction {
+        private final List<Integer> filmIds;
+        private final int from;
+        private final int to;
+        private final Map<Integer, List<Integer>> computedNeighbors;
+
+        private RefreshTask(List<Integer> filmIds, int from, int to, Map<Integer, List<Integer>> computedNeighbors) {
+            this.filmIds = filmIds;
+            this.from = from;
+            this.to = to;
+            this.computedNeighbors = computedNeighbors;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FILMS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    computedNeighbors.put(filmIds.get(i), computeNeighbors(filmIds.get(i)));
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new RefreshTask(filmIds, from, middle, computedNeighbors),
+                    new RefreshTask(filmIds, middle, to, computedNeighbors));
+        }
+    }
+}
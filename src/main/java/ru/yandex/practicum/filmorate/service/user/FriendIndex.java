@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.service.user;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.service.LazyIndex;
+import ru.yandex.practicum.filmorate.service.TopScores;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// id друзей всех пользователей в памяти для быстрого поиска общих друзей.
+// Чтение идет без блокировок, изменения и перестроение сериализуются
+@Slf4j
+public class FriendIndex extends LazyIndex<Map<Integer, ? extends Set<Integer>>> {
+    private final Map<Integer, IntSet> friends = new ConcurrentHashMap<>();
+
+    public synchronized void update(Integer userId, Set<Integer> friendIds) {
+        if (isLoaded()) {
+            friends.put(userId, IntSet.copyOf(friendIds));
+        }
+    }
+
+    // удаленный пользователь пропадает и из друзей остальных
+    public synchronized void removeUser(Integer userId) {
+        friends.remove(userId);
+
+        for (IntSet friendIds : friends.values()) {
+            friendIds.remove(userId.intValue());
+        }
+    }
+
+    public int getFriendsCount(int userId) {
+        IntSet friendIds = friends.get(userId);
+        return friendIds == null ? 0 : friendIds.size();
+    }
+
+    public IntSet getCommonFriendIds(Integer userId, Integer otherId) {
+        return IntSet.intersection(getFriendIds(userId), getFriendIds(otherId));
+    }
+
+    // друзья друзей, которых еще нет в друзьях, по убыванию числа общих друзей.
+    // Обход ограничен случайной выборкой из maxFanOut друзей на каждом шаге и бюджетом времени:
+    // при его превышении возвращается лучшее из уже найденного
+    public List<Integer> getSuggestedFriendIds(Integer userId, int count, int maxFanOut, Duration timeBudget) {
+        long deadline = System.nanoTime() + timeBudget.toNanos();
+        IntSet userFriends = getFriendIds(userId);
+        Map<Integer, Integer> mutualCounts = new HashMap<>();
+
+        for (int friendId : userFriends.sample(maxFanOut)) {
+            if (System.nanoTime() >= deadline) {
+                log.info("Подбор друзей для пользователя с id {} прерван по времени", userId);
+                break;
+            }
+
+            IntSet friendFriends = friends.get(friendId);
+
+            if (friendFriends == null) {
+                continue;
+            }
+
+            for (int candidateId : friendFriends.sample(maxFanOut)) {
+                if (candidateId != userId && !userFriends.contains(candidateId)) {
+                    mutualCounts.merge(candidateId, 1, Integer::sum);
+                }
+            }
+        }
+
+        return TopScores.getTopIds(mutualCounts, count);
+    }
+
+    @Override
+    protected void reset() {
+        friends.clear();
+    }
+
+    @Override
+    protected void load(Map<Integer, ? extends Set<Integer>> friendIds) {
+        for (Map.Entry<Integer, ? extends Set<Integer>> userFriends : friendIds.entrySet()) {
+            friends.put(userFriends.getKey(), IntSet.copyOf(userFriends.getValue()));
+        }
+    }
+
+    private IntSet getFriendIds(Integer userId) {
+        IntSet friendIds = friends.get(userId);
+
+        if (friendIds == null) {
+            throw new NotFoundException(String.format("Пользователь с id %d не найден", userId));
+        }
+
+        return friendIds;
+    }
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.service.user;
+
+import lombok.Value;
+
+import java.util.Set;
+
+// публикуется после удаления пользователя вместе с его лайками, userId == null - удалены все пользователи.
+// likedFilmIds - фильмы, которые пользователь лайкал до удаления
+@Value
+public class UserDeletedEvent {
+    Integer userId;
+    Set<Integer> likedFilmIds;
+}
@@ -2,58 +2,262 @@ package ru.yandex.practicum.filmorate.service.user;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.Projection;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.BulkImport;
+import ru.yandex.practicum.filmorate.service.PageCursor;
+import ru.yandex.practicum.filmorate.service.PrefixIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class UserService {
+    static final int IMPORT_CHUNK_SIZE = 1000;
+
     private final UserStorage userStorage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final FriendIndex friendIndex = new FriendIndex();
+    private final PrefixIndex userLoginIndex = new PrefixIndex();
+    // ограничения подбора друзей: сколько друзей просматривается на каждом шаге и сколько длится подбор
+    @Value("${filmorate.friends.suggestions.max-fan-out:1000}")
+    private int suggestionsMaxFanOut = 1000;
+    @Value("${filmorate.friends.suggestions.time-budget:50ms}")
+    private Duration suggestionsTimeBudget = Duration.ofMillis(50);
+
+    @PostConstruct
+    public void loadFriends() {
+        friendIndex.rebuild(userStorage::getAllFriendIds);
+        log.info("Загружен индекс друзей пользователей");
+    }
+
+    public void loadUserLogins() {
+        userLoginIndex.rebuild(() -> {
+            Map<Integer, List<String>> logins = new HashMap<>();
+            for (User user : userStorage.getUsers()) {
+                logins.put(user.getId(), searchableTexts(user));
+            }
+            return logins;
+        });
+        log.info("Построен индекс автодополнения логинов пользователей");
+    }
 
     public List<User> getUsers() {
-        return userStorage.getUsers();
+        return getUsers(Projection.ALL);
+    }
+
+    public List<User> getUsers(Projection projection) {
+        return userStorage.getUsers(projection);
+    }
+
+    public void exportUsers(Consumer<User> action) {
+        userStorage.exportUsers(action);
+    }
+
+    public Page<User> getUsersPage(String cursor, int limit) {
+        return getUsersPage(cursor, limit, Projection.ALL);
+    }
+
+    public Page<User> getUsersPage(String cursor, int limit, Projection projection) {
+        PageCursor.validateLimit(limit);
+        List<User> users = userStorage.getUsersAfterId(PageCursor.decode(cursor), limit + 1, projection);
+        return PageCursor.toPage(users, limit, User::getId);
     }
 
     public User getUserById(Integer userId) {
-        return userStorage.getUserById(userId);
+        return getUserById(userId, Projection.ALL);
+    }
+
+    public User getUserById(Integer userId, Projection projection) {
+        return userStorage.getUserById(userId, projection);
     }
 
     public User createUser(User user) {
-        return userStorage.createUser(user);
+        User createdUser = userStorage.createUser(user);
+        refreshFriends(createdUser.getId());
+        userLoginIndex.update(createdUser.getId(), searchableTexts(createdUser));
+        return createdUser;
     }
 
     public User updateUser(User user) {
-        return userStorage.updateUser(user);
+        User updatedUser = userStorage.updateUser(user);
+        refreshFriends(updatedUser.getId());
+        userLoginIndex.update(updatedUser.getId(), searchableTexts(updatedUser));
+        return updatedUser;
+    }
+
+    // строки проверяются правилами validate и пишутся пакетами, каждый в своей транзакции
+    public ImportResult importUsers(BulkImport bulkImport) {
+        ImportResult result = bulkImport.run(IMPORT_CHUNK_SIZE,
+                row -> {
+                    User user = row.read(User.class);
+                    validate(user, "импортировать");
+                    return user;
+                },
+                users -> {
+                    boolean[] created = userStorage.createUsers(users);
+
+                    List<String> errors = new ArrayList<>(users.size());
+                    for (int i = 0; i < created.length; i++) {
+                        errors.add(created[i] ? null : String.format(
+                                "Пользователь с email %s или логином %s уже существует",
+                                users.get(i).getEmail(), users.get(i).getLogin()));
+                    }
+                    return errors;
+                });
+
+        friendIndex.invalidate();
+        userLoginIndex.invalidate();
+        log.info("Импортировано пользователей: {}, строк с ошибками: {}", result.getImported(), result.getFailed());
+        return result;
+    }
+
+    public ImportResult importFriends(BulkImport bulkImport) {
+        ImportResult result = bulkImport.run(IMPORT_CHUNK_SIZE,
+                row -> {
+                    Friendship friendship = new Friendship(row.getInt("userId"), row.getInt("friendId"));
+
+                    if (friendship.getUserId() == friendship.getFriendId()) {
+                        throw new ValidationException("Пользователь не может добавить в друзья самого себя");
+                    }
+
+                    return friendship;
+                },
+                friendships -> {
+                    boolean[] added = userStorage.addFriends(friendships);
+
+                    List<String> errors = new ArrayList<>(friendships.size());
+                    for (int i = 0; i < added.length; i++) {
+                        errors.add(added[i] ? null : String.format("Пользователь с id %d или %d не найден",
+                                friendships.get(i).getUserId(), friendships.get(i).getFriendId()));
+                    }
+                    return errors;
+                });
+
+        friendIndex.invalidate();
+        log.info("Импортировано дружб: {}, строк с ошибками: {}", result.getImported(), result.getFailed());
+        return result;
     }
 
     public Map<String, String> deleteUserById(Integer userId) {
-        return userStorage.deleteUserById(userId);
+        Set<Integer> likedFilmIds = userStorage.getLikedFilmIds(userId);
+        Map<String, String> result = userStorage.deleteUserById(userId);
+        friendIndex.removeUser(userId);
+        userLoginIndex.remove(userId);
+        eventPublisher.publishEvent(new UserDeletedEvent(userId, likedFilmIds));
+        return result;
     }
 
     public Map<String, String> deleteAllUsers() {
-        return userStorage.deleteAllUsers();
+        Map<String, String> result = userStorage.deleteAllUsers();
+        friendIndex.clear();
+        userLoginIndex.clear();
+        eventPublisher.publishEvent(new UserDeletedEvent(null, Set.of()));
+        return result;
     }
 
     public User addFriend(Integer userId, Integer friendId) {
-        return userStorage.addFriend(userId, friendId);
+        User user = userStorage.addFriend(userId, friendId);
+        refreshFriends(userId, friendId);
+        return user;
     }
 
     public User deleteFriend(Integer userId, Integer friendId) {
-        return userStorage.deleteFriend(userId, friendId);
+        User user = userStorage.deleteFriend(userId, friendId);
+        refreshFriends(userId, friendId);
+        return user;
     }
 
     public List<User> getFriendList(Integer userId) {
-        return userStorage.getFriendList(userId);
+        return getFriendList(userId, Projection.ALL);
+    }
+
+    public List<User> getFriendList(Integer userId, Projection projection) {
+        return userStorage.getFriendList(userId, projection);
     }
 
     public List<User> getCommonFriendList(Integer userId, Integer otherId) {
-        return userStorage.getCommonFriendList(userId, otherId);
+        return getCommonFriendList(userId, otherId, 0, null);
+    }
+
+    public List<User> getCommonFriendList(Integer userId, Integer otherId, int from, Integer size) {
+        if (from < 0 || (size != null && size <= 0)) {
+            throw new ValidationException("Параметр from не может быть отрицательным, а size должен быть больше 0");
+        }
+
+        int[] commonFriendIds = getCommonFriendIds(userId, otherId);
+
+        int to = size == null ? commonFriendIds.length : (int) Math.min((long) from + size, commonFriendIds.length);
+        List<Integer> pageIds = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            pageIds.add(commonFriendIds[i]);
+        }
+
+        return userStorage.getUsersByIds(pageIds);
+    }
+
+    // id общих друзей по возрастанию, без обращения к БД
+    public int[] getCommonFriendIds(Integer userId, Integer otherId) {
+        if (!friendIndex.isLoaded()) {
+            loadFriends();
+        }
+
+        return friendIndex.getCommonFriendIds(userId, otherId).toIntArray();
+    }
+
+    public List<User> getFriendSuggestions(Integer userId, int count) {
+        if (count <= 0) {
+            throw new ValidationException("Параметр count должен быть больше 0");
+        }
+
+        if (!friendIndex.isLoaded()) {
+            loadFriends();
+        }
+
+        List<Integer> suggestedIds = friendIndex.getSuggestedFriendIds(userId, count,
+                suggestionsMaxFanOut, suggestionsTimeBudget);
+        return userStorage.getUsersByIds(suggestedIds);
+    }
+
+    // подсказки по началу логина или почты, пользователи с большим числом друзей выше
+    public List<User> autocompleteUsers(String prefix, int count) {
+        if (count <= 0) {
+            throw new ValidationException("Параметр count должен быть больше 0");
+        }
+
+        if (!userLoginIndex.isLoaded()) {
+            loadUserLogins();
+        }
+
+        if (!friendIndex.isLoaded()) {
+            loadFriends();
+        }
+
+        return userStorage.getUsersByIds(userLoginIndex.complete(prefix, count, friendIndex::getFriendsCount));
+    }
+
+    // индекс берет друзей из хранилища, т.к. в БД дружба односторонняя, а в памяти - взаимная
+    private void refreshFriends(Integer... userIds) {
+        for (User user : userStorage.getUsersByIds(List.of(userIds))) {
+            friendIndex.update(user.getId(), user.getFriends());
+        }
+    }
+
+    private static List<String> searchableTexts(User user) {
+        return Arrays.asList(user.getLogin(), user.getEmail());
     }
 
     public void validate(User user, String messagePath) throws ValidationException {
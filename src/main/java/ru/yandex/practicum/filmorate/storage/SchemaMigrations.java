@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashSet;
+import java.util.Set;
+
+// разовые переносы данных для баз, созданных прежними версиями схемы. Выполненная миграция
+// записывается в schema_migrations, при следующих запусках только сверяется список выполненных.
+// Миграция и ее запись идут разными запросами, поэтому миграция должна быть повторяемой
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SchemaMigrations {
+    static final String SELECT_APPLIED_MIGRATIONS = "SELECT migration_name FROM schema_migrations";
+    static final String INSERT_MIGRATION = "INSERT INTO schema_migrations (migration_name) VALUES (?)";
+    static final String FILM_LIKE_COUNT = "film_like_count";
+    // счетчик лайков фильмов, созданных до появления колонки film_like_count
+    static final String RECOUNT_FILM_LIKES = "UPDATE films f SET film_like_count = " +
+            "(SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.film_id) " +
+            "WHERE film_like_count <> (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.film_id)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void migrate() {
+        Set<String> applied = new HashSet<>(jdbcTemplate.queryForList(SELECT_APPLIED_MIGRATIONS, String.class));
+
+        apply(applied, FILM_LIKE_COUNT, RECOUNT_FILM_LIKES);
+    }
+
+    private void apply(Set<String> applied, String name, String statement) {
+        if (applied.contains(name)) {
+            return;
+        }
+
+        int updatedLines = jdbcTemplate.update(statement);
+        jdbcTemplate.update(INSERT_MIGRATION, name);
+        log.info("Выполнена миграция {}, изменено строк: {}", name, updatedLines);
+    }
+}
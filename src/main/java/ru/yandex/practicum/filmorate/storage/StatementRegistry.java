@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+// вставки с генерируемым ключом создаются и компилируются один раз: метаданные таблиц читаются из БД
+// при компиляции, а не при каждом создании фильма или пользователя. Скомпилированная вставка потокобезопасна
+@Component
+@Slf4j
+public class StatementRegistry {
+    private final SimpleJdbcInsert filmInsert;
+    private final SimpleJdbcInsert userInsert;
+
+    public StatementRegistry(JdbcTemplate jdbcTemplate) {
+        filmInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("films")
+                .usingColumns("film_name", "film_description", "film_release_date", "film_duration", "film_mpa_id")
+                .usingGeneratedKeyColumns("film_id");
+        userInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("users")
+                .usingColumns("user_email", "user_login", "user_name", "user_birthday")
+                .usingGeneratedKeyColumns("user_id");
+    }
+
+    // без вызова вставка компилируется при первом выполнении
+    @PostConstruct
+    public void compile() {
+        filmInsert.compile();
+        userInsert.compile();
+        log.info("Скомпилированы вставки в таблицы films и users");
+    }
+
+    public SimpleJdbcInsert getFilmInsert() {
+        return filmInsert;
+    }
+
+    public SimpleJdbcInsert getUserInsert() {
+        return userInsert;
+    }
+}
@@ -0,0 +1,310 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.LikeResult;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Projection;
+import ru.yandex.practicum.filmorate.service.user.UserDeletedEvent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// кэш фильмов по id перед хранилищем, сбрасывается при любом изменении фильма или его лайков
+@Slf4j
+public class CachingFilmStorage implements FilmStorage {
+    private final FilmStorage filmStorage;
+    private final Cache<Integer, Film> films;
+    // число сбросов кэша, по нему пакетная загрузка узнает, что фильмы менялись во время чтения
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public CachingFilmStorage(FilmStorage filmStorage, long maxSize, Duration ttl) {
+        this.filmStorage = filmStorage;
+        this.films = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public List<Film> getFilms(Projection projection) {
+        return filmStorage.getFilms(projection);
+    }
+
+    @Override
+    public List<Film> getFilmsAfterId(int afterId, int limit, Projection projection) {
+        return filmStorage.getFilmsAfterId(afterId, limit, projection);
+    }
+
+    @Override
+    public void exportFilms(Consumer<Film> action) {
+        filmStorage.exportFilms(action);
+    }
+
+    @Override
+    public Film getFilmById(Integer id) {
+        // наружу отдается копия, чтобы вызывающий код не мог изменить закэшированный фильм
+        return copyOf(films.get(id, filmStorage::getFilmById));
+    }
+
+    // в кэше только полные фильмы: промах без жанров или лайков читается из хранилища мимо кэша
+    @Override
+    public Film getFilmById(Integer id, Projection projection) {
+        if (isComplete(projection)) {
+            return getFilmById(id).project(projection);
+        }
+
+        Film cachedFilm = films.getIfPresent(id);
+        if (cachedFilm != null) {
+            return copyOf(cachedFilm).project(projection);
+        }
+
+        return filmStorage.getFilmById(id, projection);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Integer> ids) {
+        // недостающие в кэше фильмы догружаются одним запросом. Пока они читаются, фильм может измениться,
+        // поэтому прочитанное кладется в кэш, только если с начала чтения ничего не сбрасывалось
+        long invalidationsBeforeLoad = invalidations.get();
+        Map<Integer, Film> cachedFilms = new HashMap<>(films.getAllPresent(ids));
+
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer id : ids) {
+            if (!cachedFilms.containsKey(id)) {
+                missingIds.add(id);
+            }
+        }
+
+        if (!missingIds.isEmpty()) {
+            for (Film film : filmStorage.getFilmsByIds(missingIds)) {
+                cachedFilms.put(film.getId(), film);
+                // проверка и запись атомарны относительно сброса этого фильма
+                films.asMap().compute(film.getId(), (id, cachedFilm) -> cachedFilm != null ? cachedFilm
+                        : invalidations.get() == invalidationsBeforeLoad ? film : null);
+            }
+        }
+
+        List<Film> foundFilms = new ArrayList<>(cachedFilms.size());
+        for (Integer id : ids) {
+            Film film = cachedFilms.get(id);
+
+            if (film != null) {
+                foundFilms.add(copyOf(film));
+            }
+        }
+
+        return foundFilms;
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Integer> ids, Projection projection) {
+        if (isComplete(projection)) {
+            return project(getFilmsByIds(ids), projection);
+        }
+
+        Map<Integer, Film> cachedFilms = films.getAllPresent(ids);
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer id : ids) {
+            if (!cachedFilms.containsKey(id)) {
+                missingIds.add(id);
+            }
+        }
+
+        Map<Integer, Film> loadedFilms = new HashMap<>();
+        for (Film film : filmStorage.getFilmsByIds(missingIds, projection)) {
+            loadedFilms.put(film.getId(), film);
+        }
+
+        List<Film> projectedFilms = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Film cachedFilm = cachedFilms.get(id);
+            Film loadedFilm = loadedFilms.get(id);
+
+            if (cachedFilm != null) {
+                projectedFilms.add(copyOf(cachedFilm).project(projection));
+            } else if (loadedFilm != null) {
+                projectedFilms.add(loadedFilm);
+            }
+        }
+
+        return projectedFilms;
+    }
+
+    @Override
+    public Map<Integer, String> getFilmNames() {
+        return filmStorage.getFilmNames();
+    }
+
+    @Override
+    public Map<Integer, Integer> getFilmLikeCounts() {
+        return filmStorage.getFilmLikeCounts();
+    }
+
+    @Override
+    public Map<Integer, Set<Integer>> getAllFilmLikes() {
+        return filmStorage.getAllFilmLikes();
+    }
+
+    @Override
+    public Film createFilm(Film film) {
+        return filmStorage.createFilm(film);
+    }
+
+    @Override
+    public List<Film> createFilms(List<Film> films) {
+        return filmStorage.createFilms(films);
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        Film updatedFilm = filmStorage.updateFilm(film);
+        invalidate(film.getId());
+        return updatedFilm;
+    }
+
+    @Override
+    public Map<String, String> deleteFilmById(Integer id) {
+        Map<String, String> result = filmStorage.deleteFilmById(id);
+        invalidate(id);
+        return result;
+    }
+
+    @Override
+    public Map<String, String> deleteAllFilms() {
+        Map<String, String> result = filmStorage.deleteAllFilms();
+        invalidateAll();
+        return result;
+    }
+
+    @Override
+    public Film addLikeToFilm(Integer filmId, Integer userId) {
+        addLike(filmId, userId);
+        return getFilmById(filmId);
+    }
+
+    @Override
+    public Film deleteLikeFromFilm(Integer filmId, Integer userId) {
+        deleteLike(filmId, userId);
+        return getFilmById(filmId);
+    }
+
+    @Override
+    public LikeResult addLike(Integer filmId, Integer userId) {
+        LikeResult likeResult = filmStorage.addLike(filmId, userId);
+        invalidate(filmId);
+        return likeResult;
+    }
+
+    @Override
+    public LikeResult deleteLike(Integer filmId, Integer userId) {
+        LikeResult likeResult = filmStorage.deleteLike(filmId, userId);
+        invalidate(filmId);
+        return likeResult;
+    }
+
+    @Override
+    public boolean[] addLikes(List<FilmLike> likes) {
+        boolean[] added = filmStorage.addLikes(likes);
+
+        for (FilmLike like : likes) {
+            invalidate(like.getFilmId());
+        }
+
+        return added;
+    }
+
+    @Override
+    public List<Film> getPopularFilms(Integer count) {
+        return filmStorage.getPopularFilms(count);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
+        return filmStorage.getPopularFilms(count, genreId, mpaId, year);
+    }
+
+    @Override
+    public List<Genre> getAllGenres() {
+        return filmStorage.getAllGenres();
+    }
+
+    @Override
+    public Genre getGenreById(Integer genreId) {
+        return filmStorage.getGenreById(genreId);
+    }
+
+    @Override
+    public List<MPA> getAllMPA() {
+        return filmStorage.getAllMPA();
+    }
+
+    @Override
+    public MPA getMPAById(Integer mpaId) {
+        return filmStorage.getMPAById(mpaId);
+    }
+
+    // вместе с пользователем удаляются его лайки, поэтому закэшированные фильмы устаревают.
+    // Кэш сбрасывается до того, как FilmService сменит версии фильмов для ETag
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onUserDeleted(UserDeletedEvent event) {
+        invalidateAll();
+    }
+
+    public CacheStats getStats() {
+        return films.stats();
+    }
+
+    Cache<Integer, Film> getCache() {
+        return films;
+    }
+
+    // счетчик меняется до сброса: загрузка, начатая до изменения фильма, уже не положит его в кэш
+    private void invalidate(Integer id) {
+        invalidations.incrementAndGet();
+        films.invalidate(id);
+    }
+
+    private void invalidateAll() {
+        invalidations.incrementAndGet();
+        films.invalidateAll();
+    }
+
+    private static boolean isComplete(Projection projection) {
+        return projection.includes(Projection.GENRES) && projection.includes(Projection.LIKES);
+    }
+
+    private static List<Film> project(List<Film> films, Projection projection) {
+        List<Film> projectedFilms = new ArrayList<>(films.size());
+
+        for (Film film : films) {
+            projectedFilms.add(film.project(projection));
+        }
+
+        return projectedFilms;
+    }
+
+    private Film copyOf(Film film) {
+        return new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), new LinkedHashSet<>(film.getGenres()), film.getMpa(),
+                IntSet.copyOf(film.getLikes()));
+    }
+}
@@ -3,71 +3,238 @@ package ru.yandex.practicum.filmorate.storage.film;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
-import ru.yandex.practicum.filmorate.exceptions.AlreadyExistException;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.LikeResult;
 import ru.yandex.practicum.filmorate.model.MPA;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.Projection;
+import ru.yandex.practicum.filmorate.storage.StatementRegistry;
 import ru.yandex.practicum.filmorate.storage.film.mapper.FilmMapper;
-import ru.yandex.practicum.filmorate.storage.film.mapper.GenreMapper;
-import ru.yandex.practicum.filmorate.storage.film.mapper.MPAMapper;
-import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 
+// счетчики лайков читаются при старте, поэтому миграции данных выполняются раньше
 @Component
 @Slf4j
-@Primary
 @RequiredArgsConstructor
 @Qualifier("filmDbStorage")
+@DependsOn("schemaMigrations")
 public class FilmDbStorage implements FilmStorage {
+    static final String SELECT_FILMS = "SELECT f.* FROM films f";
+    static final String SELECT_FILM_BY_ID = SELECT_FILMS + " WHERE f.film_id = ?";
+    static final String SELECT_FILMS_BY_IDS = SELECT_FILMS + " WHERE f.film_id = ANY(?)";
+    static final String SELECT_FILMS_ORDERED_BY_ID = SELECT_FILMS + " ORDER BY f.film_id";
+    static final String SELECT_GENRES_ORDERED_BY_FILM_ID = "SELECT film_id, genre_id FROM films_genres " +
+            "ORDER BY film_id, genre_id";
+    static final String SELECT_LIKES_ORDERED_BY_FILM_ID = "SELECT film_id, user_id FROM film_likes " +
+            "ORDER BY film_id, user_id";
+    static final int EXPORT_FETCH_SIZE = 500;
+    static final String SELECT_FILMS_AFTER_ID = SELECT_FILMS + " WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?";
+    static final String SELECT_FILM_NAMES = "SELECT film_id, film_name FROM films";
+    static final String SELECT_FILM_LIKE_COUNTS = "SELECT film_id, film_like_count FROM films";
+    static final String SELECT_ALL_LIKES = "SELECT film_id, user_id FROM film_likes";
+    static final String ORDER_BY_POPULARITY = " ORDER BY f.film_like_count DESC, f.film_id LIMIT ?";
+    static final String SELECT_POPULAR_FILMS = SELECT_FILMS + ORDER_BY_POPULARITY;
+    static final String FILTER_BY_GENRE = " AND f.film_id IN (SELECT fg.film_id FROM films_genres fg " +
+            "WHERE fg.genre_id = ?)";
+    static final String FILTER_BY_MPA = " AND f.film_mpa_id = ?";
+    static final String FILTER_BY_RELEASE_YEAR = " AND f.film_release_date >= ? AND f.film_release_date < ?";
+    static final String SELECT_GENRES_BY_FILM_IDS = "SELECT film_id, genre_id " +
+            "FROM films_genres " +
+            "WHERE film_id = ANY(?) " +
+            "ORDER BY film_id, genre_id";
+    static final String SELECT_LIKES_BY_FILM_IDS = "SELECT film_id, user_id " +
+            "FROM film_likes " +
+            "WHERE film_id = ANY(?)";
+    static final String UPDATE_FILM = "UPDATE films SET film_name = ?, " +
+            "film_description = ?, " +
+            "film_release_date = ?, " +
+            "film_duration = ?, " +
+            "film_mpa_id = ? " +
+            "WHERE film_id = ?";
+    static final String INSERT_FILM = "INSERT INTO films (film_name, film_description, film_release_date, " +
+            "film_duration, film_mpa_id) VALUES (?, ?, ?, ?, ?)";
+    static final String DELETE_FILM_BY_ID = "DELETE FROM films WHERE film_id = ?";
+    static final String DELETE_ALL_FILMS = "DELETE FROM films";
+    static final String SELECT_GENRE_IDS_BY_FILM_ID = "SELECT genre_id FROM films_genres WHERE film_id = ?";
+    static final String INSERT_FILM_GENRE = "INSERT INTO films_genres (film_id, genre_id) VALUES (?, ?)";
+    static final String DELETE_FILM_GENRE = "DELETE FROM films_genres WHERE film_id = ? AND genre_id = ?";
+    static final String SELECT_LIKES_BY_FILM_ID = "SELECT user_id FROM film_likes WHERE film_id = ?";
+    static final String SELECT_USER_COUNT_BY_ID = "SELECT COUNT(*) FROM users WHERE user_id = ?";
+    static final String INSERT_LIKE = "INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)";
+    static final String INSERT_NEW_LIKE = "INSERT INTO film_likes (film_id, user_id) " +
+            "SELECT f.film_id, u.user_id FROM films f, users u WHERE f.film_id = ? AND u.user_id = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM film_likes fl WHERE fl.film_id = f.film_id AND fl.user_id = u.user_id)";
+    static final String SELECT_LIKES_BY_FILM_IDS_AND_USER_IDS = "SELECT film_id, user_id FROM film_likes " +
+            "WHERE film_id = ANY(?) AND user_id = ANY(?)";
+    static final String SELECT_LIKE_COUNT = "SELECT film_like_count FROM films WHERE film_id = ?";
+    static final String DELETE_LIKE = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
+    static final String INCREMENT_LIKE_COUNT = "UPDATE films SET film_like_count = film_like_count + 1 " +
+            "WHERE film_id = ?";
+    static final String DECREMENT_LIKE_COUNT = "UPDATE films SET film_like_count = film_like_count - 1 " +
+            "WHERE film_id = ?";
+    static final String ADD_TO_LIKE_COUNT = "UPDATE films SET film_like_count = film_like_count + ? " +
+            "WHERE film_id = ?";
+    static final String RECOUNT_LIKES = "UPDATE films SET film_like_count = " +
+            "(SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = ?) WHERE film_id = ?";
+    static final String SELECT_INCREMENTED_LIKE_COUNT = "SELECT film_like_count " +
+            "FROM FINAL TABLE (" + INCREMENT_LIKE_COUNT + ")";
+    static final String SELECT_DECREMENTED_LIKE_COUNT = "SELECT film_like_count " +
+            "FROM FINAL TABLE (" + DECREMENT_LIKE_COUNT + ")";
+
     private final JdbcTemplate jdbcTemplate;
-    @Qualifier("userDbStorage")
-    private final UserStorage userStorage;
+    private final ReferenceDataRegistry referenceData;
+    private final StatementRegistry statements;
 
     @Override
-    public List<Film> getFilms() {
-        String query = "SELECT " +
-                "f.*, " +
-                "m.mpa_name, " +
-                "m.mpa_min_age " +
-                "FROM films f " +
-                "JOIN mpa m ON f.film_mpa_id = m.mpa_id";
-        return jdbcTemplate.query(query, new FilmMapper(jdbcTemplate));
+    public List<Film> getFilms(Projection projection) {
+        return fillFilmsGenresAndLikes(jdbcTemplate.query(SELECT_FILMS, new FilmMapper(referenceData)), projection);
+    }
+
+    @Override
+    public List<Film> getFilmsAfterId(int afterId, int limit, Projection projection) {
+        return fillFilmsGenresAndLikes(
+                jdbcTemplate.query(SELECT_FILMS_AFTER_ID, new FilmMapper(referenceData), afterId, limit), projection);
+    }
+
+    // фильмы, жанры и лайки читаются тремя курсорами в порядке film_id и сливаются по ходу чтения,
+    // в памяти одновременно только текущий фильм и очередная порция строк каждого курсора
+    @Override
+    @Transactional(readOnly = true)
+    public void exportFilms(Consumer<Film> action) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement filmsStatement = prepareExport(connection, SELECT_FILMS_ORDERED_BY_ID);
+                 PreparedStatement genresStatement = prepareExport(connection, SELECT_GENRES_ORDERED_BY_FILM_ID);
+                 PreparedStatement likesStatement = prepareExport(connection, SELECT_LIKES_ORDERED_BY_FILM_ID);
+                 ResultSet films = filmsStatement.executeQuery();
+                 ResultSet genres = genresStatement.executeQuery();
+                 ResultSet likes = likesStatement.executeQuery()) {
+                FilmMapper filmMapper = new FilmMapper(referenceData);
+                boolean hasGenre = genres.next();
+                boolean hasLike = likes.next();
+
+                for (int rowNum = 0; films.next(); rowNum++) {
+                    Film film = filmMapper.mapRow(films, rowNum);
+                    int filmId = film.getId();
+
+                    // строки меньших id относятся к фильмам, удаленным во время выгрузки
+                    while (hasGenre && genres.getInt("film_id") < filmId) {
+                        hasGenre = genres.next();
+                    }
+                    while (hasGenre && genres.getInt("film_id") == filmId) {
+                        film.getGenres().add(referenceData.getGenreById(genres.getInt("genre_id")));
+                        hasGenre = genres.next();
+                    }
+
+                    while (hasLike && likes.getInt("film_id") < filmId) {
+                        hasLike = likes.next();
+                    }
+                    while (hasLike && likes.getInt("film_id") == filmId) {
+                        film.getLikes().add(likes.getInt("user_id"));
+                        hasLike = likes.next();
+                    }
+
+                    action.accept(film);
+                }
+            }
+
+            return null;
+        });
     }
 
     @Override
-    public Film getFilmById(Integer id) {
-        String query = "SELECT " +
-                "f.*, " +
-                "m.mpa_name, " +
-                "m.mpa_min_age " +
-                "FROM films f " +
-                "JOIN mpa m ON f.film_mpa_id = m.mpa_id " +
-                "WHERE f.film_id = ?";
+    public Film getFilmById(Integer id, Projection projection) {
         Film foundFilm;
 
         try {
-            foundFilm = jdbcTemplate.queryForObject(query, new FilmMapper(jdbcTemplate), id);
-            return foundFilm;
+            foundFilm = jdbcTemplate.queryForObject(SELECT_FILM_BY_ID, new FilmMapper(referenceData), id);
         } catch (RuntimeException e) {
             log.info("Фильм с id {} не найден", id);
             throw new NotFoundException(String.format("Фильм по id %d не найден", id));
         }
+
+        fillFilmsGenresAndLikes(List.of(foundFilm), projection);
+        return foundFilm;
     }
 
     @Override
-    public Film createFilm(Film film) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("films")
-                .usingGeneratedKeyColumns("film_id");
+    public List<Film> getFilmsByIds(List<Integer> ids, Projection projection) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        int id = simpleJdbcInsert.executeAndReturnKey(
+        List<Film> foundFilms = fillFilmsGenresAndLikes(
+                jdbcTemplate.query(SELECT_FILMS_BY_IDS, new FilmMapper(referenceData), (Object) ids.toArray()),
+                projection);
+
+        // фильмы возвращаются в порядке переданных id, удаленные пропускаются
+        Map<Integer, Film> filmsById = new HashMap<>();
+        for (Film film : foundFilms) {
+            filmsById.put(film.getId(), film);
+        }
+
+        List<Film> films = new ArrayList<>(foundFilms.size());
+        for (Integer id : ids) {
+            Film film = filmsById.get(id);
+
+            if (film != null) {
+                films.add(film);
+            }
+        }
+
+        return films;
+    }
+
+    @Override
+    public Map<Integer, String> getFilmNames() {
+        Map<Integer, String> names = new HashMap<>();
+        jdbcTemplate.query(SELECT_FILM_NAMES,
+                rs -> {
+                    names.put(rs.getInt("film_id"), rs.getString("film_name"));
+                });
+        return names;
+    }
+
+    @Override
+    public Map<Integer, Integer> getFilmLikeCounts() {
+        Map<Integer, Integer> likeCounts = new HashMap<>();
+        jdbcTemplate.query(SELECT_FILM_LIKE_COUNTS,
+                rs -> {
+                    likeCounts.put(rs.getInt("film_id"), rs.getInt("film_like_count"));
+                });
+        return likeCounts;
+    }
+
+    @Override
+    public Map<Integer, Set<Integer>> getAllFilmLikes() {
+        Map<Integer, Set<Integer>> likes = new HashMap<>();
+        jdbcTemplate.query(SELECT_ALL_LIKES,
+                rs -> {
+                    likes.computeIfAbsent(rs.getInt("film_id"), id -> new IntSet()).add(rs.getInt("user_id"));
+                });
+        return likes;
+    }
+
+    @Override
+    @Transactional
+    public Film createFilm(Film film) {
+        int id = statements.getFilmInsert().executeAndReturnKey(
                 Map.of(
                         "film_name", film.getName(),
                         "film_description", film.getDescription(),
@@ -79,20 +246,56 @@ public class FilmDbStorage implements FilmStorage {
         log.info("Создан фильм с id {} в таблице films", id);
 
         film.setId(id);
-        checkFilmGenres(film);
+        saveFilmGenres(film, Set.of());
 
         return film;
     }
 
+    // фильмы вставляются одним пакетом, id берутся из сгенерированных ключей пакета, жанры - вторым пакетом
     @Override
+    @Transactional
+    public List<Film> createFilms(List<Film> films) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_FILM, new String[]{"film_id"})) {
+                for (Film film : films) {
+                    statement.setString(1, film.getName());
+                    statement.setString(2, film.getDescription());
+                    statement.setObject(3, film.getReleaseDate());
+                    statement.setLong(4, film.getDuration());
+                    statement.setInt(5, film.getMpa().getId());
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        keys.next();
+                        film.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+
+        List<Object[]> filmGenres = new ArrayList<>();
+        for (Film film : films) {
+            if (film.getGenres() != null) {
+                for (Genre genre : film.getGenres()) {
+                    filmGenres.add(new Object[]{film.getId(), genre.getId()});
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_FILM_GENRE, filmGenres);
+
+        log.info("Создано фильмов в таблице films: {}", films.size());
+        return films;
+    }
+
+    @Override
+    @Transactional
     public Film updateFilm(Film film) {
-        String query = "UPDATE films SET film_name = ?, " +
-                "film_description = ?, " +
-                "film_release_date = ?, " +
-                "film_duration = ?, " +
-                "film_mpa_id = ? " +
-                "WHERE film_id = ?;";
-        int countUpdatedLines = jdbcTemplate.update(query,
+        int countUpdatedLines = jdbcTemplate.update(UPDATE_FILM,
                 film.getName(),
                 film.getDescription(),
                 film.getReleaseDate(),
@@ -107,17 +310,17 @@ public class FilmDbStorage implements FilmStorage {
 
         log.info("Фильм с id {} обновлен", film.getId());
 
-        checkFilmGenres(film);
+        if (film.getGenres() != null) {
+            saveFilmGenres(film, new HashSet<>(jdbcTemplate.queryForList(SELECT_GENRE_IDS_BY_FILM_ID,
+                    Integer.class, film.getId())));
+        }
 
         return film;
     }
 
     @Override
     public Map<String, String> deleteFilmById(Integer id) {
-        String query = "DELETE " +
-                "FROM films " +
-                "WHERE film_id = ?";
-        int deleteLine = jdbcTemplate.update(query, id);
+        int deleteLine = jdbcTemplate.update(DELETE_FILM_BY_ID, id);
 
         if (deleteLine == 0) {
             log.info("Фильм для удаления по id {} не найден", id);
@@ -129,8 +332,7 @@ public class FilmDbStorage implements FilmStorage {
 
     @Override
     public Map<String, String> deleteAllFilms() {
-        String query = "DELETE FROM films";
-        int deleteLines = jdbcTemplate.update(query);
+        int deleteLines = jdbcTemplate.update(DELETE_ALL_FILMS);
 
         if (deleteLines == 0) {
             log.info("Не найдено ни одного фильма для удаления не найдено");
@@ -141,118 +343,346 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
+    @Transactional
     public Film addLikeToFilm(Integer filmId, Integer userId) {
-        final Film foundFilm = getFilmById(filmId);
-        final User foundUser = userStorage.getUserById(userId);
+        addLike(filmId, userId);
+        return getFilmById(filmId);
+    }
 
-        // проверим, есть ли лайк фильму от пользователя
-        String query = "SELECT " +
-                "COUNT(film_like_id) " +
-                "FROM film_likes " +
-                "WHERE film_id = ? AND user_id = ?";
-        int foundLine = jdbcTemplate.queryForObject(query, Integer.class, filmId, userId);
+    @Override
+    @Transactional
+    public Film deleteLikeFromFilm(Integer filmId, Integer userId) {
+        deleteLike(filmId, userId);
+        return getFilmById(filmId);
+    }
 
-        if (foundLine > 0) {
+    // сначала запись: фильм и пользователя проверяют внешние ключи, повторный лайк - уникальный индекс.
+    // Отдельные запросы нужны только при ошибке, чтобы выбрать сообщение для 404
+    @Override
+    @Transactional
+    public LikeResult addLike(Integer filmId, Integer userId) {
+        try {
+            jdbcTemplate.update(INSERT_LIKE, filmId, userId);
+        } catch (DuplicateKeyException e) {
+            // повторный лайк ничего не меняет
             log.info("Пользователь с id {} уже поставил лайк фильму с id {}", userId, filmId);
-            throw new AlreadyExistException(String.format("Пользователь с id %d уже поставил лайк фильму с id %d",
-                    userId, filmId));
+            return new LikeResult(filmId, userId, getLikeCount(filmId), false, null);
+        } catch (DataIntegrityViolationException e) {
+            getLikeCount(filmId);
+            checkUserExists(userId);
+            throw e;
         }
 
-        jdbcTemplate.update("INSERT INTO film_likes (film_id, user_id) VALUES (?, ?);", filmId, userId);
+        Integer likeCount = jdbcTemplate.queryForObject(SELECT_INCREMENTED_LIKE_COUNT, Integer.class, filmId);
         log.info("Пользователь с id {} поставил лайк фильму с id {}", userId, filmId);
 
-        final Film updatedFilm = getFilmById(filmId);
-
-        return updatedFilm;
+        return new LikeResult(filmId, userId, likeCount, true, null);
     }
 
     @Override
-    public Film deleteLikeFromFilm(Integer filmId, Integer userId) {
-        final Film foundFilm = getFilmById(filmId);
-        final User foundUser = userStorage.getUserById(userId);
-
-        String query = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
-        int deletedLine = jdbcTemplate.update(query, filmId, userId);
+    @Transactional
+    public LikeResult deleteLike(Integer filmId, Integer userId) {
+        int deletedLine = jdbcTemplate.update(DELETE_LIKE, filmId, userId);
 
         if (deletedLine == 0) {
+            // лайка нет - удалять нечего; как и при добавлении, несуществующие фильм или пользователь - ошибка.
+            // Счетчик читается после удаления, чтобы не отдать устаревшее значение
+            int likeCount = getLikeCount(filmId);
+            checkUserExists(userId);
             log.info("Не найден лайк фильму с id {} от пользователя с id {}", filmId, userId);
-            throw new NotFoundException(String.format("Не найден лайк фильму с id %d от пользователя с id %d",
-                    filmId, userId));
+            return new LikeResult(filmId, userId, likeCount, false, null);
         }
 
-        final Film updatedFilm = getFilmById(filmId);
+        Integer likeCount = jdbcTemplate.queryForObject(SELECT_DECREMENTED_LIKE_COUNT, Integer.class, filmId);
+        log.info("Пользователь с id {} удалил лайк у фильма с id {}", userId, filmId);
 
-        return updatedFilm;
+        return new LikeResult(filmId, userId, likeCount, true, null);
+    }
+
+    // лайк вставляется, только если найдены фильм и пользователь и лайка еще нет, поэтому ошибки строк
+    // не откатывают пакет. Счетчики меняются на число вставленных строк, невставленная строка -
+    // повторный лайк, если он уже есть в таблице, иначе не найден фильм или пользователь
+    @Override
+    @Transactional
+    public boolean[] addLikes(List<FilmLike> likes) {
+        int[] insertedLines = jdbcTemplate.batchUpdate(INSERT_NEW_LIKE, toLikeParams(likes));
+
+        boolean[] added = new boolean[insertedLines.length];
+        Map<Integer, Integer> likeCountDeltas = new HashMap<>();
+        List<FilmLike> notInserted = new ArrayList<>();
+        for (int i = 0; i < insertedLines.length; i++) {
+            FilmLike like = likes.get(i);
+
+            if (insertedLines[i] > 0) {
+                likeCountDeltas.merge(like.getFilmId(), 1, Integer::sum);
+                added[i] = true;
+            } else {
+                notInserted.add(like);
+            }
+        }
+        addToLikeCounts(likeCountDeltas);
+
+        // строка не вставлена: лайк уже был (это не ошибка) или нет фильма или пользователя
+        Set<FilmLike> existing = getExistingLikes(notInserted);
+        for (int i = 0; i < insertedLines.length; i++) {
+            if (!added[i]) {
+                added[i] = existing.contains(likes.get(i));
+            }
+        }
+
+        log.info("Добавлено лайков пакетом: {}", likes.size());
+        return added;
+    }
+
+    // одним запросом по всем фильмам и пользователям пакета; лишние пары отсеиваются в памяти
+    private Set<FilmLike> getExistingLikes(List<FilmLike> likes) {
+        if (likes.isEmpty()) {
+            return Set.of();
+        }
+
+        Object[] filmIds = likes.stream().map(FilmLike::getFilmId).distinct().toArray();
+        Object[] userIds = likes.stream().map(FilmLike::getUserId).distinct().toArray();
+        Set<FilmLike> requested = new HashSet<>(likes);
+        Set<FilmLike> existing = new HashSet<>();
+
+        jdbcTemplate.query(SELECT_LIKES_BY_FILM_IDS_AND_USER_IDS,
+                rs -> {
+                    FilmLike like = new FilmLike(rs.getInt("film_id"), rs.getInt("user_id"));
+                    if (requested.contains(like)) {
+                        existing.add(like);
+                    }
+                },
+                filmIds, userIds);
+        return existing;
+    }
+
+    public IntSet getFilmLikes(Integer filmId) {
+        // проверка существования фильма
+        getLikeCount(filmId);
+
+        IntSet likes = new IntSet();
+        jdbcTemplate.query(SELECT_LIKES_BY_FILM_ID,
+                rs -> {
+                    likes.add(rs.getInt("user_id"));
+                },
+                filmId);
+        return likes;
+    }
+
+    // NotFoundException, если пользователя с таким id нет
+    public void checkUserExists(Integer userId) {
+        Integer count = jdbcTemplate.queryForObject(SELECT_USER_COUNT_BY_ID, Integer.class, userId);
+
+        if (count == null || count == 0) {
+            log.info("Пользователь с id {} не найден", userId);
+            throw new NotFoundException(String.format("Пользователь с id %d не найден", userId));
+        }
+    }
+
+    // пакетная запись накопленных лайков: вставки, удаления и изменение счетчиков - по одному пакету
+    @Transactional
+    public void saveLikeChanges(List<LikeChange> changes) {
+        List<LikeChange> added = new ArrayList<>();
+        List<LikeChange> deleted = new ArrayList<>();
+        for (LikeChange change : changes) {
+            (change.isLiked() ? added : deleted).add(change);
+        }
+
+        // счетчики меняются на число реально вставленных и удаленных строк
+        Map<Integer, Integer> likeCountDeltas = new HashMap<>();
+        int[] insertedLines = jdbcTemplate.batchUpdate(INSERT_LIKE, toFilmUserParams(added));
+        for (int i = 0; i < insertedLines.length; i++) {
+            likeCountDeltas.merge(added.get(i).getFilmId(), insertedLines[i], Integer::sum);
+        }
+
+        int[] deletedLines = jdbcTemplate.batchUpdate(DELETE_LIKE, toFilmUserParams(deleted));
+        for (int i = 0; i < deletedLines.length; i++) {
+            likeCountDeltas.merge(deleted.get(i).getFilmId(), -deletedLines[i], Integer::sum);
+        }
+
+        addToLikeCounts(likeCountDeltas);
+
+        log.info("Записано изменений лайков: {}", changes.size());
+    }
+
+    private void addToLikeCounts(Map<Integer, Integer> likeCountDeltas) {
+        List<Object[]> likeCountParams = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> delta : likeCountDeltas.entrySet()) {
+            if (delta.getValue() != 0) {
+                likeCountParams.add(new Object[]{delta.getValue(), delta.getKey()});
+            }
+        }
+        jdbcTemplate.batchUpdate(ADD_TO_LIKE_COUNT, likeCountParams);
+    }
+
+    // счетчики пересчитываются по таблице лайков, если пакет мог записаться частично
+    public void recountLikes(Collection<Integer> filmIds) {
+        List<Object[]> params = new ArrayList<>(filmIds.size());
+        for (Integer filmId : filmIds) {
+            params.add(new Object[]{filmId, filmId});
+        }
+
+        jdbcTemplate.batchUpdate(RECOUNT_LIKES, params);
     }
 
     @Override
     public List<Film> getPopularFilms(Integer count) {
-        String query = "SELECT " +
-                "f.*, " +
-                "m.mpa_id, " +
-                "m.mpa_name, " +
-                "m.mpa_min_age " +
-                "FROM films f " +
-                "JOIN mpa AS m ON f.film_mpa_id = m.mpa_id " +
-                "JOIN film_likes AS fl ON f.film_id = fl.film_id " +
-                "GROUP BY f.film_id " +
-                "ORDER BY COUNT(fl.user_id) DESC " +
-                "LIMIT ?";
+        return fillFilmsGenresAndLikes(jdbcTemplate.query(SELECT_POPULAR_FILMS, new FilmMapper(referenceData), count),
+                Projection.ALL);
+    }
+
+    // условия добавляются только для заданных фильтров, чтобы запрос шел по составным индексам
+    @Override
+    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
+        StringBuilder query = new StringBuilder(SELECT_FILMS).append(" WHERE TRUE");
+        List<Object> params = new ArrayList<>();
 
-        return jdbcTemplate.query(query, new FilmMapper(jdbcTemplate), count);
+        if (genreId != null) {
+            query.append(FILTER_BY_GENRE);
+            params.add(genreId);
+        }
+        if (mpaId != null) {
+            query.append(FILTER_BY_MPA);
+            params.add(mpaId);
+        }
+        if (year != null) {
+            query.append(FILTER_BY_RELEASE_YEAR);
+            params.add(LocalDate.of(year, 1, 1));
+            params.add(LocalDate.of(year + 1, 1, 1));
+        }
+
+        query.append(ORDER_BY_POPULARITY);
+        params.add(count);
+
+        return fillFilmsGenresAndLikes(jdbcTemplate.query(query.toString(), new FilmMapper(referenceData),
+                params.toArray()), Projection.ALL);
     }
 
     @Override
     public List<Genre> getAllGenres() {
-        String query = "SELECT * FROM genres;";
-
-        return jdbcTemplate.query(query, new GenreMapper());
+        return referenceData.getAllGenres();
     }
 
     @Override
     public Genre getGenreById(Integer genreId) {
-        String query = "SELECT * FROM genres WHERE genre_id = ?;";
-        Genre foundGenre;
-
-        try {
-            foundGenre = jdbcTemplate.queryForObject(query, new GenreMapper(), genreId);
-            return foundGenre;
-        } catch (RuntimeException e) {
-            log.info("Жанр по id {} не найден", genreId);
-            throw new NotFoundException(String.format("Жанр по id %d не найден", genreId));
-        }
+        return referenceData.getGenreById(genreId);
     }
 
     @Override
     public List<MPA> getAllMPA() {
-        String query = "SELECT * FROM mpa;";
-
-        return jdbcTemplate.query(query, new MPAMapper());
+        return referenceData.getAllMPA();
     }
 
     @Override
     public MPA getMPAById(Integer mpaId) {
-        String query = "SELECT * FROM mpa WHERE mpa_id = ?;";
-        MPA foundMPA;
+        return referenceData.getMPAById(mpaId);
+    }
 
-        try {
-            foundMPA = jdbcTemplate.queryForObject(query, new MPAMapper(), mpaId);
-            return foundMPA;
-        } catch (RuntimeException e) {
-            log.info("Не найден рейтинг возрастного ограничения по id {}", mpaId);
-            throw new NotFoundException(String.format("Не найден рейтинг возрастного ограничения по id %d", mpaId));
+    private int getLikeCount(Integer filmId) {
+        List<Integer> likeCount = jdbcTemplate.queryForList(SELECT_LIKE_COUNT, Integer.class, filmId);
+
+        if (likeCount.isEmpty()) {
+            log.info("Фильм с id {} не найден", filmId);
+            throw new NotFoundException(String.format("Фильм по id %d не найден", filmId));
         }
+
+        return likeCount.get(0);
     }
 
-    private void checkFilmGenres(Film film) {
-        if (film.getGenres() != null) {
-            for (Genre genre : film.getGenres()) {
-                jdbcTemplate.update(
-                        "INSERT INTO films_genres (film_id, genre_id) VALUES (?, ?);",
-                        film.getId(),
-                        genre.getId()
-                );
+    private static PreparedStatement prepareExport(Connection connection, String query) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(query,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(EXPORT_FETCH_SIZE);
+        return statement;
+    }
+
+    private static List<Object[]> toFilmUserParams(List<LikeChange> changes) {
+        List<Object[]> params = new ArrayList<>(changes.size());
+        for (LikeChange change : changes) {
+            params.add(new Object[]{change.getFilmId(), change.getUserId()});
+        }
+        return params;
+    }
+
+    private static List<Object[]> toLikeParams(List<FilmLike> likes) {
+        List<Object[]> params = new ArrayList<>(likes.size());
+        for (FilmLike like : likes) {
+            params.add(new Object[]{like.getFilmId(), like.getUserId()});
+        }
+        return params;
+    }
+
+    // жанры и лайки загружаются двумя запросами на весь список фильмов, а не двумя запросами на каждый фильм.
+    // Не запрошенная коллекция не загружается совсем, число лайков остается из счетчика film_like_count
+    private List<Film> fillFilmsGenresAndLikes(List<Film> films, Projection projection) {
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        Map<Integer, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+
+            if (!projection.includes(Projection.GENRES)) {
+                film.setGenres(null);
+            }
+            if (!projection.includes(Projection.LIKES)) {
+                film.setLikes(null);
+            }
+        }
+        Object[] filmIds = filmsById.keySet().toArray();
+
+        if (projection.includes(Projection.GENRES)) {
+            jdbcTemplate.query(SELECT_GENRES_BY_FILM_IDS,
+                    rs -> {
+                        filmsById.get(rs.getInt("film_id")).getGenres()
+                                .add(referenceData.getGenreById(rs.getInt("genre_id")));
+                    },
+                    (Object) filmIds);
+        }
+
+        if (projection.includes(Projection.LIKES)) {
+            jdbcTemplate.query(SELECT_LIKES_BY_FILM_IDS,
+                    rs -> {
+                        filmsById.get(rs.getInt("film_id")).getLikes().add(rs.getInt("user_id"));
+                    },
+                    (Object) filmIds);
+        }
+
+        return films;
+    }
+
+    // в БД пишется только разница между новым и сохраненным списком жанров, двумя пакетными запросами
+    private void saveFilmGenres(Film film, Set<Integer> storedGenreIds) {
+        if (film.getGenres() == null) {
+            return;
+        }
+
+        Set<Integer> genreIds = new LinkedHashSet<>();
+        for (Genre genre : film.getGenres()) {
+            genreIds.add(genre.getId());
+        }
+
+        List<Object[]> addedGenres = new ArrayList<>();
+        for (Integer genreId : genreIds) {
+            if (!storedGenreIds.contains(genreId)) {
+                addedGenres.add(new Object[]{film.getId(), genreId});
+            }
+        }
+
+        List<Object[]> removedGenres = new ArrayList<>();
+        for (Integer genreId : storedGenreIds) {
+            if (!genreIds.contains(genreId)) {
+                removedGenres.add(new Object[]{film.getId(), genreId});
             }
         }
+
+        if (!removedGenres.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_FILM_GENRE, removedGenres);
+        }
+
+        if (!addedGenres.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_FILM_GENRE, addedGenres);
+        }
     }
 }
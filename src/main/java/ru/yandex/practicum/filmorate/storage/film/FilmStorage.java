@@ -1,19 +1,60 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeResult;
 import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Projection;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
-    public List<Film> getFilms();
+    // методы без projection читают фильмы целиком
+    public default List<Film> getFilms() {
+        return getFilms(Projection.ALL);
+    }
 
-    public Film getFilmById(Integer id);
+    // методы с projection не загружают жанры и лайки, если они не запрошены, такие коллекции - null
+    public List<Film> getFilms(Projection projection);
+
+    // не больше limit фильмов с id больше afterId по возрастанию id
+    public default List<Film> getFilmsAfterId(int afterId, int limit) {
+        return getFilmsAfterId(afterId, limit, Projection.ALL);
+    }
+
+    public List<Film> getFilmsAfterId(int afterId, int limit, Projection projection);
+
+    // все фильмы по возрастанию id по одному, без сборки полного списка в памяти
+    public void exportFilms(Consumer<Film> action);
+
+    public default Film getFilmById(Integer id) {
+        return getFilmById(id, Projection.ALL);
+    }
+
+    public Film getFilmById(Integer id, Projection projection);
+
+    public default List<Film> getFilmsByIds(List<Integer> ids) {
+        return getFilmsByIds(ids, Projection.ALL);
+    }
+
+    public List<Film> getFilmsByIds(List<Integer> ids, Projection projection);
+
+    // только названия фильмов по id, без жанров и лайков
+    public Map<Integer, String> getFilmNames();
+
+    public Map<Integer, Integer> getFilmLikeCounts();
+
+    public Map<Integer, Set<Integer>> getAllFilmLikes();
 
     public Film createFilm(Film film);
 
+    // пакетное создание фильмов без лайков, фильмам проставляются id
+    public List<Film> createFilms(List<Film> films);
+
     public Film updateFilm(Film film);
 
     public Map<String, String> deleteFilmById(Integer id);
@@ -24,8 +65,17 @@ public interface FilmStorage {
 
     public Film deleteLikeFromFilm(Integer filmId, Integer userId);
 
+    public LikeResult addLike(Integer filmId, Integer userId);
+
+    public LikeResult deleteLike(Integer filmId, Integer userId);
+
+    // пакетное добавление лайков: для каждого лайка true, если найдены и фильм, и пользователь
+    public boolean[] addLikes(List<FilmLike> likes);
+
     public List<Film> getPopularFilms(Integer count);
 
+    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year);
+
     public List<Genre> getAllGenres();
 
     public Genre getGenreById(Integer genreId);
@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+
+@Configuration
+@Slf4j
+public class FilmStorageConfig {
+    // отложенная запись лайков включается явно: незаписанные лайки теряются при падении приложения.
+    // С flush-on-write лайк записан к ответу на запрос, а буфер только собирает параллельные лайки в один пакет
+    @Bean
+    @ConditionalOnProperty(name = "filmorate.likes.write-behind.enabled", havingValue = "true")
+    public WriteBehindLikeStorage writeBehindLikeStorage(
+            FilmDbStorage filmDbStorage,
+            @Value("${filmorate.likes.write-behind.max-pending:10000}") int maxPending,
+            @Value("${filmorate.likes.write-behind.max-films:10000}") long maxFilms,
+            @Value("${filmorate.likes.write-behind.flush-interval-ms:100}") long flushInterval,
+            @Value("${filmorate.likes.write-behind.flush-on-write:false}") boolean flushOnWrite) {
+        if (flushOnWrite) {
+            log.info("Включена групповая запись лайков: запрос ждет записи своего лайка в БД");
+        } else {
+            log.info("Включена отложенная запись лайков: буфер до {} изменений, запись раз в {} мс",
+                    maxPending, flushInterval);
+        }
+        return new WriteBehindLikeStorage(filmDbStorage, maxPending, maxFilms, flushOnWrite);
+    }
+
+    @Bean
+    @Primary
+    public FilmStorage filmStorage(@Qualifier("filmDbStorage") FilmStorage filmDbStorage,
+                                   ObjectProvider<WriteBehindLikeStorage> writeBehindLikeStorage,
+                                   @Value("${filmorate.cache.films.enabled:true}") boolean cacheEnabled,
+                                   @Value("${filmorate.cache.films.max-size:1000}") long maxSize,
+                                   @Value("${filmorate.cache.films.ttl:10m}") Duration ttl,
+                                   ObjectProvider<MeterRegistry> meterRegistry) {
+        FilmStorage writeBehindStorage = writeBehindLikeStorage.getIfAvailable();
+        FilmStorage storage = writeBehindStorage == null ? filmDbStorage : writeBehindStorage;
+
+        if (!cacheEnabled) {
+            log.info("Кэш фильмов отключен");
+            return storage;
+        }
+
+        CachingFilmStorage cachingFilmStorage = new CachingFilmStorage(storage, maxSize, ttl);
+        // попадания, промахи и вытеснения публикуются как метрики cache.* с тегом cache=films
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry,
+                cachingFilmStorage.getCache(), "films"));
+        log.info("Включен кэш фильмов: не больше {} фильмов, время жизни {}", maxSize, ttl);
+
+        return cachingFilmStorage;
+    }
+}
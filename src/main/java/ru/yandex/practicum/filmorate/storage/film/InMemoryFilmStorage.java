@@ -6,15 +6,24 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.LikeResult;
 import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Projection;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Component
@@ -24,21 +33,21 @@ import java.util.stream.Collectors;
 public class InMemoryFilmStorage implements FilmStorage {
     @Qualifier("inMemoryUserStorage")
     private final UserStorage userStorage;
-    private HashMap<Integer, Film> films = new HashMap<>();
-    private final List<Genre> genres = List.of(
-            new Genre(1, "Комедия"),
-            new Genre(2, "Триллер"),
-            new Genre(3, "Боевик"),
-            new Genre(4, "Драма"),
-            new Genre(5, "Мелодрама"),
-            new Genre(6, "Ужасы")
+    private final ConcurrentNavigableMap<Integer, Film> films = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Genre> genres = Map.of(
+            1, new Genre(1, "Комедия"),
+            2, new Genre(2, "Драма"),
+            3, new Genre(3, "Мультфильм"),
+            4, new Genre(4, "Триллер"),
+            5, new Genre(5, "Документальный"),
+            6, new Genre(6, "Боевик")
     );
-    private final List<MPA> mpaList = List.of(
-            new MPA(1, "G", 0),
-            new MPA(2, "PG", 0),
-            new MPA(3, "PG-13", 13),
-            new MPA(4, "R", 17),
-            new MPA(5, "NC-17", 18)
+    private final Map<Integer, MPA> mpaList = Map.of(
+            1, new MPA(1, "G", 0),
+            2, new MPA(2, "PG", 0),
+            3, new MPA(3, "PG-13", 13),
+            4, new MPA(4, "R", 17),
+            5, new MPA(5, "NC-17", 18)
     );
 
     @Override
@@ -46,6 +55,29 @@ public class InMemoryFilmStorage implements FilmStorage {
         return new ArrayList<>(films.values());
     }
 
+    // в памяти жанры и лайки уже есть, projection только убирает их из копий
+    @Override
+    public List<Film> getFilms(Projection projection) {
+        return project(getFilms(), projection);
+    }
+
+    @Override
+    public List<Film> getFilmsAfterId(int afterId, int limit) {
+        return films.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getFilmsAfterId(int afterId, int limit, Projection projection) {
+        return project(getFilmsAfterId(afterId, limit), projection);
+    }
+
+    @Override
+    public void exportFilms(Consumer<Film> action) {
+        films.values().forEach(action);
+    }
+
     @Override
     public Film getFilmById(Integer id) {
         final Film film = films.get(id);
@@ -59,30 +91,84 @@ public class InMemoryFilmStorage implements FilmStorage {
         return film;
     }
 
+    @Override
+    public Film getFilmById(Integer id, Projection projection) {
+        return getFilmById(id).project(projection);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Integer> ids) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Integer> ids, Projection projection) {
+        return project(getFilmsByIds(ids), projection);
+    }
+
+    @Override
+    public Map<Integer, String> getFilmNames() {
+        return films.values().stream()
+                .collect(Collectors.toMap(Film::getId, Film::getName));
+    }
+
+    @Override
+    public Map<Integer, Integer> getFilmLikeCounts() {
+        return films.values().stream()
+                .collect(Collectors.toMap(Film::getId, film -> film.getLikes().size()));
+    }
+
+    @Override
+    public Map<Integer, Set<Integer>> getAllFilmLikes() {
+        return films.values().stream()
+                .collect(Collectors.toMap(Film::getId, film -> IntSet.copyOf(film.getLikes())));
+    }
+
     @Override
     public Film createFilm(Film film) {
         film.generateId();
+        film.setLikes(IntSet.copyOf(film.getLikes()));
         films.put(film.getId(), film);
         log.info("Фильм успешно создан: {}", film);
         return film;
     }
 
+    @Override
+    public List<Film> createFilms(List<Film> films) {
+        for (Film film : films) {
+            createFilm(film);
+        }
+
+        return films;
+    }
+
     @Override
     public Film updateFilm(Film film) {
-        if (!films.containsKey(film.getId())) {
+        // лайки меняются только через addLike/deleteLike, обновление их не затирает
+        Film updatedFilm = films.computeIfPresent(film.getId(), (id, storedFilm) -> {
+            film.setLikes(storedFilm.getLikes());
+            return film;
+        });
+
+        if (updatedFilm == null) {
             log.error("Произошла ошибка при вызове метода updateFilm");
             throw new NotFoundException(String.format("Фильм с id: %s не найден", film.getId()));
         }
 
-        films.put(film.getId(), film);
         log.info("Данные фильма успешно обновлены: {}", film);
         return film;
     }
 
     @Override
     public Map<String, String> deleteFilmById(Integer id) {
-        getFilmById(id);
-        films.remove(id);
+        if (films.remove(id) == null) {
+            log.error("Произошла ошибка при вызове метода deleteFilmById");
+            throw new NotFoundException(String.format("Фильм с id: %s не найден", id));
+        }
+
         log.info("Фильм по id: {} успешно удален", id);
         return Map.of("info", String.format("Фильм по id: %s успешно удален", id));
     }
@@ -96,51 +182,117 @@ public class InMemoryFilmStorage implements FilmStorage {
 
     @Override
     public Film addLikeToFilm(Integer filmId, Integer userId) {
+        addLike(filmId, userId);
+        return getFilmById(filmId);
+    }
+
+    @Override
+    public Film deleteLikeFromFilm(Integer filmId, Integer userId) {
+        deleteLike(filmId, userId);
+        return getFilmById(filmId);
+    }
+
+    @Override
+    public LikeResult addLike(Integer filmId, Integer userId) {
         final Film film = getFilmById(filmId);
         final User user = userStorage.getUserById(userId);
 
-
-        film.getLikes().add(userId);
-        log.info("Пользователь {} поставил лайка фильму {}", user.getName(), film.getName());
-        return film;
+        boolean changed = film.getLikes().add(userId);
+        log.info("Пользователь {} поставил лайк фильму {}", user.getName(), film.getName());
+        return new LikeResult(filmId, userId, film.getLikes().size(), changed, null);
     }
 
     @Override
-    public Film deleteLikeFromFilm(Integer filmId, Integer userId) {
+    public LikeResult deleteLike(Integer filmId, Integer userId) {
         final Film film = getFilmById(filmId);
         final User user = userStorage.getUserById(userId);
         log.info("Пользователь {} удаляет лайк у фильма {}", user.getName(), film.getName());
 
-        film.getLikes().remove(userId);
+        boolean changed = film.getLikes().remove(userId);
         log.info("Пользователь {} удалил лайк у фильма {}", user.getName(), film.getName());
-        return film;
+        return new LikeResult(filmId, userId, film.getLikes().size(), changed, null);
+    }
+
+    @Override
+    public boolean[] addLikes(List<FilmLike> likes) {
+        boolean[] added = new boolean[likes.size()];
+
+        for (int i = 0; i < likes.size(); i++) {
+            try {
+                addLike(likes.get(i).getFilmId(), likes.get(i).getUserId());
+                added[i] = true;
+            } catch (NotFoundException e) {
+                added[i] = false;
+            }
+        }
+
+        return added;
     }
 
     @Override
     public List<Film> getPopularFilms(Integer count) {
-        return getFilms().stream()
-                .sorted((film1, film2) -> film2.getLikes().size() - film1.getLikes().size())
+        return getPopularFilms(count, null, null, null);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
+        // количество лайков фиксируется до сортировки, т.к. оно может меняться из других потоков
+        Map<Integer, Integer> likeCounts = getFilmLikeCounts();
+
+        return likeCounts.keySet().stream()
+                .sorted(Comparator.comparing((Integer id) -> likeCounts.get(id)).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .filter(film -> genreId == null || film.getGenres().stream()
+                        .anyMatch(genre -> genre.getId() == genreId))
+                .filter(film -> mpaId == null || film.getMpa().getId() == mpaId)
+                .filter(film -> year == null || film.getReleaseDate().getYear() == year)
                 .limit(count)
                 .collect(Collectors.toList());
     }
 
     @Override
     public List<Genre> getAllGenres() {
-        return genres;
+        return genres.values().stream()
+                .sorted(Comparator.comparingInt(Genre::getId))
+                .collect(Collectors.toList());
     }
 
     @Override
     public Genre getGenreById(Integer genreId) {
-        return genres.get(genreId);
+        final Genre genre = genres.get(genreId);
+
+        if (genre == null) {
+            log.error("Произошла ошибка при вызове метода getGenreById");
+            throw new NotFoundException(String.format("Жанр по id %d не найден", genreId));
+        }
+
+        return genre;
     }
 
     @Override
     public List<MPA> getAllMPA() {
-        return mpaList;
+        return mpaList.values().stream()
+                .sorted(Comparator.comparingInt(MPA::getId))
+                .collect(Collectors.toList());
     }
 
     @Override
     public MPA getMPAById(Integer mpaId) {
-        return mpaList.get(mpaId);
+        final MPA mpa = mpaList.get(mpaId);
+
+        if (mpa == null) {
+            log.error("Произошла ошибка при вызове метода getMPAById");
+            throw new NotFoundException(String.format("Не найден рейтинг возрастного ограничения по id %d", mpaId));
+        }
+
+        return mpa;
+    }
+
+    private static List<Film> project(List<Film> films, Projection projection) {
+        return films.stream()
+                .map(film -> film.project(projection))
+                .collect(Collectors.toList());
     }
 }
@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.Value;
+
+// еще не записанное в БД изменение: лайк (liked = true) или его отмена
+@Value
+public class LikeChange {
+    int filmId;
+    int userId;
+    boolean liked;
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// буфер незаписанных изменений лайков, сгруппированный по фильмам: чтение фильма просматривает
+// только его изменения. Лайк и его отмена одной пары взаимно сокращаются. Не потокобезопасен
+class LikeChangeBuffer {
+    private final Map<Integer, List<LikeChange>> changesByFilmId = new HashMap<>();
+    private int size;
+
+    void add(LikeChange change) {
+        List<LikeChange> changes = changesByFilmId.computeIfAbsent(change.getFilmId(), filmId -> new ArrayList<>());
+
+        if (changes.removeIf(pending -> pending.getUserId() == change.getUserId())) {
+            size--;
+            if (changes.isEmpty()) {
+                changesByFilmId.remove(change.getFilmId());
+            }
+        } else {
+            changes.add(change);
+            size++;
+        }
+    }
+
+    List<LikeChange> getChanges(int filmId) {
+        return changesByFilmId.getOrDefault(filmId, Collections.emptyList());
+    }
+
+    List<LikeChange> getAllChanges() {
+        List<LikeChange> allChanges = new ArrayList<>(size);
+        changesByFilmId.values().forEach(allChanges::addAll);
+        return allChanges;
+    }
+
+    void removeFilm(int filmId) {
+        List<LikeChange> changes = changesByFilmId.remove(filmId);
+
+        if (changes != null) {
+            size -= changes.size();
+        }
+    }
+
+    void removeUser(int userId) {
+        Iterator<List<LikeChange>> iterator = changesByFilmId.values().iterator();
+
+        while (iterator.hasNext()) {
+            List<LikeChange> changes = iterator.next();
+            int before = changes.size();
+            changes.removeIf(change -> change.getUserId() == userId);
+            size -= before - changes.size();
+
+            if (changes.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.storage.film.mapper.GenreMapper;
+import ru.yandex.practicum.filmorate.storage.film.mapper.MPAMapper;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// справочники жанров и рейтингов загружаются из БД один раз при старте и дальше отдаются из памяти
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ReferenceDataRegistry {
+    static final String SELECT_ALL_GENRES = "SELECT * FROM genres ORDER BY genre_id";
+    static final String SELECT_ALL_MPA = "SELECT * FROM mpa ORDER BY mpa_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Map<Integer, Genre> genres = Map.of();
+    private volatile Map<Integer, MPA> mpa = Map.of();
+
+    @PostConstruct
+    public void load() {
+        Map<Integer, Genre> loadedGenres = new LinkedHashMap<>();
+        for (Genre genre : jdbcTemplate.query(SELECT_ALL_GENRES, new GenreMapper())) {
+            loadedGenres.put(genre.getId(), genre);
+        }
+
+        Map<Integer, MPA> loadedMPA = new LinkedHashMap<>();
+        for (MPA rating : jdbcTemplate.query(SELECT_ALL_MPA, new MPAMapper())) {
+            loadedMPA.put(rating.getId(), rating);
+        }
+
+        genres = Collections.unmodifiableMap(loadedGenres);
+        mpa = Collections.unmodifiableMap(loadedMPA);
+        log.info("Загружено жанров: {}, рейтингов возрастного ограничения: {}", genres.size(), mpa.size());
+    }
+
+    public List<Genre> getAllGenres() {
+        return new ArrayList<>(genres.values());
+    }
+
+    public Genre getGenreById(Integer genreId) {
+        Genre foundGenre = genres.get(genreId);
+
+        if (foundGenre == null) {
+            log.info("Жанр по id {} не найден", genreId);
+            throw new NotFoundException(String.format("Жанр по id %d не найден", genreId));
+        }
+
+        return foundGenre;
+    }
+
+    public List<MPA> getAllMPA() {
+        return new ArrayList<>(mpa.values());
+    }
+
+    public MPA getMPAById(Integer mpaId) {
+        MPA foundMPA = mpa.get(mpaId);
+
+        if (foundMPA == null) {
+            log.info("Не найден рейтинг возрастного ограничения по id {}", mpaId);
+            throw new NotFoundException(String.format("Не найден рейтинг возрастного ограничения по id %d", mpaId));
+        }
+
+        return foundMPA;
+    }
+}
@@ -0,0 +1,505 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.LikeResult;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Projection;
+import ru.yandex.practicum.filmorate.service.user.UserDeletedEvent;
+
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// отложенная запись лайков: лайк сразу применяется к множеству лайкнувших фильм в памяти и попадает в буфер,
+// буфер по расписанию пишется в БД пакетными запросами. Лайк и его отмена до записи взаимно сокращаются,
+// чтение фильмов учитывает еще не записанные лайки. При заполнении буфера запись идет в потоке запроса.
+// С flushOnWrite запрос ждет записи своего лайка в БД, а лайки параллельных запросов пишутся одним пакетом.
+// Запросы к БД идут вне монитора хранилища; под монитором только изменения в памяти
+@Slf4j
+public class WriteBehindLikeStorage implements FilmStorage {
+    private final FilmDbStorage filmStorage;
+    private final int maxPendingChanges;
+    private final boolean flushOnWrite;
+    // лайкнувшие фильм с учетом буфера, загружаются из БД при первом лайке
+    private final Cache<Integer, IntSet> filmLikes;
+    private final IntSet knownUserIds = new IntSet();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private LikeChangeBuffer pendingChanges = new LikeChangeBuffer();
+    private LikeChangeBuffer flushingChanges = new LikeChangeBuffer();
+    // меняется, когда прочитанное из БД мимо буфера могло устареть: записан пакет или сброшен кэш лайков
+    private long likesVersion;
+
+    public WriteBehindLikeStorage(FilmDbStorage filmStorage, int maxPendingChanges, long maxCachedFilms,
+                                  boolean flushOnWrite) {
+        this.filmStorage = filmStorage;
+        this.maxPendingChanges = maxPendingChanges;
+        this.flushOnWrite = flushOnWrite;
+        this.filmLikes = Caffeine.newBuilder()
+                .maximumSize(maxCachedFilms)
+                .build();
+    }
+
+    @Override
+    public List<Film> getFilms(Projection projection) {
+        flush();
+        return filmStorage.getFilms(projection);
+    }
+
+    @Override
+    public List<Film> getFilmsAfterId(int afterId, int limit, Projection projection) {
+        return readFilms(() -> filmStorage.getFilmsAfterId(afterId, limit, projection));
+    }
+
+    @Override
+    public void exportFilms(Consumer<Film> action) {
+        flush();
+        filmStorage.exportFilms(action);
+    }
+
+    @Override
+    public Film getFilmById(Integer id, Projection projection) {
+        return readFilms(() -> List.of(filmStorage.getFilmById(id, projection))).get(0);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Integer> ids, Projection projection) {
+        return readFilms(() -> filmStorage.getFilmsByIds(ids, projection));
+    }
+
+    @Override
+    public Map<Integer, String> getFilmNames() {
+        return filmStorage.getFilmNames();
+    }
+
+    @Override
+    public Map<Integer, Integer> getFilmLikeCounts() {
+        flush();
+        return filmStorage.getFilmLikeCounts();
+    }
+
+    @Override
+    public Map<Integer, Set<Integer>> getAllFilmLikes() {
+        flush();
+        return filmStorage.getAllFilmLikes();
+    }
+
+    @Override
+    public Film createFilm(Film film) {
+        return filmStorage.createFilm(film);
+    }
+
+    @Override
+    public List<Film> createFilms(List<Film> films) {
+        return filmStorage.createFilms(films);
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        long version = getLikesVersion();
+        Film updatedFilm = filmStorage.updateFilm(film);
+
+        return applyPendingLikes(List.of(updatedFilm), version) ? updatedFilm : getFilmById(updatedFilm.getId());
+    }
+
+    @Override
+    public Map<String, String> deleteFilmById(Integer id) {
+        synchronized (this) {
+            pendingChanges.removeFilm(id);
+            invalidateLikes(id);
+        }
+
+        return filmStorage.deleteFilmById(id);
+    }
+
+    @Override
+    public Map<String, String> deleteAllFilms() {
+        synchronized (this) {
+            pendingChanges = new LikeChangeBuffer();
+            invalidateAllLikes();
+        }
+
+        return filmStorage.deleteAllFilms();
+    }
+
+    @Override
+    public Film addLikeToFilm(Integer filmId, Integer userId) {
+        addLike(filmId, userId);
+        return getFilmById(filmId);
+    }
+
+    @Override
+    public Film deleteLikeFromFilm(Integer filmId, Integer userId) {
+        deleteLike(filmId, userId);
+        return getFilmById(filmId);
+    }
+
+    @Override
+    public LikeResult addLike(Integer filmId, Integer userId) {
+        waitForSpace();
+        checkUserExists(userId);
+
+        LikeResult likeResult = null;
+        while (likeResult == null) {
+            likeResult = changeLike(filmId, userId, true, loadLikes(filmId));
+        }
+
+        flushIfNeeded();
+        return likeResult;
+    }
+
+    @Override
+    public LikeResult deleteLike(Integer filmId, Integer userId) {
+        waitForSpace();
+        // как и в FilmDbStorage, удаление лайка несуществующего пользователя - 404
+        checkUserExists(userId);
+
+        LikeResult likeResult = null;
+        while (likeResult == null) {
+            likeResult = changeLike(filmId, userId, false, loadLikes(filmId));
+        }
+
+        flushIfNeeded();
+        return likeResult;
+    }
+
+    // пакет лайков пишется сразу, мимо буфера; буфер записывается раньше, чтобы сохранить порядок изменений
+    @Override
+    public boolean[] addLikes(List<FilmLike> likes) {
+        flush();
+        boolean[] added = filmStorage.addLikes(likes);
+
+        synchronized (this) {
+            for (FilmLike like : likes) {
+                invalidateLikes(like.getFilmId());
+            }
+        }
+
+        return added;
+    }
+
+    @Override
+    public List<Film> getPopularFilms(Integer count) {
+        flush();
+        return filmStorage.getPopularFilms(count);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
+        flush();
+        return filmStorage.getPopularFilms(count, genreId, mpaId, year);
+    }
+
+    @Override
+    public List<Genre> getAllGenres() {
+        return filmStorage.getAllGenres();
+    }
+
+    @Override
+    public Genre getGenreById(Integer genreId) {
+        return filmStorage.getGenreById(genreId);
+    }
+
+    @Override
+    public List<MPA> getAllMPA() {
+        return filmStorage.getAllMPA();
+    }
+
+    @Override
+    public MPA getMPAById(Integer mpaId) {
+        return filmStorage.getMPAById(mpaId);
+    }
+
+    // интервал записи - это и время, за которое лайки могут потеряться при падении приложения
+    @Scheduled(initialDelayString = "${filmorate.likes.write-behind.flush-interval-ms:100}",
+            fixedDelayString = "${filmorate.likes.write-behind.flush-interval-ms:100}")
+    public void flush() {
+        flushLock.lock();
+
+        try {
+            List<LikeChange> changes;
+            synchronized (this) {
+                if (pendingChanges.isEmpty()) {
+                    return;
+                }
+
+                flushingChanges = pendingChanges;
+                pendingChanges = new LikeChangeBuffer();
+                changes = flushingChanges.getAllChanges();
+            }
+
+            try {
+                saveChanges(changes);
+            } finally {
+                synchronized (this) {
+                    flushingChanges = new LikeChangeBuffer();
+                    likesVersion++;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        log.info("Буфер лайков записан в БД");
+    }
+
+    public synchronized int getPendingChangesCount() {
+        return pendingChanges.size() + flushingChanges.size();
+    }
+
+    // вместе с пользователем из БД удалены его лайки, его изменения в буфере больше не нужны.
+    // Обрабатывается первым, как и сброс кэша фильмов
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public synchronized void onUserDeleted(UserDeletedEvent event) {
+        if (event.getUserId() == null) {
+            pendingChanges = new LikeChangeBuffer();
+            knownUserIds.clear();
+        } else {
+            pendingChanges.removeUser(event.getUserId());
+            knownUserIds.remove(event.getUserId());
+        }
+
+        invalidateAllLikes();
+    }
+
+    private void saveChanges(List<LikeChange> changes) {
+        try {
+            filmStorage.saveLikeChanges(changes);
+            return;
+        } catch (DataIntegrityViolationException e) {
+            // фильм или пользователь удален до записи: изменения пишутся по одному, чтобы потерять только их
+            log.warn("Не удалось записать лайки одним пакетом, запись по одному: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            returnChanges(changes);
+            throw e;
+        }
+
+        Set<Integer> filmIds = new HashSet<>();
+        for (int i = 0; i < changes.size(); i++) {
+            LikeChange change = changes.get(i);
+            filmIds.add(change.getFilmId());
+
+            try {
+                if (change.isLiked()) {
+                    filmStorage.addLike(change.getFilmId(), change.getUserId());
+                } else {
+                    filmStorage.deleteLike(change.getFilmId(), change.getUserId());
+                }
+            } catch (NotFoundException e) {
+                log.warn("Изменение лайка фильма с id {} от пользователя с id {} отброшено: {}",
+                        change.getFilmId(), change.getUserId(), e.getMessage());
+                synchronized (this) {
+                    invalidateLikes(change.getFilmId());
+                }
+            } catch (RuntimeException e) {
+                returnChanges(changes.subList(i, changes.size()));
+                throw e;
+            }
+        }
+
+        filmStorage.recountLikes(filmIds);
+    }
+
+    // незаписанные изменения возвращаются в буфер; более новое изменение той же пары противоположно
+    // возвращаемому, и они сокращаются
+    private synchronized void returnChanges(Collection<LikeChange> changes) {
+        for (LikeChange change : changes) {
+            pendingChanges.add(change);
+        }
+    }
+
+    // буфер заполнен - запрос ждет записи, а не растит очередь без ограничений
+    private void waitForSpace() {
+        if (getPendingChangesCount() >= maxPendingChanges) {
+            flush();
+        }
+    }
+
+    // null - лайкнувшие фильм нужно прочитать заново
+    private synchronized LikeResult changeLike(Integer filmId, Integer userId, boolean liked,
+                                               LoadedLikes loadedLikes) {
+        IntSet likes = getLikes(filmId, loadedLikes);
+
+        if (likes == null) {
+            return null;
+        }
+
+        boolean changed = liked ? likes.add(userId) : likes.remove(userId);
+
+        if (changed) {
+            pendingChanges.add(new LikeChange(filmId, userId, liked));
+            if (liked) {
+                log.info("Пользователь с id {} поставил лайк фильму с id {}", userId, filmId);
+            } else {
+                log.info("Пользователь с id {} удалил лайк у фильма с id {}", userId, filmId);
+            }
+        } else if (liked) {
+            log.info("Пользователь с id {} уже поставил лайк фильму с id {}", userId, filmId);
+        } else {
+            log.info("Не найден лайк фильму с id {} от пользователя с id {}", filmId, userId);
+        }
+
+        return new LikeResult(filmId, userId, likes.size(), changed, null);
+    }
+
+    // с flushOnWrite запрос ждет, пока его изменение (или изменение, которое он повторил) запишется в БД.
+    // Вызывается вне монитора: запись берет его сама
+    private void flushIfNeeded() {
+        if (flushOnWrite) {
+            flush();
+        }
+    }
+
+    // лайкнувшие фильм читаются из БД вне монитора, null - они уже в кэше
+    private LoadedLikes loadLikes(Integer filmId) {
+        long version;
+        synchronized (this) {
+            if (filmLikes.getIfPresent(filmId) != null) {
+                return null;
+            }
+
+            version = likesVersion;
+        }
+
+        return new LoadedLikes(filmStorage.getFilmLikes(filmId), version);
+    }
+
+    // вызывается под монитором. null - прочитанные лайкнувшие устарели или вытеснены из кэша, чтение повторяется.
+    // Изменения из буфера применяются поверх прочитанного: повторное применение уже записанного ничего не меняет
+    private IntSet getLikes(Integer filmId, LoadedLikes loadedLikes) {
+        IntSet likes = filmLikes.getIfPresent(filmId);
+
+        if (likes != null || loadedLikes == null || loadedLikes.getVersion() != likesVersion) {
+            return likes;
+        }
+
+        likes = loadedLikes.getLikes();
+        applyChanges(likes, flushingChanges.getChanges(filmId));
+        applyChanges(likes, pendingChanges.getChanges(filmId));
+        filmLikes.put(filmId, likes);
+        return likes;
+    }
+
+    private void invalidateLikes(Integer filmId) {
+        filmLikes.invalidate(filmId);
+        likesVersion++;
+    }
+
+    private void invalidateAllLikes() {
+        filmLikes.invalidateAll();
+        likesVersion++;
+    }
+
+    private synchronized long getLikesVersion() {
+        return likesVersion;
+    }
+
+    private void checkUserExists(Integer userId) {
+        synchronized (this) {
+            if (knownUserIds.contains(userId)) {
+                return;
+            }
+        }
+
+        filmStorage.checkUserExists(userId);
+
+        synchronized (this) {
+            knownUserIds.add(userId);
+        }
+    }
+
+    // фильмы читаются из БД мимо буфера. Если пакет записался во время чтения, прочитанное могло
+    // уже учесть часть изменений буфера: чтение повторяется после окончания записи
+    private List<Film> readFilms(Supplier<List<Film>> read) {
+        while (true) {
+            long version = getLikesVersion();
+            List<Film> films = read.get();
+
+            if (applyPendingLikes(films, version)) {
+                return films;
+            }
+
+            flushLock.lock();
+            flushLock.unlock();
+        }
+    }
+
+    // false - лайки фильмов нельзя однозначно свести с буфером, фильмы нужно прочитать заново
+    private synchronized boolean applyPendingLikes(List<Film> films, long version) {
+        for (Film film : films) {
+            IntSet likes = filmLikes.getIfPresent(film.getId());
+
+            if (likes != null) {
+                // в кэше лайкнувшие уже с учетом буфера
+                if (film.getLikes() == null) {
+                    film.setLikeCount(likes.size());
+                } else {
+                    film.setLikes(IntSet.copyOf(likes));
+                }
+            } else if (version != likesVersion) {
+                return false;
+            } else if (film.getLikes() == null) {
+                // счетчик из БД мог уже учесть записываемый пакет, а мог и нет
+                if (!flushingChanges.getChanges(film.getId()).isEmpty()) {
+                    return false;
+                }
+
+                film.setLikeCount(film.getLikeCount() + countChange(pendingChanges.getChanges(film.getId())));
+            } else {
+                applyChanges(film.getLikes(), flushingChanges.getChanges(film.getId()));
+                applyChanges(film.getLikes(), pendingChanges.getChanges(film.getId()));
+            }
+        }
+
+        return true;
+    }
+
+    private static void applyChanges(Set<Integer> likes, List<LikeChange> changes) {
+        for (LikeChange change : changes) {
+            if (change.isLiked()) {
+                likes.add(change.getUserId());
+            } else {
+                likes.remove(change.getUserId());
+            }
+        }
+    }
+
+    private static int countChange(List<LikeChange> changes) {
+        int countChange = 0;
+
+        for (LikeChange change : changes) {
+            countChange += change.isLiked() ? 1 : -1;
+        }
+
+        return countChange;
+    }
+
+    @Value
+    private static class LoadedLikes {
+        IntSet likes;
+        long version;
+    }
+}
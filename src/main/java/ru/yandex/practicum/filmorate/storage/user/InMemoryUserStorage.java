@@ -4,21 +4,58 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.Projection;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 @Component
 @Slf4j
 @Qualifier("inMemoryUserStorage")
 public class InMemoryUserStorage implements UserStorage {
-    private HashMap<Integer, User> users = new HashMap<>();
+    private final ConcurrentNavigableMap<Integer, User> users = new ConcurrentSkipListMap<>();
 
     @Override
     public List<User> getUsers() {
         return new ArrayList<>(users.values());
     }
 
+    // в памяти друзья уже есть, projection только убирает их из копий
+    @Override
+    public List<User> getUsers(Projection projection) {
+        return project(getUsers(), projection);
+    }
+
+    @Override
+    public List<User> getUsersAfterId(int afterId, int limit) {
+        List<User> foundUsers = new ArrayList<>(Math.min(limit, users.size()));
+
+        for (User user : users.tailMap(afterId, false).values()) {
+            if (foundUsers.size() == limit) {
+                break;
+            }
+
+            foundUsers.add(user);
+        }
+
+        return foundUsers;
+    }
+
+    @Override
+    public List<User> getUsersAfterId(int afterId, int limit, Projection projection) {
+        return project(getUsersAfterId(afterId, limit), projection);
+    }
+
+    @Override
+    public void exportUsers(Consumer<User> action) {
+        users.values().forEach(action);
+    }
+
     @Override
     public User getUserById(Integer id) {
         final User user = users.get(id);
@@ -32,6 +69,43 @@ public class InMemoryUserStorage implements UserStorage {
         return user;
     }
 
+    @Override
+    public User getUserById(Integer id, Projection projection) {
+        return getUserById(id).project(projection);
+    }
+
+    @Override
+    public List<User> getUsersByIds(List<Integer> ids) {
+        List<User> foundUsers = new ArrayList<>(ids.size());
+
+        for (Integer id : ids) {
+            User user = users.get(id);
+
+            if (user != null) {
+                foundUsers.add(user);
+            }
+        }
+
+        return foundUsers;
+    }
+
+    @Override
+    public Map<Integer, Set<Integer>> getAllFriendIds() {
+        Map<Integer, Set<Integer>> friendIds = new HashMap<>();
+
+        for (User user : users.values()) {
+            friendIds.put(user.getId(), user.getFriends());
+        }
+
+        return friendIds;
+    }
+
+    // лайки хранятся в фильмах InMemoryFilmStorage и вместе с пользователем не удаляются
+    @Override
+    public Set<Integer> getLikedFilmIds(Integer userId) {
+        return Set.of();
+    }
+
     @Override
     public User createUser(User user) {
         if (user.getName() == null || user.getName().trim().isBlank()) {
@@ -40,27 +114,49 @@ public class InMemoryUserStorage implements UserStorage {
         }
 
         user.generateId();
+        user.setFriends(IntSet.copyOf(user.getFriends()));
         users.put(user.getId(), user);
         log.info("Пользователь успешно создан: {}", user);
         return user;
     }
 
+    // уникальность email и логина в памяти не проверяется, как и в createUser
+    @Override
+    public boolean[] createUsers(List<User> users) {
+        boolean[] created = new boolean[users.size()];
+
+        for (int i = 0; i < users.size(); i++) {
+            createUser(users.get(i));
+            created[i] = true;
+        }
+
+        return created;
+    }
+
     @Override
     public User updateUser(User user) {
-        if (!users.containsKey(user.getId())) {
+        // дружбы меняются только через addFriend/deleteFriend, обновление их не затирает
+        User updatedUser = users.computeIfPresent(user.getId(), (id, storedUser) -> {
+            user.setFriends(storedUser.getFriends());
+            return user;
+        });
+
+        if (updatedUser == null) {
             log.error("Произошла ошибка при вызове метода updateUser");
             throw new NotFoundException(String.format("Пользователь с id: %s не найден", user.getId()));
         }
 
-        users.put(user.getId(), user);
         log.info("Данные пользователя успешно обновлены: {}", user);
         return user;
     }
 
     @Override
     public Map<String, String> deleteUserById(Integer userId) {
-        getUserById(userId);
-        users.remove(userId);
+        if (users.remove(userId) == null) {
+            log.error("Произошла ошибка при вызове метода deleteUserById");
+            throw new NotFoundException(String.format("Пользователь с id: %s не найден", userId));
+        }
+
         log.info("Пользователь по id: {} успешно удален", userId);
         return Map.of("info", String.format("Пользователь по id: %s успешно удален", userId));
     }
@@ -77,12 +173,15 @@ public class InMemoryUserStorage implements UserStorage {
         final User user = getUserById(userId);
         final User friend = getUserById(friendId);
 
-        user.getFriends().add(friendId);
-        friend.getFriends().add(userId);
-        log.info("Пользователи {} и {} стали друзьями", user.getName(), friend.getName());
+        synchronized (firstLock(user, friend)) {
+            synchronized (secondLock(user, friend)) {
+                user.getFriends().add(friendId);
+                friend.getFriends().add(userId);
+            }
+        }
 
-        updateUser(friend);
-        return updateUser(user);
+        log.info("Пользователи {} и {} стали друзьями", user.getName(), friend.getName());
+        return user;
     }
 
     @Override
@@ -90,12 +189,31 @@ public class InMemoryUserStorage implements UserStorage {
         final User user = getUserById(userId);
         final User friend = getUserById(friendId);
 
-        user.getFriends().remove(friendId);
-        friend.getFriends().remove(userId);
+        synchronized (firstLock(user, friend)) {
+            synchronized (secondLock(user, friend)) {
+                user.getFriends().remove(friendId);
+                friend.getFriends().remove(userId);
+            }
+        }
+
         log.info("Пользователи {} и {} больше не друзья", user.getName(), friend.getName());
+        return user;
+    }
+
+    @Override
+    public boolean[] addFriends(List<Friendship> friendships) {
+        boolean[] added = new boolean[friendships.size()];
 
-        updateUser(friend);
-        return updateUser(user);
+        for (int i = 0; i < friendships.size(); i++) {
+            try {
+                addFriend(friendships.get(i).getUserId(), friendships.get(i).getFriendId());
+                added[i] = true;
+            } catch (NotFoundException e) {
+                added[i] = false;
+            }
+        }
+
+        return added;
     }
 
     @Override
@@ -117,6 +235,11 @@ public class InMemoryUserStorage implements UserStorage {
         }
     }
 
+    @Override
+    public List<User> getFriendList(Integer userId, Projection projection) {
+        return project(getFriendList(userId), projection);
+    }
+
     @Override
     public List<User> getCommonFriendList(Integer userId, Integer otherId) {
         List<User> commonFriends = new ArrayList<>();
@@ -132,7 +255,7 @@ public class InMemoryUserStorage implements UserStorage {
             return commonFriends;
         }
 
-        Set<Integer> otherUserFriendsSet = new HashSet<>(userFriends);
+        Set<Integer> otherUserFriendsSet = IntSet.copyOf(userFriends);
         otherUserFriendsSet.retainAll(otherUserFriends);
 
         Iterator<Integer> i = otherUserFriendsSet.iterator();
@@ -143,4 +266,24 @@ public class InMemoryUserStorage implements UserStorage {
         log.info("Получен список общих друзей пользователей {} и {}", user.getName(), otherUser.getName());
         return commonFriends;
     }
+
+    // дружба меняется сразу у двух пользователей под двумя блокировками, взятыми в порядке id,
+    // поэтому встречные запросы не приводят к взаимной блокировке и односторонней дружбе
+    private static Object firstLock(User user, User friend) {
+        return user.getId() <= friend.getId() ? user.getFriends() : friend.getFriends();
+    }
+
+    private static Object secondLock(User user, User friend) {
+        return user.getId() <= friend.getId() ? friend.getFriends() : user.getFriends();
+    }
+
+    private static List<User> project(List<User> users, Projection projection) {
+        List<User> projectedUsers = new ArrayList<>(users.size());
+
+        for (User user : users) {
+            projectedUsers.add(user.project(projection));
+        }
+
+        return projectedUsers;
+    }
 }
@@ -4,17 +4,30 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.AlreadyExistException;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.Projection;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.StatementRegistry;
 import ru.yandex.practicum.filmorate.storage.user.mapper.UserMapper;
 
-import java.util.HashSet;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Component
 @Slf4j
@@ -22,36 +35,175 @@ import java.util.Map;
 @RequiredArgsConstructor
 @Qualifier("userDbStorage")
 public class UserDbStorage implements UserStorage {
+    static final String SELECT_USERS = "SELECT * FROM users";
+    static final String SELECT_USER_BY_ID = "SELECT * FROM users WHERE user_id = ?";
+    static final String SELECT_USERS_BY_IDS = SELECT_USERS + " WHERE user_id = ANY(?)";
+    static final String SELECT_USERS_ORDERED_BY_ID = SELECT_USERS + " ORDER BY user_id";
+    static final String SELECT_FRIENDS_ORDERED_BY_USER_ID = "SELECT user_id, friend_id FROM friendships " +
+            "ORDER BY user_id, friend_id";
+    static final int EXPORT_FETCH_SIZE = 500;
+    static final String SELECT_LIKED_FILM_IDS = "SELECT film_id FROM film_likes WHERE user_id = ?";
+    static final String SELECT_USERS_AFTER_ID = SELECT_USERS + " WHERE user_id > ? ORDER BY user_id LIMIT ?";
+    static final String SELECT_ALL_FRIEND_IDS = "SELECT u.user_id, fs.friend_id " +
+            "FROM users u " +
+            "LEFT JOIN friendships fs ON fs.user_id = u.user_id";
+    static final String SELECT_FRIENDS_BY_USER_IDS = "SELECT user_id, friend_id " +
+            "FROM friendships " +
+            "WHERE user_id = ANY(?)";
+    static final String SELECT_FRIEND_LIST = "SELECT u.* " +
+            "FROM users u " +
+            "JOIN friendships fs ON u.user_id = fs.friend_id " +
+            "WHERE fs.user_id = ?";
+    static final String SELECT_COMMON_FRIEND_LIST = "SELECT * " +
+            "FROM users " +
+            "WHERE user_id IN (SELECT friend_id " +
+            "FROM friendships " +
+            "WHERE user_id = ? " +
+            "INTERSECT SELECT friend_id " +
+            "FROM friendships " +
+            "WHERE user_id = ?)";
+    static final String INSERT_USER_IF_UNIQUE = "INSERT INTO users " +
+            "(user_email, user_login, user_name, user_birthday) " +
+            "SELECT CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS VARCHAR), CAST(? AS DATE) " +
+            "WHERE NOT EXISTS (SELECT 1 FROM users WHERE user_email = ?) " +
+            "AND NOT EXISTS (SELECT 1 FROM users WHERE user_login = ?)";
+    static final String UPDATE_USER = "UPDATE users SET user_email = ?, " +
+            "user_login = ?, " +
+            "user_name = ?, " +
+            "user_birthday = ? " +
+            "WHERE user_id = ?";
+    static final String DELETE_USER_BY_ID = "DELETE FROM users WHERE user_id = ?";
+    static final String DELETE_ALL_USERS = "DELETE FROM users";
+    static final String DECREMENT_LIKE_COUNT_BY_USER = "UPDATE films SET film_like_count = film_like_count - 1 " +
+            "WHERE film_id IN (SELECT film_id FROM film_likes WHERE user_id = ?)";
+    static final String RESET_LIKE_COUNT = "UPDATE films SET film_like_count = 0 WHERE film_like_count <> 0";
+    static final String INSERT_FRIENDSHIP = "INSERT INTO friendships (user_id, friend_id, friendship_confirmed) " +
+            "VALUES (?, ?, FALSE)";
+    static final String MERGE_FRIENDSHIP = "MERGE INTO friendships (user_id, friend_id) KEY (user_id, friend_id) " +
+            "VALUES (?, ?)";
+    static final String MERGE_FRIENDSHIP_IF_EXISTS = "MERGE INTO friendships (user_id, friend_id) " +
+            "KEY (user_id, friend_id) " +
+            "SELECT u.user_id, f.user_id FROM users u, users f WHERE u.user_id = ? AND f.user_id = ?";
+    static final String DELETE_FRIENDSHIP = "DELETE FROM friendships WHERE user_id = ? AND friend_id = ?";
+
     private final JdbcTemplate jdbcTemplate;
+    private final StatementRegistry statements;
+
+    @Override
+    public List<User> getUsers(Projection projection) {
+        return fillUsersFriends(jdbcTemplate.query(SELECT_USERS, new UserMapper()), projection);
+    }
 
     @Override
-    public List<User> getUsers() {
-        String query = "SELECT * FROM users";
+    public List<User> getUsersAfterId(int afterId, int limit, Projection projection) {
+        return fillUsersFriends(jdbcTemplate.query(SELECT_USERS_AFTER_ID, new UserMapper(), afterId, limit),
+                projection);
+    }
+
+    // пользователи и дружбы читаются двумя курсорами в порядке user_id и сливаются по ходу чтения
+    @Override
+    @Transactional(readOnly = true)
+    public void exportUsers(Consumer<User> action) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement usersStatement = prepareExport(connection, SELECT_USERS_ORDERED_BY_ID);
+                 PreparedStatement friendsStatement = prepareExport(connection, SELECT_FRIENDS_ORDERED_BY_USER_ID);
+                 ResultSet users = usersStatement.executeQuery();
+                 ResultSet friends = friendsStatement.executeQuery()) {
+                UserMapper userMapper = new UserMapper();
+                boolean hasFriend = friends.next();
+
+                for (int rowNum = 0; users.next(); rowNum++) {
+                    User user = userMapper.mapRow(users, rowNum);
+                    int userId = user.getId();
+
+                    // строки меньших id относятся к пользователям, удаленным во время выгрузки
+                    while (hasFriend && friends.getInt("user_id") < userId) {
+                        hasFriend = friends.next();
+                    }
+                    while (hasFriend && friends.getInt("user_id") == userId) {
+                        user.getFriends().add(friends.getInt("friend_id"));
+                        hasFriend = friends.next();
+                    }
+
+                    action.accept(user);
+                }
+            }
 
-        return jdbcTemplate.query(query, new UserMapper(jdbcTemplate));
+            return null;
+        });
     }
 
     @Override
-    public User getUserById(Integer id) {
-        String query = "SELECT * FROM users WHERE user_id = ?";
+    public User getUserById(Integer id, Projection projection) {
         User foundUser;
 
         try {
-            foundUser = jdbcTemplate.queryForObject(query, new UserMapper(jdbcTemplate), id);
-            return foundUser;
+            foundUser = jdbcTemplate.queryForObject(SELECT_USER_BY_ID, new UserMapper(), id);
         } catch (RuntimeException e) {
             log.info("Пользователь с id {} не найден", id);
             throw new NotFoundException(String.format("Пользователь с id %d не найден", id));
         }
+
+        fillUsersFriends(List.of(foundUser), projection);
+        return foundUser;
     }
 
     @Override
-    public User createUser(User user) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("users")
-                .usingGeneratedKeyColumns("user_id");
+    public List<User> getUsersByIds(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<User> foundUsers = fillUsersFriends(
+                jdbcTemplate.query(SELECT_USERS_BY_IDS, new UserMapper(), (Object) ids.toArray()), Projection.ALL);
+
+        // пользователи возвращаются в порядке переданных id, удаленные пропускаются
+        Map<Integer, User> usersById = new HashMap<>();
+        for (User user : foundUsers) {
+            usersById.put(user.getId(), user);
+        }
+
+        List<User> users = new ArrayList<>(foundUsers.size());
+        for (Integer id : ids) {
+            User user = usersById.get(id);
 
-        int id = simpleJdbcInsert.executeAndReturnKey(
+            if (user != null) {
+                users.add(user);
+            }
+        }
+
+        return users;
+    }
+
+    @Override
+    public Map<Integer, Set<Integer>> getAllFriendIds() {
+        Map<Integer, Set<Integer>> friendIds = new HashMap<>();
+        jdbcTemplate.query(SELECT_ALL_FRIEND_IDS,
+                rs -> {
+                    Set<Integer> userFriends = friendIds.computeIfAbsent(rs.getInt("user_id"), id -> new IntSet());
+                    Integer friendId = rs.getObject("friend_id", Integer.class);
+
+                    if (friendId != null) {
+                        userFriends.add(friendId);
+                    }
+                });
+        return friendIds;
+    }
+
+    @Override
+    public Set<Integer> getLikedFilmIds(Integer userId) {
+        IntSet filmIds = new IntSet();
+        jdbcTemplate.query(SELECT_LIKED_FILM_IDS,
+                rs -> {
+                    filmIds.add(rs.getInt("film_id"));
+                },
+                userId);
+        return filmIds;
+    }
+
+    @Override
+    public User createUser(User user) {
+        int id = statements.getUserInsert().executeAndReturnKey(
                         Map.of(
                                 "user_email", user.getEmail(),
                                 "user_login", user.getLogin(),
@@ -67,15 +219,47 @@ public class UserDbStorage implements UserStorage {
         return user;
     }
 
+    // занятые email и логин пропускаются условием вставки, а не уникальным индексом, поэтому такие строки
+    // не откатывают пакет. Сгенерированные ключи приходят только для вставленных строк, по порядку
     @Override
-    public User updateUser(User user) {
-        String query = "UPDATE users SET user_email = ?, " +
-                "user_login = ?, " +
-                "user_name = ?, " +
-                "user_birthday = ? " +
-                "WHERE user_id = ?;";
+    @Transactional
+    public boolean[] createUsers(List<User> users) {
+        return jdbcTemplate.execute((ConnectionCallback<boolean[]>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_USER_IF_UNIQUE,
+                    new String[]{"user_id"})) {
+                for (User user : users) {
+                    statement.setString(1, user.getEmail());
+                    statement.setString(2, user.getLogin());
+                    statement.setString(3, user.getName());
+                    statement.setObject(4, user.getBirthday());
+                    statement.setString(5, user.getEmail());
+                    statement.setString(6, user.getLogin());
+                    statement.addBatch();
+                }
+
+                int[] insertedLines = statement.executeBatch();
+                boolean[] created = new boolean[insertedLines.length];
+                int createdCount = 0;
+
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (int i = 0; i < insertedLines.length; i++) {
+                        if (insertedLines[i] > 0 && keys.next()) {
+                            users.get(i).setId(keys.getInt(1));
+                            created[i] = true;
+                            createdCount++;
+                        }
+                    }
+                }
+
+                log.info("Создано пользователей пакетом: {} из {}", createdCount, users.size());
+                return created;
+            }
+        });
+    }
 
-        int countUpdatedLines = jdbcTemplate.update(query,
+    @Override
+    public User updateUser(User user) {
+        int countUpdatedLines = jdbcTemplate.update(UPDATE_USER,
                 user.getEmail(),
                 user.getLogin(),
                 user.getName(),
@@ -95,11 +279,12 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
+    @Transactional
     public Map<String, String> deleteUserById(Integer id) {
-        String query = "DELETE " +
-                "FROM users " +
-                "WHERE user_id = ?";
-        int deleteLine = jdbcTemplate.update(query, id);
+        // лайки пользователя удалятся каскадно, поэтому заранее уменьшаем счетчики лайков у фильмов
+        jdbcTemplate.update(DECREMENT_LIKE_COUNT_BY_USER, id);
+
+        int deleteLine = jdbcTemplate.update(DELETE_USER_BY_ID, id);
 
         if (deleteLine == 0) {
             log.info("Пользователь для удаления по id {} не найден", id);
@@ -110,9 +295,11 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
+    @Transactional
     public Map<String, String> deleteAllUsers() {
-        String query = "DELETE FROM users";
-        int deleteLines = jdbcTemplate.update(query);
+        jdbcTemplate.update(RESET_LIKE_COUNT);
+
+        int deleteLines = jdbcTemplate.update(DELETE_ALL_USERS);
 
         if (deleteLines == 0) {
             log.info("Не найдено ни одного пользователя для удаления не найдено");
@@ -127,41 +314,48 @@ public class UserDbStorage implements UserStorage {
         final User foundUser = getUserById(userId);
         final User foundFriend = getUserById(friendId);
 
-        // проверим, есть ли лайк фильму от пользователя
-        String query = "SELECT " +
-                "COUNT(friendship_id) " +
-                "FROM friendships " +
-                "WHERE user_id = ? AND friend_id = ?;";
-        int foundLine = jdbcTemplate.queryForObject(query, Integer.class, userId, friendId);
-
-        if (foundLine > 0) {
+        // повторное добавление в друзья отсекает уникальный индекс friendships (user_id, friend_id)
+        try {
+            jdbcTemplate.update(INSERT_FRIENDSHIP, userId, friendId);
+        } catch (DuplicateKeyException e) {
             log.info("Пользователь с id {} уже находится в друзьях у пользователя с id {}", friendId, userId);
             throw new AlreadyExistException(String.format(
                     "Пользователь с id %d уже находится в друзьях у пользователя с id %d",
                     friendId, userId));
         }
 
-        jdbcTemplate.update("INSERT INTO friendships (user_id, friend_id, friendship_confirmed) VALUES (?, ?, ?);",
-                userId, friendId, false);
         log.info("Пользователь с id {} добавил в друзья пользователя с id {}", userId, friendId);
-
-        List<Integer> userFriends = jdbcTemplate.queryForList(
-                "SELECT friend_id FROM friendships WHERE user_id = ? AND friend_id = ?;",
-                Integer.class, userId, friendId);
-        foundUser.setFriends(new HashSet<>(userFriends));
+        foundUser.getFriends().add(friendId);
 
         return foundUser;
     }
 
+    // дружба вставляется, только если найдены оба пользователя; повторная дружба не ошибка
+    @Override
+    @Transactional
+    public boolean[] addFriends(List<Friendship> friendships) {
+        List<Object[]> params = new ArrayList<>(friendships.size());
+        for (Friendship friendship : friendships) {
+            params.add(new Object[]{friendship.getUserId(), friendship.getFriendId()});
+        }
+
+        int[] mergedLines = jdbcTemplate.batchUpdate(MERGE_FRIENDSHIP_IF_EXISTS, params);
+
+        boolean[] added = new boolean[mergedLines.length];
+        for (int i = 0; i < mergedLines.length; i++) {
+            added[i] = mergedLines[i] > 0;
+        }
+
+        log.info("Добавлено дружб пакетом: {}", friendships.size());
+        return added;
+    }
+
     @Override
     public User deleteFriend(Integer userId, Integer friendId) {
         final User foundUser = getUserById(userId);
         final User foundFriend = getUserById(friendId);
 
-        String query = "DELETE " +
-                "FROM friendships " +
-                "WHERE user_id = ? AND friend_id = ?;";
-        int deletedLine = jdbcTemplate.update(query, userId, friendId);
+        int deletedLine = jdbcTemplate.update(DELETE_FRIENDSHIP, userId, friendId);
 
         if (deletedLine == 0) {
             log.info("Не найдено данных по id {} и {}", userId, friendId);
@@ -170,46 +364,63 @@ public class UserDbStorage implements UserStorage {
         }
 
         log.info("Пользователь с id {} удалил из друзей пользователя с id {}", userId, friendId);
-
-        List<Integer> userFriends = jdbcTemplate.queryForList(
-                "SELECT friend_id FROM friendships WHERE user_id = ? AND friend_id = ?;",
-                Integer.class, userId, friendId);
-        foundUser.setFriends(new HashSet<>(userFriends));
+        foundUser.getFriends().remove(friendId);
 
         return foundUser;
     }
 
     @Override
-    public List<User> getFriendList(Integer userId) {
-        String query = "SELECT u.* " +
-                "FROM users u " +
-                "JOIN friendships fs ON u.user_id = fs.friend_id " +
-                "WHERE fs.user_id = ?;";
-
-        return jdbcTemplate.query(query, new UserMapper(jdbcTemplate), userId);
+    public List<User> getFriendList(Integer userId, Projection projection) {
+        return fillUsersFriends(jdbcTemplate.query(SELECT_FRIEND_LIST, new UserMapper(), userId), projection);
     }
 
     @Override
     public List<User> getCommonFriendList(Integer userId, Integer otherId) {
-        String query = "SELECT * " +
-                "FROM users " +
-                "WHERE user_id IN (SELECT friend_id " +
-                    "FROM friendships " +
-                    "WHERE user_id = ?" +
-                    "INTERSECT SELECT friend_id " +
-                    "FROM friendships " +
-                    "WHERE user_id = ?" +
-                ");";
-        List<User> commonFriends = jdbcTemplate.query(query, new UserMapper(jdbcTemplate), userId, otherId);
+        List<User> commonFriends = jdbcTemplate.query(SELECT_COMMON_FRIEND_LIST, new UserMapper(), userId, otherId);
+
+        return fillUsersFriends(commonFriends, Projection.ALL);
+    }
+
+    private static PreparedStatement prepareExport(Connection connection, String query) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(query,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(EXPORT_FETCH_SIZE);
+        return statement;
+    }
+
+    // друзья загружаются одним запросом на весь список пользователей, а не запросом на каждого пользователя.
+    // Если друзья не запрошены, запроса нет и friends - null
+    private List<User> fillUsersFriends(List<User> users, Projection projection) {
+        if (users.isEmpty()) {
+            return users;
+        }
+
+        if (!projection.includes(Projection.FRIENDS)) {
+            for (User user : users) {
+                user.setFriends(null);
+            }
+            return users;
+        }
+
+        Map<Integer, User> usersById = new HashMap<>();
+        for (User user : users) {
+            usersById.put(user.getId(), user);
+        }
+
+        jdbcTemplate.query(SELECT_FRIENDS_BY_USER_IDS,
+                rs -> {
+                    usersById.get(rs.getInt("user_id")).getFriends().add(rs.getInt("friend_id"));
+                },
+                (Object) usersById.keySet().toArray());
 
-        return commonFriends;
+        return users;
     }
 
     private void checkUserFriend(User user) {
         if (user.getFriends() != null) {
             for (int friend : user.getFriends()) {
                 jdbcTemplate.update(
-                        "INSERT INTO friendships (user_id, friend_id) VALUES (?, ?);",
+                        MERGE_FRIENDSHIP,
                         user.getId(),
                         friend
                 );
@@ -1,17 +1,52 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Projection;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
-    public List<User> getUsers();
+    // методы без projection читают пользователей целиком
+    public default List<User> getUsers() {
+        return getUsers(Projection.ALL);
+    }
 
-    public User getUserById(Integer id);
+    // методы с projection не загружают друзей, если они не запрошены, тогда friends - null
+    public List<User> getUsers(Projection projection);
+
+    // не больше limit пользователей с id больше afterId по возрастанию id
+    public default List<User> getUsersAfterId(int afterId, int limit) {
+        return getUsersAfterId(afterId, limit, Projection.ALL);
+    }
+
+    public List<User> getUsersAfterId(int afterId, int limit, Projection projection);
+
+    // все пользователи по возрастанию id по одному, без сборки полного списка в памяти
+    public void exportUsers(Consumer<User> action);
+
+    public default User getUserById(Integer id) {
+        return getUserById(id, Projection.ALL);
+    }
+
+    public User getUserById(Integer id, Projection projection);
+
+    public List<User> getUsersByIds(List<Integer> ids);
+
+    public Map<Integer, Set<Integer>> getAllFriendIds();
+
+    // id фильмов, которые лайкнул пользователь
+    public Set<Integer> getLikedFilmIds(Integer userId);
 
     public User createUser(User user);
 
+    // пакетное создание пользователей без друзей: для каждого true и проставленный id,
+    // false - email или логин уже занят
+    public boolean[] createUsers(List<User> users);
+
     public User updateUser(User user);
 
     public Map<String, String> deleteUserById(Integer id);
@@ -22,7 +57,14 @@ public interface UserStorage {
 
     public User deleteFriend(Integer userId, Integer friendId);
 
-    public List<User> getFriendList(Integer userId);
+    // пакетное добавление в друзья: для каждой пары true, если найдены оба пользователя
+    public boolean[] addFriends(List<Friendship> friendships);
+
+    public default List<User> getFriendList(Integer userId) {
+        return getFriendList(userId, Projection.ALL);
+    }
+
+    public List<User> getFriendList(Integer userId, Projection projection);
 
     public List<User> getCommonFriendList(Integer userId, Integer otherId);
 }
\ No newline at end of file
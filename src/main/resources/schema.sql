@@ -1,3 +1,9 @@
+-- разовые миграции данных, выполненные для этой базы (см. SchemaMigrations)
+CREATE TABLE IF NOT EXISTS schema_migrations (
+	migration_name varchar PRIMARY KEY,
+	migration_applied_at timestamp DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
 CREATE TABLE IF NOT EXISTS genres (
 	genre_id int GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
 	genre_name varchar NOT NULL
@@ -15,15 +21,31 @@ CREATE TABLE IF NOT EXISTS films (
 	film_description varchar(200) CHECK (film_description <> ''),
 	film_release_date date NOT NULL CONSTRAINT films_release_date CHECK (film_release_date > '1895-12-28'),
 	film_duration int CHECK (film_duration > 0),
-	film_mpa_id int REFERENCES mpa(mpa_id)
+	film_mpa_id int REFERENCES mpa(mpa_id),
+	film_like_count int DEFAULT 0 NOT NULL CHECK (film_like_count >= 0)
 );
 
+ALTER TABLE films ADD COLUMN IF NOT EXISTS film_like_count int DEFAULT 0 NOT NULL CHECK (film_like_count >= 0);
+
+CREATE INDEX IF NOT EXISTS films_like_count_idx ON films (film_like_count DESC, film_id);
+
+CREATE INDEX IF NOT EXISTS films_mpa_release_date_idx ON films (film_mpa_id, film_release_date);
+
 CREATE TABLE IF NOT EXISTS films_genres (
 	film_genre_id int GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
 	film_id int NOT NULL REFERENCES films(film_id) ON DELETE CASCADE,
 	genre_id int NOT NULL REFERENCES genres(genre_id)
 );
 
+-- дубликаты могли накопиться в базах, созданных до появления уникальных индексов. schema.sql выполняется
+-- при каждом запуске раньше SchemaMigrations, поэтому чистка здесь; на чистых данных она ничего не удаляет
+DELETE FROM films_genres
+WHERE film_genre_id NOT IN (SELECT MIN(film_genre_id) FROM films_genres GROUP BY film_id, genre_id);
+
+CREATE UNIQUE INDEX IF NOT EXISTS films_genres_film_genre_uq ON films_genres (film_id, genre_id);
+
+CREATE INDEX IF NOT EXISTS films_genres_genre_film_idx ON films_genres (genre_id, film_id);
+
 CREATE TABLE IF NOT EXISTS users (
 	user_id int GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
 	user_email varchar NOT NULL CHECK (user_email <> '') UNIQUE,
@@ -39,8 +61,22 @@ CREATE TABLE IF NOT EXISTS friendships (
 	friendship_confirmed boolean DEFAULT FALSE
 );
 
+DELETE FROM friendships
+WHERE friendship_id NOT IN (SELECT MIN(friendship_id) FROM friendships GROUP BY user_id, friend_id);
+
+CREATE UNIQUE INDEX IF NOT EXISTS friendships_user_friend_uq ON friendships (user_id, friend_id);
+
+CREATE INDEX IF NOT EXISTS friendships_friend_idx ON friendships (friend_id);
+
 CREATE TABLE IF NOT EXISTS film_likes (
 	film_like_id int GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
 	film_id int NOT NULL CONSTRAINT film_like_film_id_fk REFERENCES films(film_id) ON DELETE CASCADE,
 	user_id int NOT NULL CONSTRAINT film_like_user_id_fk REFERENCES users(user_id) ON DELETE CASCADE
-);
\ No newline at end of file
+);
+
+DELETE FROM film_likes
+WHERE film_like_id NOT IN (SELECT MIN(film_like_id) FROM film_likes GROUP BY film_id, user_id);
+
+CREATE UNIQUE INDEX IF NOT EXISTS film_likes_film_user_uq ON film_likes (film_id, user_id);
+
+CREATE INDEX IF NOT EXISTS film_likes_user_idx ON film_likes (user_id);
@@ -0,0 +1,84 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.service.PrefixIndex;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// автодополнение по синтетическим названиям фильмов из двух-трех случайных слов:
+// короткий префикс (много совпадений, работает ограничение просмотра) и длинный.
+// Запуск аналогичен IntSetBenchmark: org.openjdk.jmh.Main AutocompleteBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AutocompleteBenchmark {
+    private static final String LETTERS = "абвгдежзиклмнопрстуфхцчшэюя";
+
+    @Param({"1000000"})
+    private int filmsCount;
+
+    private PrefixIndex prefixIndex;
+    private int[] likeCounts;
+    private String longPrefix;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        Map<Integer, List<String>> names = new HashMap<>();
+
+        for (int id = 1; id <= filmsCount; id++) {
+            int wordsCount = 2 + random.nextInt(2);
+            StringBuilder name = new StringBuilder();
+
+            for (int i = 0; i < wordsCount; i++) {
+                name.append(word(random)).append(' ');
+            }
+
+            names.put(id, List.of(name.toString().trim()));
+        }
+
+        prefixIndex = new PrefixIndex();
+        prefixIndex.rebuild(() -> names);
+        likeCounts = random.ints(filmsCount + 1, 0, 1000).toArray();
+        longPrefix = names.get(filmsCount / 2).get(0).substring(0, 5);
+    }
+
+    @Benchmark
+    public List<Integer> shortPrefix() {
+        return prefixIndex.complete("м", 10, id -> likeCounts[id]);
+    }
+
+    @Benchmark
+    public List<Integer> longPrefix() {
+        return prefixIndex.complete(longPrefix, 10, id -> likeCounts[id]);
+    }
+
+    private static String word(Random random) {
+        int length = 3 + random.nextInt(7);
+        StringBuilder word = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+
+        return word.toString();
+    }
+}
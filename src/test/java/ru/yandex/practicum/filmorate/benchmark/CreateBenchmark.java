@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.StatementRegistry;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// создание фильма и пользователя по одному, как поток регистраций: вставкой из StatementRegistry
+// и, для сравнения, новой SimpleJdbcInsert на каждый вызов с чтением метаданных таблицы, как было раньше.
+// Запуск аналогичен IntSetBenchmark: org.openjdk.jmh.Main CreateBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CreateBenchmark {
+    private JdbcTemplate jdbcTemplate;
+    private FilmDbStorage filmStorage;
+    private UserDbStorage userStorage;
+    private int userNumber;
+
+    // одно соединение, как у запроса из пула: разница только в подготовке вставки
+    @Setup(Level.Trial)
+    public void createDatabase() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:create;DB_CLOSE_DELAY=-1", "sa", "", true);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        ReferenceDataRegistry referenceData = new ReferenceDataRegistry(jdbcTemplate);
+        referenceData.load();
+        StatementRegistry statements = new StatementRegistry(jdbcTemplate);
+        statements.compile();
+        filmStorage = new FilmDbStorage(jdbcTemplate, referenceData, statements);
+        userStorage = new UserDbStorage(jdbcTemplate, statements);
+    }
+
+    @Benchmark
+    public Film createFilm() {
+        return filmStorage.createFilm(newFilm());
+    }
+
+    @Benchmark
+    public Number createFilmWithNewInsert() {
+        Film film = newFilm();
+        return new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("films")
+                .usingColumns("film_name", "film_description", "film_release_date", "film_duration", "film_mpa_id")
+                .usingGeneratedKeyColumns("film_id")
+                .executeAndReturnKey(Map.of(
+                        "film_name", film.getName(),
+                        "film_description", film.getDescription(),
+                        "film_release_date", film.getReleaseDate(),
+                        "film_duration", film.getDuration(),
+                        "film_mpa_id", film.getMpa().getId()));
+    }
+
+    @Benchmark
+    public User createUser() {
+        return userStorage.createUser(newUser());
+    }
+
+    @Benchmark
+    public Number createUserWithNewInsert() {
+        User user = newUser();
+        return new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("users")
+                .usingGeneratedKeyColumns("user_id")
+                .executeAndReturnKey(Map.of(
+                        "user_email", user.getEmail(),
+                        "user_login", user.getLogin(),
+                        "user_name", user.getName(),
+                        "user_birthday", user.getBirthday()));
+    }
+
+    private static Film newFilm() {
+        return new Film(0, "Фильм", "Описание фильма", LocalDate.of(2000, 1, 1), 100, null,
+                new MPA(1, "G", 0), new HashSet<>());
+    }
+
+    // email и логин уникальны
+    private User newUser() {
+        userNumber++;
+        return new User(0, "user" + userNumber + "@email.ru", "user" + userNumber, "Пользователь",
+                LocalDate.of(1990, 1, 1), new HashSet<>());
+    }
+}
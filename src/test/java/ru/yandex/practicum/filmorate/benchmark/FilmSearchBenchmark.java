@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.service.film.FilmSearchIndex;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// поиск по индексу из синтетических фильмов: частота слов словаря убывает по закону Ципфа,
+// поэтому в запросах есть и редкие, и очень частые термы.
+// Запуск аналогичен IntSetBenchmark: org.openjdk.jmh.Main FilmSearchBenchmark (нужно около 4 ГБ памяти)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilmSearchBenchmark {
+    private static final String[] WORDS = {
+        "любовь", "война", "город", "ночь", "дорога", "тайна", "жизнь", "мир", "герой", "семья",
+        "love", "war", "city", "night", "road", "secret", "life", "world", "hero", "family",
+        "космос", "остров", "море", "зима", "лето", "история", "друзья", "детектив", "полет", "мечта",
+        "space", "island", "sea", "winter", "summer", "story", "friends", "detective", "flight", "dream"
+    };
+    private static final int VOCABULARY_SIZE = 50_000;
+
+    @Param({"1000000"})
+    private int filmsCount;
+
+    private FilmSearchIndex filmSearchIndex;
+    private int[] likeCounts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<Film> films = new ArrayList<>(filmsCount);
+
+        for (int id = 1; id <= filmsCount; id++) {
+            films.add(new Film(id, text(random, 3), text(random, 15), LocalDate.of(2000, 1, 1), 100,
+                    new LinkedHashSet<>(), new MPA(1, "G", 0), new IntSet()));
+        }
+
+        filmSearchIndex = new FilmSearchIndex();
+        filmSearchIndex.rebuild(() -> films);
+        likeCounts = random.ints(filmsCount + 1, 0, 1000).toArray();
+    }
+
+    @Benchmark
+    public List<Integer> frequentTerm() {
+        return filmSearchIndex.search("любовь", 0, 10, null);
+    }
+
+    @Benchmark
+    public List<Integer> twoFrequentTerms() {
+        return filmSearchIndex.search("love war", 0, 10, null);
+    }
+
+    @Benchmark
+    public List<Integer> rareTerm() {
+        return filmSearchIndex.search("word4242", 0, 10, null);
+    }
+
+    @Benchmark
+    public List<Integer> frequentAndRareTermsBoostedByLikes() {
+        return filmSearchIndex.search("город word777", 0, 10, id -> likeCounts[id]);
+    }
+
+    // первые слова словаря - настоящие слова, остальные - "wordN"; номер выбирается по закону Ципфа
+    private static String text(Random random, int wordsCount) {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < wordsCount; i++) {
+            int rank = (int) Math.min(VOCABULARY_SIZE, Math.pow(VOCABULARY_SIZE, random.nextDouble())) - 1;
+            text.append(rank < WORDS.length ? WORDS[rank] : "word" + rank).append(' ');
+        }
+
+        return text.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.service.user.FriendIndex;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// подбор возможных друзей на синтетическом графе со степенным распределением числа друзей
+// (модель предпочтительного присоединения): для самого популярного пользователя и для обычного.
+// Запуск аналогичен IntSetBenchmark: org.openjdk.jmh.Main FriendSuggestionsBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FriendSuggestionsBenchmark {
+    private static final int FRIENDS_PER_NEW_USER = 10;
+    private static final Duration TIME_BUDGET = Duration.ofSeconds(10);
+
+    @Param({"100000"})
+    private int usersCount;
+
+    @Param({"100", "1000"})
+    private int maxFanOut;
+
+    private FriendIndex friendIndex;
+    private int hubUserId;
+    private int regularUserId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<Integer, IntSet> friends = buildPowerLawGraph(usersCount, new Random(42));
+
+        friendIndex = new FriendIndex();
+        friendIndex.rebuild(() -> friends);
+
+        hubUserId = friends.entrySet().stream()
+                .max(Map.Entry.comparingByValue((first, second) -> Integer.compare(first.size(), second.size())))
+                .orElseThrow()
+                .getKey();
+        regularUserId = usersCount / 2;
+    }
+
+    @Benchmark
+    public List<Integer> suggestionsForHub() {
+        return friendIndex.getSuggestedFriendIds(hubUserId, 10, maxFanOut, TIME_BUDGET);
+    }
+
+    @Benchmark
+    public List<Integer> suggestionsForRegularUser() {
+        return friendIndex.getSuggestedFriendIds(regularUserId, 10, maxFanOut, TIME_BUDGET);
+    }
+
+    // каждый новый пользователь дружит (взаимно) с уже существующими пропорционально числу их друзей
+    private static Map<Integer, IntSet> buildPowerLawGraph(int usersCount, Random random) {
+        Map<Integer, IntSet> friends = new HashMap<>();
+        List<Integer> endpoints = new ArrayList<>();
+
+        for (int userId = 1; userId <= usersCount; userId++) {
+            IntSet userFriends = new IntSet();
+            friends.put(userId, userFriends);
+
+            for (int i = 0; i < FRIENDS_PER_NEW_USER && !endpoints.isEmpty(); i++) {
+                int friendId = endpoints.get(random.nextInt(endpoints.size()));
+
+                if (friendId != userId && userFriends.add(friendId)) {
+                    friends.get(friendId).add(userId);
+                    endpoints.add(friendId);
+                    endpoints.add(userId);
+                }
+            }
+
+            if (endpoints.isEmpty()) {
+                endpoints.add(userId);
+            }
+        }
+
+        return friends;
+    }
+}
@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.service.BulkImport;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.user.UserService;
+import ru.yandex.practicum.filmorate.storage.StatementRegistry;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// импорт rowsCount строк CSV в H2 в памяти через сервисы и хранилища приложения, с транзакцией на пакет.
+// Время одного импорта, строк в секунду = rowsCount / время. Лайки ставятся LIKED_FILMS_COUNT фильмам
+// от LIKED_FILMS_COUNT пользователей, созданных до замера.
+// Запуск аналогичен IntSetBenchmark: org.openjdk.jmh.Main ImportBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ImportBenchmark {
+    private static final int LIKED_FILMS_COUNT = 1000;
+    private static final AtomicInteger DATABASE_NUMBER = new AtomicInteger();
+
+    @Param({"100000"})
+    private int rowsCount;
+
+    private ObjectMapper objectMapper;
+    private Validator validator;
+    private byte[] films;
+    private byte[] users;
+    private byte[] likes;
+    private FilmService filmService;
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void prepareRows() {
+        objectMapper = JsonMapper.builder()
+                .addModule(new ParameterNamesModule(JsonCreator.Mode.DEFAULT))
+                .addModule(new JavaTimeModule())
+                .build();
+        validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+        Random random = new Random(42);
+        StringBuilder filmRows = new StringBuilder("name,description,releaseDate,duration,mpa.id,genres[].id\n");
+        StringBuilder userRows = new StringBuilder("email,login,name,birthday\n");
+        StringBuilder likeRows = new StringBuilder("filmId,userId\n");
+
+        for (int i = 1; i <= rowsCount; i++) {
+            filmRows.append("Фильм ").append(i).append(",Описание фильма ").append(i).append(",")
+                    .append(1950 + random.nextInt(70)).append("-01-01,")
+                    .append(60 + random.nextInt(120)).append(",")
+                    .append(1 + random.nextInt(5)).append(",")
+                    .append(1 + random.nextInt(6)).append(';').append(1 + random.nextInt(6)).append('\n');
+            userRows.append("user").append(i).append("@email.ru,user").append(i).append(",Пользователь ")
+                    .append(i).append(",1990-01-01\n");
+            likeRows.append(1 + random.nextInt(LIKED_FILMS_COUNT)).append(',')
+                    .append(1 + random.nextInt(LIKED_FILMS_COUNT)).append('\n');
+        }
+
+        films = filmRows.toString().getBytes(StandardCharsets.UTF_8);
+        users = userRows.toString().getBytes(StandardCharsets.UTF_8);
+        likes = likeRows.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // каждая итерация - на пустой базе, только с фильмами и пользователями для лайков
+    @Setup(Level.Iteration)
+    public void createDatabase() {
+        SimpleDriverDataSource dataSource = new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:import" + DATABASE_NUMBER.incrementAndGet() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        ReferenceDataRegistry referenceData = new ReferenceDataRegistry(jdbcTemplate);
+        referenceData.load();
+        StatementRegistry statements = new StatementRegistry(jdbcTemplate);
+        TransactionInterceptor transactions = new TransactionInterceptor();
+        transactions.setTransactionManager(new DataSourceTransactionManager(dataSource));
+        transactions.setTransactionAttributeSource(new AnnotationTransactionAttributeSource());
+
+        FilmStorage filmStorage = transactional(new FilmDbStorage(jdbcTemplate, referenceData, statements),
+                FilmStorage.class, transactions);
+        UserStorage userStorage = transactional(new UserDbStorage(jdbcTemplate, statements), UserStorage.class,
+                transactions);
+        filmService = new FilmService(filmStorage, userStorage);
+        userService = new UserService(userStorage, event -> { });
+
+        StringBuilder likedFilms = new StringBuilder("name,description,releaseDate,duration\n");
+        StringBuilder likingUsers = new StringBuilder("email,login,birthday\n");
+        for (int i = 1; i <= LIKED_FILMS_COUNT; i++) {
+            likedFilms.append("Фильм ").append(i).append(",Описание,2000-01-01,100\n");
+            likingUsers.append("liking").append(i).append("@email.ru,liking").append(i).append(",1990-01-01\n");
+        }
+        filmService.importFilms(bulkImport(likedFilms.toString().getBytes(StandardCharsets.UTF_8)));
+        userService.importUsers(bulkImport(likingUsers.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public ImportResult importFilms() {
+        return filmService.importFilms(bulkImport(films));
+    }
+
+    @Benchmark
+    public ImportResult importUsers() {
+        return userService.importUsers(bulkImport(users));
+    }
+
+    @Benchmark
+    public ImportResult importLikes() {
+        return filmService.importLikes(bulkImport(likes));
+    }
+
+    private BulkImport bulkImport(byte[] rows) {
+        return new BulkImport(new ByteArrayInputStream(rows), true, objectMapper, validator);
+    }
+
+    // @Transactional хранилищ работает так же, как в приложении
+    private static <T> T transactional(T storage, Class<T> type, TransactionInterceptor transactions) {
+        ProxyFactory proxyFactory = new ProxyFactory(storage);
+        proxyFactory.addAdvice(transactions);
+        return type.cast(proxyFactory.getProxy());
+    }
+}
@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jol.info.GraphLayout;
+import ru.yandex.practicum.filmorate.model.IntSet;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// сравнение IntSet и HashSet<Integer> для лайков фильма: заполнение, поиск, обход (как при записи в JSON).
+// Запуск: mvn test-compile, затем
+// java -cp target/test-classes:target/classes:$(cat cp.txt) org.openjdk.jmh.Main IntSetBenchmark,
+// где cp.txt получен через mvn dependency:build-classpath -Dmdep.outputFile=cp.txt -Dmdep.includeScope=test.
+// Размер в памяти печатает main этого класса
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntSetBenchmark {
+    @Param({"1000", "500000"})
+    private int size;
+
+    private int[] userIds;
+    private Set<Integer> hashSet;
+    private IntSet intSet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        userIds = randomUserIds(size);
+        hashSet = fillHashSet(userIds);
+        intSet = fillIntSet(userIds);
+    }
+
+    @Benchmark
+    public Set<Integer> fillHashSet() {
+        return fillHashSet(userIds);
+    }
+
+    @Benchmark
+    public IntSet fillIntSet() {
+        return fillIntSet(userIds);
+    }
+
+    @Benchmark
+    public void containsHashSet(Blackhole blackhole) {
+        for (int userId : userIds) {
+            blackhole.consume(hashSet.contains(userId));
+        }
+    }
+
+    @Benchmark
+    public void containsIntSet(Blackhole blackhole) {
+        for (int userId : userIds) {
+            blackhole.consume(intSet.contains(userId));
+        }
+    }
+
+    @Benchmark
+    public long iterateHashSet() {
+        long sum = 0;
+        for (Integer userId : hashSet) {
+            sum += userId;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long iterateIntSet() {
+        long sum = 0;
+        for (Integer userId : intSet) {
+            sum += userId;
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) {
+        for (int size : new int[]{1000, 500000}) {
+            int[] userIds = randomUserIds(size);
+
+            System.out.printf("%d лайков: HashSet<Integer> %d байт, IntSet %d байт%n", size,
+                    GraphLayout.parseInstance(fillHashSet(userIds)).totalSize(),
+                    GraphLayout.parseInstance(fillIntSet(userIds)).totalSize());
+        }
+    }
+
+    // лайки ставят пользователи из первого миллиона id
+    private static int[] randomUserIds(int size) {
+        return new Random(42).ints(0, 1_000_000).distinct().limit(size).toArray();
+    }
+
+    private static Set<Integer> fillHashSet(int[] userIds) {
+        Set<Integer> set = new HashSet<>();
+        for (int userId : userIds) {
+            set.add(userId);
+        }
+        return set;
+    }
+
+    private static IntSet fillIntSet(int[] userIds) {
+        IntSet set = new IntSet();
+        for (int userId : userIds) {
+            set.add(userId);
+        }
+        return set;
+    }
+}
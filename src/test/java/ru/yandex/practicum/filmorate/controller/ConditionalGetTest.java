@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Projection;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConditionalGetTest {
+    @Test
+    void projectionIsPartOfETag() {
+        String full = ConditionalGet.eTag("popular-10", 5, Projection.ALL);
+        String names = ConditionalGet.eTag("popular-10", 5, new Projection(Set.of("id", "name"), Set.of()));
+        String namesAndGenres = ConditionalGet.eTag("popular-10", 5,
+                new Projection(Set.of("id", "name", "genres"), Set.of("genres")));
+
+        assertThat(full).isEqualTo(ConditionalGet.eTag("popular-10", 5));
+        assertThat(List.of(full, names, namesAndGenres)).doesNotHaveDuplicates();
+        // порядок полей в запросе не меняет тег
+        assertThat(ConditionalGet.eTag("popular-10", 5, new Projection(Set.of("name", "id"), Set.of())))
+                .isEqualTo(names);
+        assertThat(ConditionalGet.isNotModified(List.of("W/" + names), names)).isTrue();
+    }
+}
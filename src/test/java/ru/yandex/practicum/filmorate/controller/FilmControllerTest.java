@@ -1,9 +1,12 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
@@ -35,7 +38,7 @@ class FilmControllerTest {
     void setUp() {
         userStorage = new InMemoryUserStorage();
         filmStorage = new InMemoryFilmStorage(userStorage);
-        filmService = new FilmService(filmStorage);
+        filmService = new FilmService(filmStorage, userStorage);
     }
 
     @AfterEach
@@ -262,6 +265,49 @@ class FilmControllerTest {
         assertEquals(film1.getLikes(), Set.of(1, 2));
     }
 
+    @Test
+    void filmVersionChangesOnLike() {
+        Film film = new Film(1, "Начало",
+                "Запутанный фильм Кристофера Нолана",
+                LocalDate.of(2010, 7, 8), 148,
+                Set.of(new Genre(4, "Триллер")),
+                new MPA(5, "NC-17", 18), new HashSet<>());
+        filmService.createFilm(film);
+        userStorage.createUser(new User(1, "test@test.ru",
+                "testLogin", "Test-name",
+                LocalDate.of(2015, 11, 10), new HashSet<>()));
+
+        long filmVersion = filmService.getFilmVersion(1);
+        long otherFilmVersion = filmService.getFilmVersion(2);
+        long catalogVersion = filmService.getCatalogVersion();
+
+        filmService.addLikeToFilm(1, 1);
+        assertNotEquals(filmVersion, filmService.getFilmVersion(1));
+        assertEquals(otherFilmVersion, filmService.getFilmVersion(2));
+        assertNotEquals(catalogVersion, filmService.getCatalogVersion());
+        assertThrows(NotFoundException.class, () -> filmService.addLikeToFilm(1, 2));
+
+        filmVersion = filmService.getFilmVersion(1);
+        filmService.deleteFilmById(1);
+        assertNotEquals(filmVersion, filmService.getFilmVersion(1));
+    }
+
+    @Test
+    void anyVersionMatchesOnlyExistingFilm() {
+        filmService.createFilm(new Film(1, "Начало",
+                "Запутанный фильм Кристофера Нолана",
+                LocalDate.of(2010, 7, 8), 148,
+                Set.of(new Genre(4, "Триллер")),
+                new MPA(5, "NC-17", 18), new HashSet<>()));
+        FilmController filmController = new FilmController(filmService, null, null,
+                new ProjectionWriter(new ObjectMapper()));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("*");
+
+        assertEquals(HttpStatus.NOT_MODIFIED, filmController.getFilmById(1, null, null, headers).getStatusCode());
+        assertThrows(NotFoundException.class, () -> filmController.getFilmById(2, null, null, headers));
+    }
+
     @Test
     void deleteLikeFromFilm() {
         Film film1 = new Film(1, "Защитник",
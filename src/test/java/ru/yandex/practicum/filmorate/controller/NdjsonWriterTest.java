@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NdjsonWriterTest {
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final NdjsonWriter ndjsonWriter = new NdjsonWriter(objectMapper);
+
+    @Test
+    void writesOneObjectPerLine() throws IOException {
+        List<User> users = List.of(
+                new User(1, "user@email.ru", "vanya123", "Ivan Petrov", LocalDate.of(1990, 1, 1), IntSet.of(2)),
+                new User(2, "user2@email.ru", "vasya321", "Vasya Ivanov", LocalDate.of(1992, 2, 2), IntSet.of()));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        ndjsonWriter.<User>write(outputStream, users::forEach);
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertThat(lines).hasSize(3);
+        assertThat(lines[2]).isEmpty();
+        assertThat(objectMapper.readTree(lines[0])).isEqualTo(objectMapper.valueToTree(users.get(0)));
+        assertThat(objectMapper.readTree(lines[1])).isEqualTo(objectMapper.valueToTree(users.get(1)));
+    }
+
+    @Test
+    void closedConnectionStopsSource() {
+        OutputStream closedStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Соединение закрыто");
+            }
+        };
+        int[] produced = {0};
+        Consumer<Consumer<Integer>> source = action -> {
+            for (int i = 0; i < 100_000; i++) {
+                produced[0]++;
+                action.accept(i);
+            }
+        };
+
+        assertThatThrownBy(() -> ndjsonWriter.write(closedStream, source))
+                .isInstanceOf(UncheckedIOException.class);
+        assertThat(produced[0]).isLessThan(100_000);
+    }
+}
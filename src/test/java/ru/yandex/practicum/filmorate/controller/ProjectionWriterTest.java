@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Projection;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProjectionWriterTest {
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final ProjectionWriter projectionWriter = new ProjectionWriter(objectMapper);
+
+    @Test
+    void likeCountIsWrittenOnlyWhenRequested() {
+        Film film = new Film(1, "Film", "Description", LocalDate.of(2000, 1, 1), 100,
+                Set.of(new Genre(1, "Комедия")), new MPA(4, "R", 17), IntSet.of(1, 2));
+
+        Object body = projectionWriter.write(film, Projection.ALL);
+        assertThat(body).isSameAs(film);
+        assertThat(objectMapper.valueToTree(body).has("likeCount")).isFalse();
+
+        JsonNode projected = (JsonNode) projectionWriter.write(film, new Projection(Set.of("id", "likeCount"), Set.of()));
+        assertThat(projected.fieldNames()).toIterable().containsExactlyInAnyOrder("id", "likeCount");
+        assertThat(projected.get("likeCount").asInt()).isEqualTo(2);
+    }
+}
@@ -34,7 +34,7 @@ class UserControllerTest {
     @BeforeEach
     void setUp() {
         userStorage = new InMemoryUserStorage();
-        userService = new UserService(userStorage);
+        userService = new UserService(userStorage, event -> { });
         user1 = new User(1,"test@test.ru",
                 "testLogin", "Test-name",
                 LocalDate.of(2015, 11, 10), new HashSet<>());
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.JsonTest;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JsonTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class IntSetTest {
+    private final ObjectMapper objectMapper;
+
+    @Test
+    void behavesLikeSetOfIntegers() {
+        IntSet intSet = IntSet.of(5, 1, 70000);
+
+        assertThat(intSet.add(3)).isTrue();
+        assertThat(intSet.add(3)).isFalse();
+        assertThat(intSet.remove(Integer.valueOf(5))).isTrue();
+        assertThat(intSet.remove("5")).isFalse();
+        assertThat(intSet)
+                .containsExactly(1, 3, 70000)
+                .isEqualTo(Set.of(1, 3, 70000))
+                .hasSameHashCodeAs(new HashSet<>(Set.of(1, 3, 70000)));
+
+        Iterator<Integer> iterator = intSet.iterator();
+        intSet.add(2);
+        iterator.next();
+        iterator.remove();
+
+        assertThat(iterator).toIterable().containsExactly(3, 70000);
+        assertThat(intSet.toIntArray()).containsExactly(2, 3, 70000);
+
+        intSet.retainAll(IntSet.of(3, 4, 70000));
+
+        assertThat(intSet).containsExactly(3, 70000);
+    }
+
+    @Test
+    void serializesAsJsonArray() throws Exception {
+        Film film = objectMapper.readValue("{\"name\":\"Film\",\"releaseDate\":\"2000-01-01\"," +
+                "\"mpa\":{\"id\":1},\"likes\":[7,2,7]}", Film.class);
+        User user = objectMapper.readValue("{\"email\":\"user@email.ru\",\"login\":\"user\"," +
+                "\"birthday\":\"1990-01-01\",\"friends\":[3]}", User.class);
+
+        assertThat(film.getLikes()).isInstanceOf(IntSet.class).containsExactly(2, 7);
+        assertThat(user.getFriends()).isInstanceOf(IntSet.class).containsExactly(3);
+        assertThat(objectMapper.writeValueAsString(IntSet.of(7, 2))).isEqualTo("[2,7]");
+        assertThat(objectMapper.writeValueAsString(new IntSet())).isEqualTo("[]");
+    }
+
+    @Test
+    void sampleIsNotBiasedToLowIds() {
+        IntSet intSet = new IntSet();
+        for (int i = 0; i < 1000; i++) {
+            intSet.add(i);
+        }
+
+        int[] sample = intSet.sample(100);
+
+        assertThat(sample).hasSize(100).isSorted().doesNotHaveDuplicates();
+        assertThat(sample[sample.length - 1]).isGreaterThan(100);
+        assertThat(IntSet.of(3, 1, 2).sample(5)).containsExactly(1, 2, 3);
+    }
+}
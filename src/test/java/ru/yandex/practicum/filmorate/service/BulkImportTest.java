@@ -0,0 +1,178 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class BulkImportTest {
+    // модули как у ObjectMapper из Spring Boot: конструкторы моделей без @JsonCreator
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .addModule(new ParameterNamesModule(JsonCreator.Mode.DEFAULT))
+            .addModule(new JavaTimeModule())
+            .build();
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Test
+    void csvColumnsBecomeNestedFields() {
+        List<Film> films = new ArrayList<>();
+        ImportResult result = bulkImport(true,
+                "name,description,releaseDate,duration,mpa.id,genres[].id",
+                "\"Фильм, с запятой\",\"Описание с \"\"кавычками\"\"\",2000-01-01,100,2,1;3",
+                "Без жанров,Описание,2001-02-03,90,1,")
+                .run(10, row -> row.read(Film.class), chunk -> collect(chunk, films));
+
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getFailed()).isZero();
+        assertThat(films.get(0).getName()).isEqualTo("Фильм, с запятой");
+        assertThat(films.get(0).getDescription()).isEqualTo("Описание с \"кавычками\"");
+        assertThat(films.get(0).getReleaseDate()).isEqualTo(LocalDate.of(2000, 1, 1));
+        assertThat(films.get(0).getMpa().getId()).isEqualTo(2);
+        assertThat(films.get(0).getGenres()).extracting(Genre::getId).containsExactlyInAnyOrder(1, 3);
+        assertThat(films.get(1).getGenres()).isNull();
+    }
+
+    @Test
+    void badRowsAreReportedByLineNumber() {
+        ImportResult result = bulkImport(false,
+                "{\"filmId\": 1, \"userId\": 2}",
+                "",
+                "{\"filmId\": \"x\", \"userId\": 2}",
+                "not json",
+                "{\"userId\": 2}",
+                "[1, 2]",
+                "{\"filmId\": \"3\", \"userId\": 4}")
+                .run(10, row -> row.getInt("filmId") + row.getInt("userId"), chunk -> noErrors(chunk));
+
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getFailed()).isEqualTo(4);
+        assertThat(result.getErrors())
+                .extracting(ImportResult.ImportError::getLine)
+                .containsExactly(3, 4, 5, 6);
+        assertThat(result.getErrors().get(2).getMessage()).isEqualTo("Не заполнено поле filmId");
+    }
+
+    @Test
+    void beanValidationIsAppliedToRows() {
+        ImportResult result = bulkImport(false,
+                "{\"name\": \"\", \"description\": \"Описание\", \"releaseDate\": \"2000-01-01\", \"duration\": 0}",
+                "{\"name\": \"Фильм\", \"description\": \"Описание\", \"releaseDate\": \"01.01.2000\"}")
+                .run(10, row -> row.read(Film.class), chunk -> noErrors(chunk));
+
+        assertThat(result.getImported()).isZero();
+        assertThat(result.getErrors().get(0).getMessage())
+                .isEqualTo("Длительность фильма должна быть не меньше 1 минуты; Наименование не должно быть пустым");
+        assertThat(result.getErrors().get(1).getMessage()).startsWith("Некорректное значение поля");
+    }
+
+    @Test
+    void rowsAreWrittenInChunks() {
+        List<Integer> chunkSizes = new ArrayList<>();
+        String[] lines = new String[BulkImport.MAX_REPORTED_ERRORS + 51];
+        lines[0] = "id";
+        for (int i = 1; i < lines.length; i++) {
+            lines[i] = String.valueOf(i);
+        }
+
+        ImportResult result = bulkImport(true, lines)
+                .run(40, row -> row.getInt("id"), chunk -> {
+                    chunkSizes.add(chunk.size());
+
+                    List<String> errors = new ArrayList<>();
+                    for (Integer id : chunk) {
+                        errors.add(id % 3 == 0 ? null : "Ошибка записи");
+                    }
+                    return errors;
+                });
+
+        assertThat(chunkSizes).containsExactly(40, 40, 40, 30);
+        assertThat(result.getImported()).isEqualTo(50);
+        assertThat(result.getFailed()).isEqualTo(100);
+        assertThat(result.getErrors()).hasSize(BulkImport.MAX_REPORTED_ERRORS);
+        assertThat(result.getErrors().get(0).getLine()).isEqualTo(2);
+    }
+
+    @Test
+    void databaseErrorsAreReportedPerRow() {
+        ImportResult result = bulkImport(false, "{\"filmId\": 1}", "{\"filmId\": 2}", "{\"filmId\": 3}")
+                .run(10, row -> {
+                    if (row.getInt("filmId") == 2) {
+                        throw new QueryTimeoutException("Превышено время ожидания запроса");
+                    }
+                    return row.getInt("filmId");
+                }, chunk -> noErrors(chunk));
+
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getErrors())
+                .extracting(ImportResult.ImportError::getLine, ImportResult.ImportError::getMessage)
+                .containsExactly(tuple(2, "Не удалось проверить строку: Превышено время ожидания запроса"));
+    }
+
+    @Test
+    void failedChunkIsRewrittenRowByRow() {
+        List<List<Integer>> chunks = new ArrayList<>();
+
+        ImportResult result = bulkImport(false, "{\"filmId\": 1}", "{\"filmId\": 2}", "{\"filmId\": 3}")
+                .run(10, row -> row.getInt("filmId"), chunk -> {
+                    chunks.add(List.copyOf(chunk));
+                    if (chunk.contains(2)) {
+                        throw new DataIntegrityViolationException("Нарушено ограничение FK");
+                    }
+                    return noErrors(chunk);
+                });
+
+        assertThat(chunks).containsExactly(List.of(1, 2, 3), List.of(1), List.of(2), List.of(3));
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getErrors())
+                .extracting(ImportResult.ImportError::getLine, ImportResult.ImportError::getMessage)
+                .containsExactly(tuple(2, "Не удалось записать строку: Нарушено ограничение FK"));
+    }
+
+    @Test
+    void wrongCsvRowsAreRejected() {
+        ImportResult result = bulkImport(true, "filmId,userId", "1", "1,\"2", "1,2")
+                .run(10, row -> row.getInt("filmId"), chunk -> noErrors(chunk));
+
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getErrors())
+                .extracting(ImportResult.ImportError::getMessage)
+                .containsExactly("Ожидалось значений: 2, получено: 1", "Не закрыта кавычка в строке CSV");
+        assertThatThrownBy(() -> BulkImport.parseCsvLine("\"a"))
+                .isInstanceOf(ValidationException.class);
+    }
+
+    private static BulkImport bulkImport(boolean csv, String... lines) {
+        byte[] body = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        return new BulkImport(new ByteArrayInputStream(body), csv, OBJECT_MAPPER, VALIDATOR);
+    }
+
+    private static <T> List<String> collect(List<T> chunk, List<T> target) {
+        target.addAll(chunk);
+        return noErrors(chunk);
+    }
+
+    private static List<String> noErrors(List<?> chunk) {
+        return Collections.nCopies(chunk.size(), null);
+    }
+}
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefixIndexTest {
+    private static final Map<Integer, Integer> POPULARITY = Map.of(1, 5, 2, 10, 3, 1);
+
+    private PrefixIndex prefixIndex;
+
+    @BeforeEach
+    void setUp() {
+        prefixIndex = new PrefixIndex();
+        prefixIndex.rebuild(() -> Map.of(
+                1, List.of("The Matrix"),
+                2, List.of("Матрица: Перезагрузка"),
+                3, List.of("Ёжик в тумане", "Mad Max")));
+    }
+
+    @Test
+    void complete() {
+        assertThat(complete("mat", 10)).containsExactly(1);
+        assertThat(complete("МАТ", 10)).containsExactly(2);
+        assertThat(complete("ma", 10)).containsExactly(1, 3);
+        assertThat(complete("m", 1)).containsExactly(1);
+        assertThat(complete("перез", 10)).containsExactly(2);
+        assertThat(complete("ежик в т", 10)).containsExactly(3);
+        assertThat(complete("x", 10)).isEmpty();
+        assertThat(complete(" ", 10)).isEmpty();
+    }
+
+    @Test
+    void manyMatchesAreRankedByRanking() {
+        Map<Integer, List<String>> names = new HashMap<>();
+        for (int id = 1; id <= 3000; id++) {
+            names.put(id, List.of("Film " + id));
+        }
+        prefixIndex.rebuild(() -> names);
+        // самые популярные фильмы - с наибольшими id, лексикографически они в конце диапазона
+        PrefixIndex.Ranking ranking = (count, filter) -> IntStream.iterate(3000, id -> id > 0, id -> id - 1)
+                .filter(filter)
+                .limit(count)
+                .boxed()
+                .collect(Collectors.toList());
+
+        assertThat(prefixIndex.complete("f", 3, id -> id, ranking)).containsExactly(3000, 2999, 2998);
+        assertThat(prefixIndex.complete("f", 3, id -> id)).containsExactly(3000, 2999, 2998);
+        assertThat(prefixIndex.complete("2999", 3, id -> id, ranking)).containsExactly(2999);
+    }
+
+    @Test
+    void updateAndRemove() {
+        prefixIndex.update(1, List.of("Терминатор"));
+        prefixIndex.remove(2);
+
+        assertThat(complete("mat", 10)).isEmpty();
+        assertThat(complete("т", 10)).containsExactly(1, 3);
+        assertThat(complete("ма", 10)).isEmpty();
+
+        prefixIndex.clear();
+
+        assertThat(prefixIndex.size()).isZero();
+    }
+
+    @Test
+    void updatesBeforeLoadingAreIgnored() {
+        prefixIndex.invalidate();
+        prefixIndex.update(1, List.of("The Matrix"));
+
+        assertThat(prefixIndex.isLoaded()).isFalse();
+        assertThat(complete("mat", 10)).isEmpty();
+    }
+
+    private List<Integer> complete(String prefix, int count) {
+        return prefixIndex.complete(prefix, count, id -> POPULARITY.getOrDefault(id, 0));
+    }
+}
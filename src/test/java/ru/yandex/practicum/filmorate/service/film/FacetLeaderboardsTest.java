@@ -0,0 +1,139 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FacetLeaderboardsTest {
+    private FacetLeaderboards leaderboards;
+
+    @BeforeEach
+    void setUp() {
+        leaderboards = new FacetLeaderboards();
+        leaderboards.rebuild(() -> List.of(
+                film(1, Set.of(1, 2), 1, 2000, 5),
+                film(2, Set.of(1), 2, 2000, 3),
+                film(3, Set.of(2), 1, 2001, 7),
+                film(4, Set.of(), 1, 2000, 1)));
+    }
+
+    @Test
+    void getTopFilmIdsByFacets() {
+        assertThat(leaderboards.getTopFilmIds(10, 1, null, null)).containsExactly(1, 2);
+        assertThat(leaderboards.getTopFilmIds(10, null, 1, null)).containsExactly(3, 1, 4);
+        assertThat(leaderboards.getTopFilmIds(10, null, null, 2000)).containsExactly(1, 2, 4);
+        assertThat(leaderboards.getTopFilmIds(10, 2, 1, 2000)).containsExactly(1);
+        assertThat(leaderboards.getTopFilmIds(1, null, 1, 2000)).containsExactly(1);
+        assertThat(leaderboards.getTopFilmIds(10, 3, null, null)).isEmpty();
+        assertThat(leaderboards.getTopFilmIds(10, 2, 2, null)).isEmpty();
+    }
+
+    @Test
+    void updateLikeCountAndFacets() {
+        leaderboards.updateLikeCount(4, 10);
+        leaderboards.update(film(2, Set.of(2), 1, 2001, 0));
+
+        assertThat(leaderboards.getTopFilmIds(10, null, 1, null)).containsExactly(4, 3, 1, 2);
+        assertThat(leaderboards.getTopFilmIds(10, 1, null, null)).containsExactly(1);
+        assertThat(leaderboards.getTopFilmIds(10, 2, null, 2001)).containsExactly(3, 2);
+
+        leaderboards.remove(3);
+
+        assertThat(leaderboards.getTopFilmIds(10, null, null, 2001)).containsExactly(2);
+    }
+
+    @Test
+    void combinedLeaderboardIsUpdatedAfterFirstRequest() {
+        assertThat(leaderboards.getTopFilmIds(10, 1, null, 2000)).containsExactly(1, 2);
+
+        leaderboards.updateLikeCount(2, 10);
+        leaderboards.update(film(5, Set.of(1), 1, 2000, 0));
+        leaderboards.updateLikeCount(5, 4);
+        leaderboards.update(film(1, Set.of(2), 1, 2000, 0));
+
+        assertThat(leaderboards.getTopFilmIds(10, 1, null, 2000)).containsExactly(2, 5);
+
+        leaderboards.remove(2);
+
+        assertThat(leaderboards.getTopFilmIds(10, 1, null, 2000)).containsExactly(5);
+    }
+
+    @Test
+    void userDeletedDecrementsLikeCounts() {
+        assertThat(leaderboards.getTopFilmIds(10, null, 1, 2000)).containsExactly(1, 4);
+
+        leaderboards.userDeleted(1, Set.of(1));
+        leaderboards.userDeleted(2, Set.of(1));
+        leaderboards.userDeleted(3, Set.of(1, 4));
+
+        assertThat(leaderboards.isLoaded()).isTrue();
+        assertThat(leaderboards.getTopFilmIds(10, null, 1, 2000)).containsExactly(1, 4);
+        assertThat(leaderboards.getTopFilmIds(10, null, 1, null)).containsExactly(3, 1, 4);
+
+        leaderboards.userDeleted(4, Set.of(1, 3));
+        leaderboards.userDeleted(5, Set.of(1, 3));
+
+        assertThat(leaderboards.getTopFilmIds(10, null, 1, null)).containsExactly(3, 1, 4);
+
+        leaderboards.allUsersDeleted();
+
+        assertThat(leaderboards.getTopFilmIds(10, null, 1, 2000)).containsExactly(1, 4);
+        assertThat(leaderboards.getTopFilmIds(10, 2, null, null)).containsExactly(1, 3);
+    }
+
+    @Test
+    void likesChangeCountsInAnyOrder() {
+        assertThat(leaderboards.getTopFilmIds(10, 1, null, 2000)).containsExactly(1, 2);
+
+        // удаление лайка пришло раньше добавления, которое было записано первым: итог тот же
+        leaderboards.likeDeleted(2, 1);
+        leaderboards.likeAdded(2, 4);
+        leaderboards.likeAdded(2, 5);
+        leaderboards.likeAdded(2, 6);
+
+        assertThat(leaderboards.getLikeCount(2)).isEqualTo(5);
+        assertThat(leaderboards.getTopFilmIds(10, 1, null, 2000)).containsExactly(1, 2);
+
+        leaderboards.likeAdded(2, 7);
+
+        assertThat(leaderboards.getTopFilmIds(10, 1, null, 2000)).containsExactly(2, 1);
+
+        // лайк удаленного фильма не возвращает его в рейтинги
+        leaderboards.remove(3);
+        leaderboards.likeAdded(3, 1);
+
+        assertThat(leaderboards.getTopFilmIds(10, null, 1, null)).containsExactly(1, 4);
+        assertThat(leaderboards.getTopFilmIds(10, 2, null, null)).containsExactly(1);
+    }
+
+    @Test
+    void updatesBeforeLoadingAreIgnored() {
+        leaderboards.invalidate();
+        leaderboards.update(film(5, Set.of(1), 1, 2000, 0));
+        leaderboards.updateLikeCount(1, 10);
+
+        assertThat(leaderboards.isLoaded()).isFalse();
+        assertThat(leaderboards.getTopFilmIds(10, 1, null, null)).isEmpty();
+    }
+
+    private static Film film(int id, Set<Integer> genreIds, int mpaId, int year, int likesCount) {
+        Set<Genre> genres = genreIds.stream()
+                .map(genreId -> new Genre(genreId, null))
+                .collect(Collectors.toSet());
+        Set<Integer> likes = IntStream.rangeClosed(1, likesCount).boxed().collect(Collectors.toCollection(HashSet::new));
+
+        return new Film(id, "Film №" + id, "Description", LocalDate.of(year, 1, 1), 100, genres,
+                new MPA(mpaId, null, 0), likes);
+    }
+}
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.MPA;
+
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilmSearchIndexTest {
+    private FilmSearchIndex filmSearchIndex;
+
+    @BeforeEach
+    void setUp() {
+        filmSearchIndex = new FilmSearchIndex();
+        filmSearchIndex.rebuild(() -> List.of(
+                film(1, "Ёлки", "Новогодние истории о чудесах"),
+                film(2, "Матрица", "Хакер узнает правду о мире машин"),
+                film(3, "The Matrix Reloaded", "Neo fights the machines"),
+                film(4, "Машины", "Мультфильм о гоночных машинах")));
+    }
+
+    @Test
+    void tokenize() {
+        assertThat(SearchTokenizer.tokenize("Ёлки-палки, 2 фильма!")).containsExactly("елк", "палк", "2", "фильм");
+        assertThat(SearchTokenizer.tokenize("Fighting machines' class")).containsExactly("fight", "machine", "class");
+        assertThat(SearchTokenizer.stem("фильмов")).isEqualTo(SearchTokenizer.stem("фильмы"));
+    }
+
+    @Test
+    void filmCreatedDuringRebuildIsNotLost() throws InterruptedException {
+        filmSearchIndex.invalidate();
+        Thread writer = new Thread(() -> filmSearchIndex.update(film(5, "Матрица: Воскрешение", "")));
+
+        // фильм создается, пока индекс читает фильмы из хранилища, и попадает в индекс после чтения
+        filmSearchIndex.rebuild(() -> {
+            writer.start();
+            while (writer.getState() != Thread.State.BLOCKED) {
+                Thread.onSpinWait();
+            }
+            return List.of(film(2, "Матрица", "Хакер узнает правду о мире машин"));
+        });
+        writer.join();
+
+        assertThat(filmSearchIndex.search("матрица", 0, 10, null)).containsExactlyInAnyOrder(2, 5);
+    }
+
+    @Test
+    void search() {
+        assertThat(filmSearchIndex.search("елки", 0, 10, null)).containsExactly(1);
+        assertThat(filmSearchIndex.search("МАШИНА", 0, 10, null)).containsExactly(4, 2);
+        assertThat(filmSearchIndex.search("matrix machine", 0, 10, null)).containsExactly(3);
+        assertThat(filmSearchIndex.search("матрица машины", 0, 10, null)).containsExactly(2);
+        assertThat(filmSearchIndex.search("терминатор", 0, 10, null)).isEmpty();
+        assertThat(filmSearchIndex.search("  ", 0, 10, null)).isEmpty();
+    }
+
+    @Test
+    void searchWithPagingAndLikes() {
+        assertThat(filmSearchIndex.search("машины", 1, 10, null)).containsExactly(2);
+        assertThat(filmSearchIndex.search("машины", 0, 1, null)).containsExactly(4);
+        assertThat(filmSearchIndex.search("машины", 2, 10, null)).isEmpty();
+
+        Map<Integer, Integer> likeCounts = Map.of(2, 100);
+        assertThat(filmSearchIndex.search("машины", 0, 10, id -> likeCounts.getOrDefault(id, 0)))
+                .containsExactly(2, 4);
+    }
+
+    @Test
+    void updateAndRemove() {
+        filmSearchIndex.update(film(2, "Терминатор", "Машины против людей"));
+        filmSearchIndex.remove(4);
+
+        assertThat(filmSearchIndex.search("матрица", 0, 10, null)).isEmpty();
+        assertThat(filmSearchIndex.search("терминатор", 0, 10, null)).containsExactly(2);
+        assertThat(filmSearchIndex.search("машины", 0, 10, null)).containsExactly(2);
+        assertThat(filmSearchIndex.search("мультфильм", 0, 10, null)).isEmpty();
+
+        int termsCount = filmSearchIndex.getTermsCount();
+        filmSearchIndex.update(film(5, "Новый фильм", "Описание"));
+        filmSearchIndex.remove(5);
+
+        assertThat(filmSearchIndex.getTermsCount()).isEqualTo(termsCount);
+    }
+
+    private static Film film(int id, String name, String description) {
+        return new Film(id, name, description, LocalDate.of(2000, 1, 1), 100,
+                new LinkedHashSet<>(), new MPA(1, "G", 0), new IntSet());
+    }
+}
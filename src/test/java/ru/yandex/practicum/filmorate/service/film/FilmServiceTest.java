@@ -0,0 +1,517 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.BulkImport;
+import ru.yandex.practicum.filmorate.service.user.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.CountingJdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.StatementRegistry;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// индексы FilmService поверх FilmDbStorage: рейтинги, поиск, похожие фильмы, рекомендации, импорт и экспорт
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class FilmServiceTest {
+    // модули как у ObjectMapper из Spring Boot: конструкторы моделей без @JsonCreator
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .addModule(new ParameterNamesModule(JsonCreator.Mode.DEFAULT))
+            .addModule(new JavaTimeModule())
+            .build();
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private final JdbcTemplate jdbcTemplate;
+    private FilmService filmService;
+    private ReferenceDataRegistry referenceData;
+    private StatementRegistry statements;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        statements = new StatementRegistry(jdbcTemplate);
+        userStorage = new UserDbStorage(jdbcTemplate, statements);
+        referenceData = new ReferenceDataRegistry(jdbcTemplate);
+        referenceData.load();
+        filmStorage = new FilmDbStorage(jdbcTemplate, referenceData, statements);
+        filmService = new FilmService(filmStorage, userStorage);
+    }
+
+    @Test
+    void getPopularFilmsFromLeaderboard() {
+        CountingJdbcTemplate countingJdbcTemplate = new CountingJdbcTemplate(jdbcTemplate);
+        FilmService countingFilmService = new FilmService(
+                new FilmDbStorage(countingJdbcTemplate, referenceData, statements), userStorage);
+
+        for (int i = 1; i <= 4; i++) {
+            countingFilmService.createFilm(new Film(i, "Film №" + i, "Description about film №" + i,
+                    LocalDate.of(2000, 1, i), 100 + i,
+                    Set.of(new Genre(1, "Комедия")),
+                    new MPA(4, "R", 17), new HashSet<>()));
+        }
+
+        User user1 = new User(1, "user@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>());
+        User user2 = new User(2, "user2@email.ru", "vasya321", "Vasya Ivanov",
+                LocalDate.of(1992, 2, 2), new HashSet<>());
+        userStorage.createUser(user1);
+        userStorage.createUser(user2);
+
+        countingFilmService.loadPopularity();
+        countingFilmService.addLike(4, 1, false);
+        countingFilmService.addLike(4, 2, false);
+        countingFilmService.addLike(2, 2, false);
+        countingFilmService.deleteLike(4, 2, false);
+        countingFilmService.addLike(3, 1, false);
+        countingFilmService.deleteFilmById(3);
+        countingJdbcTemplate.resetQueryCount();
+
+        List<Film> popularFilms = countingFilmService.getPopularFilms(3);
+
+        assertThat(popularFilms)
+                .extracting(Film::getId)
+                .containsExactly(2, 4, 1);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(3);
+
+        Set<Integer> likedFilmIds = userStorage.getLikedFilmIds(2);
+        userStorage.deleteUserById(2);
+        countingFilmService.onUserDeleted(new UserDeletedEvent(2, likedFilmIds));
+
+        assertThat(countingFilmService.getPopularFilms(3))
+                .extracting(Film::getId)
+                .containsExactly(4, 1, 2);
+    }
+
+    @Test
+    void exportFilmsMergesGenresAndLikes() {
+        for (int i = 1; i <= 4; i++) {
+            filmService.createFilm(new Film(i, "Film №" + i, "Description", LocalDate.of(2000, 1, i), 100,
+                    i % 2 == 0 ? Set.of(new Genre(1, "Комедия"), new Genre(2, "Драма")) : Set.of(),
+                    new MPA(1, "G", 0), new HashSet<>()));
+        }
+        userStorage.createUser(new User(1, "user@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>()));
+        userStorage.createUser(new User(2, "user2@email.ru", "vasya321", "Vasya Ivanov",
+                LocalDate.of(1992, 2, 2), new HashSet<>()));
+        filmService.addLike(1, 1, false);
+        filmService.addLike(1, 2, false);
+        filmService.addLike(4, 2, false);
+        filmService.deleteFilmById(2);
+
+        List<Film> exportedFilms = new ArrayList<>();
+        filmService.exportFilms(exportedFilms::add);
+
+        assertThat(exportedFilms)
+                .extracting(Film::getId)
+                .containsExactly(1, 3, 4);
+        assertThat(exportedFilms).containsExactlyElementsOf(filmStorage.getFilmsByIds(List.of(1, 3, 4)));
+    }
+
+    @Test
+    void importFilmsAndLikesInBatches() {
+        ImportResult filmsResult = filmService.importFilms(bulkImport(true,
+                "name,description,releaseDate,duration,mpa.id,genres[].id",
+                "Film №1,Description,2000-01-01,100,4,1;2",
+                "Film №2,Description,1800-01-01,100,1,",
+                "Film №3,Description,2000-01-03,100,99,",
+                "Film №4,Description,2000-01-04,100,,"));
+
+        assertThat(filmsResult.getImported()).isEqualTo(2);
+        assertThat(filmsResult.getErrors())
+                .extracting(ImportResult.ImportError::getLine)
+                .containsExactly(3, 4);
+        assertThat(filmStorage.getFilms()).extracting(Film::getName).containsExactly("Film №1", "Film №4");
+        assertThat(filmStorage.getFilmById(1).getGenres())
+                .containsExactly(new Genre(1, "Комедия"), new Genre(2, "Драма"));
+        assertThat(filmStorage.getFilmById(1).getMpa().getId()).isEqualTo(4);
+        assertThat(filmStorage.getFilmById(2).getMpa().getId()).isEqualTo(1);
+
+        userStorage.createUser(new User(1, "user@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>()));
+        userStorage.createUser(new User(2, "user2@email.ru", "vasya321", "Vasya Ivanov",
+                LocalDate.of(1992, 2, 2), new HashSet<>()));
+        assertThat(filmService.getPopularFilms(1)).extracting(Film::getId).containsExactly(1);
+
+        ImportResult likesResult = filmService.importLikes(bulkImport(false,
+                "{\"filmId\": 2, \"userId\": 1}",
+                "{\"filmId\": 2, \"userId\": 2}",
+                "{\"filmId\": 2, \"userId\": 2}",
+                "{\"filmId\": 1, \"userId\": 99}",
+                "{\"filmId\": 99, \"userId\": 1}"));
+
+        // повторный лайк не ошибка, но и не второй лайк
+        assertThat(likesResult.getImported()).isEqualTo(3);
+        assertThat(likesResult.getErrors())
+                .extracting(ImportResult.ImportError::getLine)
+                .containsExactly(4, 5);
+        assertThat(filmStorage.getFilmLikeCounts()).containsEntry(1, 0).containsEntry(2, 2);
+        assertThat(filmStorage.getFilmById(2).getLikes()).containsExactlyInAnyOrder(1, 2);
+        assertThat(filmService.getPopularFilms(1)).extracting(Film::getId).containsExactly(2);
+    }
+
+    @Test
+    void getFilmsPageByCursor() {
+        for (int i = 1; i <= 5; i++) {
+            filmService.createFilm(new Film(i, "Film №" + i, "Description", LocalDate.of(2000, 1, i), 100,
+                    Set.of(new Genre(1, "Комедия")), new MPA(1, "G", 0), new HashSet<>()));
+        }
+
+        Page<Film> firstPage = filmService.getFilmsPage(null, 2);
+
+        assertThat(firstPage.getItems()).extracting(Film::getId).containsExactly(1, 2);
+        assertThat(firstPage.getItems().get(0).getGenres()).containsExactly(new Genre(1, "Комедия"));
+
+        // удаление уже пройденных фильмов не сдвигает следующие страницы
+        filmService.deleteFilmById(1);
+        Page<Film> secondPage = filmService.getFilmsPage(firstPage.getNextCursor(), 2);
+        Page<Film> lastPage = filmService.getFilmsPage(secondPage.getNextCursor(), 2);
+
+        assertThat(secondPage.getItems()).extracting(Film::getId).containsExactly(3, 4);
+        assertThat(lastPage.getItems()).extracting(Film::getId).containsExactly(5);
+        assertThat(lastPage.getNextCursor()).isNull();
+
+        assertThatThrownBy(() -> filmService.getFilmsPage("not a cursor", 2))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> filmService.getFilmsPage(null, 0))
+                .isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    void getPopularFilmsByGenreMpaAndYear() {
+        filmService.createFilm(new Film(1, "Film №1", "Description", LocalDate.of(2000, 5, 1), 100,
+                Set.of(new Genre(1, "Комедия"), new Genre(2, "Драма")), new MPA(1, "G", 0), new HashSet<>()));
+        filmService.createFilm(new Film(2, "Film №2", "Description", LocalDate.of(2000, 12, 31), 100,
+                Set.of(new Genre(1, "Комедия")), new MPA(2, "PG", 0), new HashSet<>()));
+        filmService.createFilm(new Film(3, "Film №3", "Description", LocalDate.of(2001, 1, 1), 100,
+                Set.of(new Genre(2, "Драма")), new MPA(1, "G", 0), new HashSet<>()));
+
+        User user1 = new User(1, "user@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>());
+        User user2 = new User(2, "user2@email.ru", "vasya321", "Vasya Ivanov",
+                LocalDate.of(1992, 2, 2), new HashSet<>());
+        userStorage.createUser(user1);
+        userStorage.createUser(user2);
+        filmService.addLike(2, 1, false);
+        filmService.addLike(3, 1, false);
+        filmService.addLike(3, 2, false);
+
+        // рейтинги по признакам еще не загружены - запрос к БД
+        assertThat(filmService.getPopularFilms(10, 1, null, null))
+                .extracting(Film::getId)
+                .containsExactly(2, 1);
+        assertThat(filmService.getPopularFilms(10, 2, 1, null))
+                .extracting(Film::getId)
+                .containsExactly(3, 1);
+        assertThat(filmService.getPopularFilms(10, null, null, 2000))
+                .extracting(Film::getId)
+                .containsExactly(2, 1);
+
+        filmService.loadFacets();
+        filmService.addLike(1, 1, false);
+        filmService.addLike(1, 2, false);
+        filmService.deleteLike(3, 2, false);
+
+        assertThat(filmService.getPopularFilms(10, 2, null, null))
+                .extracting(Film::getId)
+                .containsExactly(1, 3);
+        assertThat(filmService.getPopularFilms(10, null, 1, 2000))
+                .extracting(Film::getId)
+                .containsExactly(1);
+        assertThat(filmService.getPopularFilms(10, 1, 2, 2001)).isEmpty();
+        assertThat(filmService.getPopularFilms(10, null, null, null))
+                .extracting(Film::getId)
+                .containsExactly(1, 2, 3);
+
+        assertThatThrownBy(() -> filmService.getPopularFilms(10, 999, null, null))
+                .isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> filmService.getPopularFilms(10, null, 999, null))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void getSimilarFilmsFromIndex() {
+        for (int i = 1; i <= 4; i++) {
+            filmService.createFilm(new Film(i, "Film №" + i, "Description about film №" + i,
+                    LocalDate.of(2000, 1, i), 100 + i,
+                    Set.of(new Genre(1, "Комедия")),
+                    new MPA(4, "R", 17), new HashSet<>()));
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            userStorage.createUser(new User(i, "user" + i + "@email.ru", "login" + i, "Name " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(1, 2);
+        filmStorage.addLike(2, 1);
+        filmStorage.addLike(2, 2);
+        filmStorage.addLike(3, 2);
+        filmStorage.addLike(3, 3);
+
+        assertThat(filmService.getSimilarFilms(1, 10))
+                .extracting(Film::getId)
+                .containsExactly(2, 3);
+
+        filmService.addLike(4, 1, false);
+        filmService.addLike(4, 2, false);
+        filmService.addLike(4, 3, false);
+        filmService.refreshSimilarFilms();
+
+        assertThat(filmService.getSimilarFilms(3, 10))
+                .extracting(Film::getId)
+                .containsExactly(4, 1, 2);
+        assertThat(filmService.getSimilarFilms(3, 1))
+                .extracting(Film::getId)
+                .containsExactly(4);
+
+        filmService.deleteFilmById(4);
+        filmService.refreshSimilarFilms();
+
+        assertThat(filmService.getSimilarFilms(3, 10))
+                .extracting(Film::getId)
+                .containsExactly(1, 2);
+        assertThatThrownBy(() -> filmService.getSimilarFilms(100, 10))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void searchFilmsFromIndex() {
+        filmStorage.createFilm(new Film(1, "Матрица", "Хакер узнает правду о мире",
+                LocalDate.of(1999, 3, 31), 136, Set.of(), new MPA(4, "R", 17), new HashSet<>()));
+        filmService.createFilm(new Film(2, "Матрица: Перезагрузка", "Продолжение истории",
+                LocalDate.of(2003, 5, 15), 138, Set.of(), new MPA(4, "R", 17), new HashSet<>()));
+
+        assertThat(filmService.searchFilms("матрицы", 0, 10, false))
+                .extracting(Film::getId)
+                .containsExactly(1, 2);
+
+        filmService.createFilm(new Film(3, "Матрица: Революция", "Финал трилогии",
+                LocalDate.of(2003, 11, 5), 129, Set.of(), new MPA(4, "R", 17), new HashSet<>()));
+        Film film = filmService.getFilmById(1);
+        film.setName("Тринадцатый этаж");
+        filmService.updateFilm(film);
+        filmService.deleteFilmById(2);
+
+        assertThat(filmService.searchFilms("матрица", 0, 10, false))
+                .extracting(Film::getId)
+                .containsExactly(3);
+        assertThat(filmService.searchFilms("хакер этаж", 0, 10, false))
+                .extracting(Film::getId)
+                .containsExactly(1);
+        assertThatThrownBy(() -> filmService.searchFilms("матрица", 0, 0, false))
+                .isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    void autocompleteFilmsByPopularity() {
+        filmService.createFilm(new Film(1, "Матрица", "Описание",
+                LocalDate.of(1999, 3, 31), 136, Set.of(), new MPA(4, "R", 17), new HashSet<>()));
+        filmService.createFilm(new Film(2, "Мастер и Маргарита", "Описание",
+                LocalDate.of(2024, 1, 25), 157, Set.of(), new MPA(4, "R", 17), new HashSet<>()));
+        userStorage.createUser(new User(1, "user@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>()));
+
+        assertThat(filmService.autocompleteFilms("ма", 10))
+                .extracting(Film::getId)
+                .containsExactly(1, 2);
+
+        filmService.addLike(2, 1, false);
+        filmService.createFilm(new Film(3, "Марсианин", "Описание",
+                LocalDate.of(2015, 9, 11), 144, Set.of(), new MPA(4, "R", 17), new HashSet<>()));
+
+        assertThat(filmService.autocompleteFilms("ма", 2))
+                .extracting(Film::getId)
+                .containsExactly(2, 1);
+        assertThat(filmService.autocompleteFilms("марс", 10))
+                .extracting(Film::getId)
+                .containsExactly(3);
+
+        filmService.deleteFilmById(1);
+
+        assertThat(filmService.autocompleteFilms("мат", 10)).isEmpty();
+    }
+
+    @Test
+    void getRecommendationsFromIndex() {
+        for (int i = 1; i <= 4; i++) {
+            filmService.createFilm(new Film(i, "Film №" + i, "Description about film №" + i,
+                    LocalDate.of(2000, 1, i), 100 + i,
+                    Set.of(new Genre(1, "Комедия")),
+                    new MPA(4, "R", 17), new HashSet<>()));
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            userStorage.createUser(new User(i, "user" + i + "@email.ru", "login" + i, "Name " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(2, 1);
+        filmStorage.addLike(1, 2);
+        filmStorage.addLike(2, 2);
+        filmStorage.addLike(3, 2);
+
+        assertThat(filmService.getRecommendations(1, 10))
+                .extracting(Film::getId)
+                .containsExactly(3);
+
+        filmService.addLike(1, 3, false);
+        filmService.addLike(2, 3, false);
+        filmService.addLike(4, 3, false);
+
+        // новый пользователь попадает в корзины LSH только после фонового пересчета подписей
+        assertThat(filmService.getRecommendations(1, 10))
+                .extracting(Film::getId)
+                .containsExactly(3);
+
+        filmService.refreshRecommendations();
+
+        assertThat(filmService.getRecommendations(1, 10))
+                .extracting(Film::getId)
+                .containsExactly(3, 4);
+
+        Set<Integer> likedFilmIds = userStorage.getLikedFilmIds(2);
+        userStorage.deleteUserById(2);
+        filmService.onUserDeleted(new UserDeletedEvent(2, likedFilmIds));
+
+        assertThat(filmService.getRecommendations(1, 10))
+                .extracting(Film::getId)
+                .containsExactly(4);
+
+        filmService.deleteFilmById(4);
+
+        assertThat(filmService.getRecommendationIndex().isLoaded()).isTrue();
+        assertThat(filmService.getRecommendations(1, 10)).isEmpty();
+        assertThatThrownBy(() -> filmService.getRecommendations(100, 10))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void repeatedLikeDoesNotChangeVersions() {
+        filmService.createFilm(new Film(1, "Film №1", "Description", LocalDate.of(2000, 1, 1), 100,
+                Set.of(), new MPA(1, "G", 0), new HashSet<>()));
+        for (int i = 1; i <= 2; i++) {
+            userStorage.createUser(new User(i, "user" + i + "@email.ru", "login" + i, "Name " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+        filmService.addLike(1, 1, false);
+        long filmVersion = filmService.getFilmVersion(1);
+        long catalogVersion = filmService.getCatalogVersion();
+
+        assertThat(filmService.addLike(1, 1, false).getLikeCount()).isEqualTo(1);
+        assertThat(filmService.deleteLike(1, 2, false).getLikeCount()).isEqualTo(1);
+
+        assertThat(filmService.getFilmVersion(1)).isEqualTo(filmVersion);
+        assertThat(filmService.getCatalogVersion()).isEqualTo(catalogVersion);
+
+        filmService.deleteLike(1, 1, false);
+
+        assertThat(filmService.getFilmVersion(1)).isGreaterThan(filmVersion);
+        assertThat(filmService.getCatalogVersion()).isGreaterThan(catalogVersion);
+    }
+
+    // потоки пишут через свои соединения, поэтому тест идет без общей транзакции
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void concurrentLikesMatchLeaderboard() throws InterruptedException {
+        int threads = 4;
+        for (int i = 1; i <= 2; i++) {
+            filmService.createFilm(new Film(i, "Film №" + i, "Description", LocalDate.of(2000, 1, i), 100,
+                    Set.of(), new MPA(1, "G", 0), new HashSet<>()));
+        }
+        for (int i = 1; i <= threads; i++) {
+            userStorage.createUser(new User(i, "user" + i + "@email.ru", "login" + i, "Name " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+        filmService.loadPopularity();
+        filmService.loadFacets();
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+
+        // рейтинги перестраиваются, пока идут лайки: изменения не теряются и не считаются дважды
+        Future<?> loader = executor.submit(() -> {
+            while (running.get()) {
+                filmService.loadPopularity();
+                filmService.loadFacets();
+            }
+        });
+        for (int i = 1; i <= threads; i++) {
+            int userId = i;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(userId);
+                for (int j = 0; j < 200; j++) {
+                    int filmId = 1 + random.nextInt(2);
+                    if (random.nextBoolean()) {
+                        filmService.addLike(filmId, userId, false);
+                    } else {
+                        filmService.deleteLike(filmId, userId, false);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> writer : writers) {
+            assertThatCode(writer::get).doesNotThrowAnyException();
+        }
+        running.set(false);
+        assertThatCode(loader::get).doesNotThrowAnyException();
+        executor.shutdown();
+
+        for (int filmId = 1; filmId <= 2; filmId++) {
+            Integer likeCount = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM film_likes WHERE film_id = ?",
+                    Integer.class, filmId);
+            assertThat(filmService.getPopularityLeaderboard().getLikeCount(filmId)).isEqualTo(likeCount);
+            assertThat(filmService.getFacetLeaderboards().getLikeCount(filmId)).isEqualTo(likeCount);
+        }
+    }
+
+    private static BulkImport bulkImport(boolean csv, String... lines) {
+        byte[] body = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        return new BulkImport(new ByteArrayInputStream(body), csv, OBJECT_MAPPER, VALIDATOR);
+    }
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilmVersionsTest {
+    private FilmVersions versions;
+
+    @BeforeEach
+    void setUp() {
+        versions = new FilmVersions();
+    }
+
+    @Test
+    void filmChanged() {
+        long film1 = versions.getFilmVersion(1);
+        long film2 = versions.getFilmVersion(2);
+        long catalog = versions.getCatalogVersion();
+
+        versions.filmChanged(1);
+
+        assertThat(versions.getFilmVersion(1)).isGreaterThan(film1);
+        assertThat(versions.getFilmVersion(2)).isEqualTo(film2);
+        assertThat(versions.getCatalogVersion()).isGreaterThan(catalog);
+    }
+
+    @Test
+    void allFilmsChanged() {
+        versions.filmChanged(1);
+        long film1 = versions.getFilmVersion(1);
+        long film2 = versions.getFilmVersion(2);
+        long catalog = versions.getCatalogVersion();
+        long reference = versions.getReferenceVersion();
+
+        versions.allFilmsChanged();
+
+        assertThat(versions.getFilmVersion(1)).isGreaterThan(film1);
+        assertThat(versions.getFilmVersion(2)).isGreaterThan(film2);
+        assertThat(versions.getCatalogVersion()).isGreaterThan(catalog);
+        assertThat(versions.getReferenceVersion()).isEqualTo(reference);
+    }
+}
@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PopularityLeaderboardTest {
+    private PopularityLeaderboard leaderboard;
+
+    @BeforeEach
+    void setUp() {
+        leaderboard = new PopularityLeaderboard();
+        leaderboard.rebuild(() -> Map.of(1, 5, 2, 0, 3, 7, 4, 5));
+    }
+
+    @Test
+    void getTopFilmIds() {
+        assertThat(leaderboard.getTopFilmIds(10)).containsExactly(3, 1, 4, 2);
+        assertThat(leaderboard.getTopFilmIds(2)).containsExactly(3, 1);
+        assertThat(leaderboard.getTopFilmIds(0)).isEmpty();
+    }
+
+    @Test
+    void updateAndRemove() {
+        leaderboard.update(2, 6);
+        leaderboard.update(3, 4);
+        leaderboard.update(5, 1);
+        leaderboard.remove(1);
+
+        assertThat(leaderboard.getTopFilmIds(10)).containsExactly(2, 4, 3, 5);
+
+        leaderboard.clear();
+
+        assertThat(leaderboard.getTopFilmIds(10)).isEmpty();
+    }
+
+    @Test
+    void likesChangeCountsInAnyOrder() {
+        // удаление лайка пришло раньше добавления, которое было записано первым: итог тот же
+        leaderboard.likeDeleted(1, 2);
+        leaderboard.likeAdded(1, 3);
+        leaderboard.likeAdded(2, 1);
+
+        assertThat(leaderboard.getLikeCount(1)).isEqualTo(5);
+        assertThat(leaderboard.getLikeCount(2)).isEqualTo(1);
+
+        // лайк удаленного фильма не возвращает его в рейтинг
+        leaderboard.filmDeleted(3);
+        leaderboard.likeAdded(3, 1);
+
+        assertThat(leaderboard.getTopFilmIds(10)).containsExactly(1, 4, 2);
+    }
+
+    @Test
+    void decrementAndResetLikeCounts() {
+        leaderboard.decrementLikeCounts(Set.of(1, 2, 6));
+
+        assertThat(leaderboard.getTopFilmIds(10)).containsExactly(3, 4, 1, 2);
+        assertThat(leaderboard.getLikeCount(2)).isZero();
+
+        leaderboard.resetLikeCounts();
+
+        assertThat(leaderboard.getTopFilmIds(10)).hasSize(4);
+        assertThat(leaderboard.getLikeCount(3)).isZero();
+    }
+
+    @Test
+    void updatesBeforeLoadingAreIgnored() {
+        leaderboard.invalidate();
+        leaderboard.update(1, 10);
+
+        assertThat(leaderboard.isLoaded()).isFalse();
+        assertThat(leaderboard.getTopFilmIds(10)).isEmpty();
+
+        leaderboard.rebuild(() -> Map.of(1, 1, 2, 2));
+
+        assertThat(leaderboard.getTopFilmIds(10)).containsExactly(2, 1);
+    }
+
+    @Test
+    void updateDuringRebuildIsNotLost() throws InterruptedException {
+        leaderboard.invalidate();
+        Thread writer = new Thread(() -> leaderboard.update(1, 10));
+
+        // изменение приходит, пока рейтинг читает данные из хранилища, и ждет конца перестроения
+        leaderboard.rebuild(() -> {
+            writer.start();
+            while (writer.getState() != Thread.State.BLOCKED) {
+                Thread.onSpinWait();
+            }
+            return Map.of(1, 1, 2, 2);
+        });
+        writer.join();
+
+        assertThat(leaderboard.getLikeCount(1)).isEqualTo(10);
+        assertThat(leaderboard.getTopFilmIds(10)).containsExactly(1, 2);
+    }
+}
@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecommendationIndexTest {
+    private RecommendationIndex recommendationIndex;
+
+    @BeforeEach
+    void setUp() {
+        recommendationIndex = new RecommendationIndex();
+        // фильм -> лайкнувшие пользователи
+        recommendationIndex.rebuild(() -> Map.of(
+                1, Set.of(1, 2, 3),
+                2, Set.of(1, 2, 3),
+                3, Set.of(1, 2),
+                4, Set.of(2, 3),
+                5, Set.of(3),
+                6, Set.of(4)));
+    }
+
+    @Test
+    void getRecommendedFilmIds() {
+        assertThat(recommendationIndex.getRecommendedFilmIds(1, 10)).containsExactly(4, 5);
+        assertThat(recommendationIndex.getRecommendedFilmIds(1, 1)).containsExactly(4);
+        assertThat(recommendationIndex.getRecommendedFilmIds(4, 10)).isEmpty();
+        assertThat(recommendationIndex.getRecommendedFilmIds(100, 10)).isEmpty();
+    }
+
+    @Test
+    void likesAreAppliedOnRefresh() {
+        recommendationIndex.addLike(6, 1);
+        recommendationIndex.deleteLike(5, 3);
+
+        assertThat(recommendationIndex.getDirtyUsersCount()).isEqualTo(2);
+
+        recommendationIndex.refresh();
+
+        assertThat(recommendationIndex.getDirtyUsersCount()).isZero();
+        assertThat(recommendationIndex.getRecommendedFilmIds(1, 10)).containsExactly(4);
+        assertThat(recommendationIndex.getRecommendedFilmIds(4, 10)).containsExactly(1, 2, 3);
+
+        recommendationIndex.removeUser(2);
+        recommendationIndex.removeUser(3);
+
+        assertThat(recommendationIndex.getRecommendedFilmIds(1, 10)).isEmpty();
+    }
+
+    @Test
+    void removeFilmMarksUsersDirty() {
+        recommendationIndex.removeFilm(4);
+
+        assertThat(recommendationIndex.isLoaded()).isTrue();
+        assertThat(recommendationIndex.getDirtyUsersCount()).isEqualTo(2);
+        assertThat(recommendationIndex.getRecommendedFilmIds(1, 10)).containsExactly(5);
+    }
+
+    // пересчет идет вне монитора: лайки во время него не теряются и учитываются следующим пересчетом
+    @Test
+    void likesDuringRefreshAreAppliedOnNextRefresh() throws Exception {
+        Map<Integer, Set<Integer>> likes = new HashMap<>();
+        for (int filmId = 1; filmId <= 200; filmId++) {
+            Set<Integer> users = new HashSet<>();
+            for (int userId = filmId % 7; userId <= 500; userId += 7) {
+                users.add(userId);
+            }
+            likes.put(filmId, users);
+        }
+        Map<Integer, Set<Integer>> finalLikes = new HashMap<>(likes);
+        finalLikes.put(201, Set.of(1, 2, 3, 4, 5));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> rebuild = executor.submit(() -> recommendationIndex.rebuild(() -> likes));
+            while (!recommendationIndex.isLoaded()) {
+                Thread.onSpinWait();
+            }
+            for (int userId = 1; userId <= 5; userId++) {
+                recommendationIndex.addLike(201, userId);
+            }
+            rebuild.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        recommendationIndex.refresh();
+
+        RecommendationIndex expected = new RecommendationIndex();
+        expected.rebuild(() -> finalLikes);
+        assertThat(recommendationIndex.getDirtyUsersCount()).isZero();
+        for (int userId = 0; userId <= 20; userId++) {
+            assertThat(recommendationIndex.getRecommendedFilmIds(userId, 10))
+                    .isEqualTo(expected.getRecommendedFilmIds(userId, 10));
+        }
+    }
+
+    @Test
+    void equalLikesGiveEqualSignatures() {
+        assertThat(RecommendationIndex.computeSignature(new int[]{3, 1, 2}))
+                .containsExactly(RecommendationIndex.computeSignature(new int[]{1, 2, 3}))
+                .hasSize(RecommendationIndex.BANDS * RecommendationIndex.ROWS);
+    }
+}
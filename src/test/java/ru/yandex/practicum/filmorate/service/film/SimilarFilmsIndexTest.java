@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimilarFilmsIndexTest {
+    private SimilarFilmsIndex similarFilmsIndex;
+
+    @BeforeEach
+    void setUp() {
+        similarFilmsIndex = new SimilarFilmsIndex();
+        similarFilmsIndex.rebuild(() -> Map.of(
+                1, Set.of(1, 2, 3),
+                2, Set.of(1, 2),
+                3, Set.of(3, 4),
+                4, Set.of(5)));
+    }
+
+    @Test
+    void getSimilarFilmIds() {
+        assertThat(similarFilmsIndex.getSimilarFilmIds(1, 10)).containsExactly(2, 3);
+        assertThat(similarFilmsIndex.getSimilarFilmIds(1, 1)).containsExactly(2);
+        assertThat(similarFilmsIndex.getSimilarFilmIds(4, 10)).isEmpty();
+        assertThat(similarFilmsIndex.getSimilarFilmIds(100, 10)).isEmpty();
+    }
+
+    @Test
+    void likesAreAppliedOnRefresh() {
+        similarFilmsIndex.addLike(4, 4);
+        similarFilmsIndex.addLike(4, 3);
+        similarFilmsIndex.deleteLike(2, 1);
+
+        assertThat(similarFilmsIndex.getDirtyFilmsCount()).isPositive();
+        assertThat(similarFilmsIndex.getSimilarFilmIds(3, 10)).containsExactly(1);
+
+        similarFilmsIndex.refresh();
+
+        assertThat(similarFilmsIndex.getDirtyFilmsCount()).isZero();
+        assertThat(similarFilmsIndex.getSimilarFilmIds(3, 10)).containsExactly(4, 1);
+        assertThat(similarFilmsIndex.getSimilarFilmIds(2, 10)).containsExactly(1);
+
+        similarFilmsIndex.removeFilm(4);
+        similarFilmsIndex.refresh();
+
+        assertThat(similarFilmsIndex.getSimilarFilmIds(3, 10)).containsExactly(1);
+    }
+
+    @Test
+    void removeUserIsAppliedOnRefresh() {
+        similarFilmsIndex.removeUser(3);
+
+        assertThat(similarFilmsIndex.getSimilarFilmIds(1, 10)).containsExactly(2, 3);
+
+        similarFilmsIndex.refresh();
+
+        assertThat(similarFilmsIndex.getSimilarFilmIds(1, 10)).containsExactly(2);
+        assertThat(similarFilmsIndex.getSimilarFilmIds(3, 10)).isEmpty();
+    }
+
+    @Test
+    void rebuildKeepsNeighborsOfRemainingFilms() {
+        similarFilmsIndex.invalidate();
+
+        assertThat(similarFilmsIndex.getSimilarFilmIds(1, 10)).containsExactly(2, 3);
+
+        similarFilmsIndex.rebuild(() -> Map.of(1, Set.of(1, 2), 2, Set.of(1, 2)));
+
+        assertThat(similarFilmsIndex.getSimilarFilmIds(1, 10)).containsExactly(2);
+        assertThat(similarFilmsIndex.getSimilarFilmIds(3, 10)).isEmpty();
+
+        similarFilmsIndex.clear();
+
+        assertThat(similarFilmsIndex.getSimilarFilmIds(1, 10)).isEmpty();
+    }
+
+    @Test
+    void parallelRebuildLimitsNeighbors() {
+        Map<Integer, Set<Integer>> likes = new HashMap<>();
+        for (int filmId = 1; filmId <= 1000; filmId++) {
+            likes.put(filmId, Set.of(filmId % 7, filmId % 11 + 100));
+        }
+
+        similarFilmsIndex.rebuild(() -> likes);
+
+        assertThat(similarFilmsIndex.getSimilarFilmIds(1, 100)).hasSize(SimilarFilmsIndex.NEIGHBORS_COUNT);
+        assertThat(similarFilmsIndex.getSimilarFilmIds(1, 1)).containsExactly(78);
+    }
+}
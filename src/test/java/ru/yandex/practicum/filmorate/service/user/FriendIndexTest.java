@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.service.user;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.IntSet;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FriendIndexTest {
+    private FriendIndex friendIndex;
+
+    @BeforeEach
+    void setUp() {
+        friendIndex = new FriendIndex();
+        friendIndex.rebuild(() -> Map.of(1, Set.of(2, 3, 4), 2, Set.of(3, 4, 5), 3, Set.of()));
+    }
+
+    @Test
+    void getCommonFriendIds() {
+        assertThat(friendIndex.getCommonFriendIds(1, 2).toIntArray()).containsExactly(3, 4);
+        assertThat(friendIndex.getCommonFriendIds(1, 3)).isEmpty();
+        assertThatThrownBy(() -> friendIndex.getCommonFriendIds(1, 100))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void updateAndInvalidate() {
+        friendIndex.update(2, Set.of(1, 4));
+        friendIndex.update(4, Set.of(1));
+
+        assertThat(friendIndex.getCommonFriendIds(1, 2).toIntArray()).containsExactly(4);
+        assertThat(friendIndex.getCommonFriendIds(2, 4).toIntArray()).containsExactly(1);
+
+        friendIndex.invalidate();
+        friendIndex.update(1, Set.of(2));
+
+        assertThat(friendIndex.isLoaded()).isFalse();
+        assertThatThrownBy(() -> friendIndex.getCommonFriendIds(1, 2))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void removeUser() {
+        friendIndex.removeUser(3);
+
+        assertThat(friendIndex.getCommonFriendIds(1, 2).toIntArray()).containsExactly(4);
+        assertThat(friendIndex.getFriendsCount(1)).isEqualTo(2);
+        assertThatThrownBy(() -> friendIndex.getCommonFriendIds(1, 3))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void getSuggestedFriendIds() {
+        friendIndex.rebuild(() -> Map.of(
+                1, Set.of(2, 3, 4),
+                2, Set.of(1, 5, 6),
+                3, Set.of(1, 5, 6, 7),
+                4, Set.of(6, 2),
+                5, Set.of(),
+                6, Set.of(),
+                7, Set.of()));
+
+        assertThat(friendIndex.getSuggestedFriendIds(1, 10, 100, Duration.ofSeconds(1)))
+                .containsExactly(6, 5, 7);
+        assertThat(friendIndex.getSuggestedFriendIds(1, 2, 100, Duration.ofSeconds(1)))
+                .containsExactly(6, 5);
+        assertThat(friendIndex.getSuggestedFriendIds(1, 10, 2, Duration.ofSeconds(1)))
+                .isNotEmpty()
+                .isSubsetOf(5, 6, 7);
+        assertThat(friendIndex.getSuggestedFriendIds(1, 10, 100, Duration.ZERO))
+                .isEmpty();
+        assertThatThrownBy(() -> friendIndex.getSuggestedFriendIds(100, 10, 100, Duration.ofSeconds(1)))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void getCommonFriendIdsOfHeavyUsers() {
+        IntSet evenIds = new IntSet();
+        IntSet thirdIds = new IntSet();
+
+        for (int i = 0; i < 300_000; i++) {
+            if (i % 2 == 0) {
+                evenIds.add(i);
+            }
+            if (i % 3 == 0) {
+                thirdIds.add(i);
+            }
+        }
+
+        friendIndex.rebuild(() -> Map.of(1, evenIds, 2, thirdIds));
+
+        assertThat(friendIndex.getCommonFriendIds(1, 2)).hasSize(50_000);
+        assertThat(friendIndex.getCommonFriendIds(1, 2).contains(6)).isTrue();
+    }
+}
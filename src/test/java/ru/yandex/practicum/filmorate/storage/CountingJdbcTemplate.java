@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// считает количество select-запросов, отправленных в БД
+public class CountingJdbcTemplate extends JdbcTemplate {
+    private final AtomicInteger queryCount = new AtomicInteger();
+
+    public CountingJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        super(jdbcTemplate.getDataSource());
+    }
+
+    @Override
+    public <T> T query(String sql, ResultSetExtractor<T> rse) {
+        queryCount.incrementAndGet();
+        return super.query(sql, rse);
+    }
+
+    @Override
+    public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse) {
+        queryCount.incrementAndGet();
+        return super.query(psc, pss, rse);
+    }
+
+    public int getQueryCount() {
+        return queryCount.get();
+    }
+
+    public void resetQueryCount() {
+        queryCount.set(0);
+    }
+}
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// приложение запускается на базе прежней версии схемы с дубликатами: schema.sql чистит их
+// до построения уникальных индексов
+@SpringBootTest(properties = "spring.datasource.url=" + LegacyDatabaseStartupTest.URL)
+class LegacyDatabaseStartupTest {
+    static final String URL = "jdbc:h2:mem:legacy;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void createLegacyDatabase() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "password")) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("legacy-schema.sql"));
+        }
+    }
+
+    @Test
+    void duplicatesAreRemovedBeforeUniqueIndexes() {
+        assertThat(count("films_genres")).isEqualTo(1);
+        assertThat(count("friendships")).isEqualTo(1);
+        assertThat(count("film_likes")).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT film_like_count FROM films WHERE film_id = 1", Integer.class))
+                .isEqualTo(2);
+
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO film_likes (film_id, user_id) VALUES (1, 1)"))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    private Integer count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+}
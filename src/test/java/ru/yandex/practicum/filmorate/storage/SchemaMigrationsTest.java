@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class SchemaMigrationsTest {
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    void migrationRunsOnlyOnce() {
+        jdbcTemplate.update("INSERT INTO films (film_name, film_description, film_release_date, film_duration, " +
+                "film_mpa_id, film_like_count) VALUES ('Film', 'Description', '2000-01-01', 100, 1, 5)");
+        SchemaMigrations migrations = new SchemaMigrations(jdbcTemplate);
+
+        migrations.migrate();
+
+        assertThat(jdbcTemplate.queryForList("SELECT film_like_count FROM films", Integer.class))
+                .containsExactly(0);
+        assertThat(jdbcTemplate.queryForList(SchemaMigrations.SELECT_APPLIED_MIGRATIONS, String.class))
+                .isEqualTo(List.of(SchemaMigrations.FILM_LIKE_COUNT));
+
+        // при следующем запуске счетчики уже не пересчитываются
+        jdbcTemplate.update("UPDATE films SET film_like_count = 5");
+        migrations.migrate();
+
+        assertThat(jdbcTemplate.queryForList("SELECT film_like_count FROM films", Integer.class))
+                .containsExactly(5);
+    }
+}
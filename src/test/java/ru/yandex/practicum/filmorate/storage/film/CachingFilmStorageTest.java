@@ -0,0 +1,136 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.CountingJdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.StatementRegistry;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class CachingFilmStorageTest {
+    private final JdbcTemplate jdbcTemplate;
+    private CountingJdbcTemplate countingJdbcTemplate;
+    private CachingFilmStorage filmStorage;
+    private UserStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        ReferenceDataRegistry referenceData = new ReferenceDataRegistry(jdbcTemplate);
+        StatementRegistry statements = new StatementRegistry(jdbcTemplate);
+        referenceData.load();
+        countingJdbcTemplate = new CountingJdbcTemplate(jdbcTemplate);
+        filmStorage = new CachingFilmStorage(new FilmDbStorage(countingJdbcTemplate, referenceData, statements),
+                2, Duration.ofMinutes(10));
+        userStorage = new UserDbStorage(jdbcTemplate, statements);
+
+        for (int i = 1; i <= 3; i++) {
+            filmStorage.createFilm(new Film(i, "Film №" + i, "Description about film №" + i,
+                    LocalDate.of(2000, 1, i), 100 + i,
+                    Set.of(new Genre(1, "Комедия")),
+                    new MPA(4, "R", 17), new HashSet<>()));
+        }
+
+        userStorage.createUser(new User(1, "user@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>()));
+        countingJdbcTemplate.resetQueryCount();
+    }
+
+    @Test
+    void getFilmByIdIsServedFromCache() {
+        Film film = filmStorage.getFilmById(1);
+        film.getLikes().add(100);
+        Film cachedFilm = filmStorage.getFilmById(1);
+
+        assertThat(cachedFilm.getLikes()).isEmpty();
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(3);
+        assertThat(filmStorage.getStats().hitCount()).isEqualTo(1);
+        assertThat(filmStorage.getStats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void changesInvalidateCachedFilm() {
+        filmStorage.getFilmById(1);
+        filmStorage.addLike(1, 1);
+
+        assertThat(filmStorage.getFilmById(1).getLikes()).containsExactly(1);
+
+        Film film = filmStorage.getFilmById(1);
+        film.setName("Updated film");
+        filmStorage.updateFilm(film);
+
+        assertThat(filmStorage.getFilmById(1).getName()).isEqualTo("Updated film");
+
+        filmStorage.deleteLike(1, 1);
+
+        assertThat(filmStorage.getFilmById(1).getLikes()).isEmpty();
+
+        filmStorage.deleteFilmById(1);
+
+        assertThatThrownBy(() -> filmStorage.getFilmById(1))
+                .isInstanceOf(NotFoundException.class);
+
+        filmStorage.getFilmById(2);
+        filmStorage.deleteAllFilms();
+
+        assertThatThrownBy(() -> filmStorage.getFilmById(2))
+                .isInstanceOf(NotFoundException.class);
+        assertThat(filmStorage.getStats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void cacheIsBoundedBySize() {
+        filmStorage.getFilmById(1);
+        filmStorage.getFilmById(2);
+        filmStorage.getFilmById(3);
+        filmStorage.getCache().cleanUp();
+
+        assertThat(filmStorage.getCache().estimatedSize()).isEqualTo(2);
+        assertThat(filmStorage.getStats().evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void filmChangedDuringBatchLoadIsNotCachedStale() {
+        ReferenceDataRegistry referenceData = new ReferenceDataRegistry(jdbcTemplate);
+        referenceData.load();
+        CachingFilmStorage[] cachingStorage = new CachingFilmStorage[1];
+        // фильм переименовывается, пока пакет уже прочитан, но еще не положен в кэш
+        FilmStorage racingStorage = new FilmDbStorage(jdbcTemplate, referenceData, new StatementRegistry(jdbcTemplate)) {
+            @Override
+            public List<Film> getFilmsByIds(List<Integer> ids) {
+                List<Film> loadedFilms = super.getFilmsByIds(ids);
+                Film film = super.getFilmById(1);
+                film.setName("Updated film");
+                cachingStorage[0].updateFilm(film);
+                return loadedFilms;
+            }
+        };
+        cachingStorage[0] = new CachingFilmStorage(racingStorage, 10, Duration.ofMinutes(10));
+
+        assertThat(cachingStorage[0].getFilmsByIds(List.of(1, 2)))
+                .extracting(Film::getName)
+                .containsExactly("Film №1", "Film №2");
+        assertThat(cachingStorage[0].getFilmById(1).getName()).isEqualTo("Updated film");
+    }
+}
@@ -8,11 +8,19 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeResult;
 import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Projection;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.Projections;
 import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.storage.CountingJdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.StatementRegistry;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
@@ -23,6 +31,7 @@ import java.util.Map;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @JdbcTest
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
@@ -30,6 +39,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 class FilmDbStorageTest {
     private final JdbcTemplate jdbcTemplate;
     private FilmService filmService;
+    private ReferenceDataRegistry referenceData;
+    private StatementRegistry statements;
     @Qualifier("filmDbStorage")
     private FilmStorage filmStorage;
     @Qualifier("userDbStorage")
@@ -37,9 +48,12 @@ class FilmDbStorageTest {
 
     @BeforeEach
     void setUp() {
-        userStorage = new UserDbStorage(jdbcTemplate);
-        filmStorage = new FilmDbStorage(jdbcTemplate, userStorage);
-        filmService = new FilmService(filmStorage);
+        statements = new StatementRegistry(jdbcTemplate);
+        userStorage = new UserDbStorage(jdbcTemplate, statements);
+        referenceData = new ReferenceDataRegistry(jdbcTemplate);
+        referenceData.load();
+        filmStorage = new FilmDbStorage(jdbcTemplate, referenceData, statements);
+        filmService = new FilmService(filmStorage, userStorage);
     }
 
     @Test
@@ -126,6 +140,30 @@ class FilmDbStorageTest {
                 .isEqualTo(film1);
     }
 
+    @Test
+    void updateFilmGenres() {
+        Film film1 = new Film(1, "Film №1", "Description about film №1",
+                LocalDate.of(1984, 3, 15), 127,
+                Set.of(new Genre(1, "Комедия"), new Genre(2, "Драма")),
+                new MPA(4, "R", 17), new HashSet<>());
+
+        filmStorage.createFilm(film1);
+        filmStorage.updateFilm(film1);
+        film1.setGenres(Set.of(new Genre(2, "Драма"), new Genre(6, "Боевик")));
+        filmStorage.updateFilm(film1);
+
+        assertThat(filmStorage.getFilmById(1).getGenres())
+                .containsExactly(new Genre(2, "Драма"), new Genre(6, "Боевик"));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM films_genres WHERE film_id = 1",
+                Integer.class))
+                .isEqualTo(2);
+
+        film1.setGenres(new HashSet<>());
+        filmStorage.updateFilm(film1);
+
+        assertThat(filmStorage.getFilmById(1).getGenres()).isEmpty();
+    }
+
     @Test
     void deleteFilmById() {
         Film film1 = new Film(1, "Film №1", "Description about film №1",
@@ -252,6 +290,83 @@ class FilmDbStorageTest {
                 .isEmpty();
     }
 
+    @Test
+    void addAndDeleteLikeAreIdempotent() {
+        Film film1 = new Film(1, "Film №1", "Description about film №1",
+                LocalDate.of(1984, 3, 15), 127,
+                Set.of(new Genre(1, "Комедия")),
+                new MPA(4, "R", 17), new HashSet<>());
+        filmStorage.createFilm(film1);
+
+        User user1 = new User(1, "user@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>());
+        User user2 = new User(2, "user2@email.ru", "vasya321", "Vasya Ivanov",
+                LocalDate.of(1992, 2, 2), new HashSet<>());
+        userStorage.createUser(user1);
+        userStorage.createUser(user2);
+
+        assertThat(filmStorage.addLike(1, 1).getLikeCount()).isEqualTo(1);
+        assertThat(filmStorage.addLike(1, 2).getLikeCount()).isEqualTo(2);
+        assertThat(filmStorage.addLike(1, 2).getLikeCount()).isEqualTo(2);
+        assertThatThrownBy(() -> filmStorage.addLike(1, 99))
+                .isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> filmStorage.addLike(99, 1))
+                .isInstanceOf(NotFoundException.class);
+
+        LikeResult likeResult = filmStorage.deleteLike(1, 1);
+
+        assertThat(likeResult.getLikeCount()).isEqualTo(1);
+        assertThat(likeResult.getFilm()).isNull();
+        assertThat(filmStorage.deleteLike(1, 1).getLikeCount()).isEqualTo(1);
+        assertThatThrownBy(() -> filmStorage.deleteLike(99, 1))
+                .isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> filmStorage.deleteLike(1, 99))
+                .isInstanceOf(NotFoundException.class)
+                .hasMessage("Пользователь с id 99 не найден");
+        assertThat(filmService.addLike(1, 1, true).getFilm().getLikes())
+                .containsExactlyInAnyOrder(1, 2);
+    }
+
+    @Test
+    void addAndDeleteLikeReadOnlyTheCounter() {
+        CountingJdbcTemplate countingJdbcTemplate = new CountingJdbcTemplate(jdbcTemplate);
+        FilmDbStorage countingFilmStorage = new FilmDbStorage(countingJdbcTemplate, referenceData, statements);
+        filmStorage.createFilm(new Film(1, "Film №1", "Description", LocalDate.of(2000, 1, 1), 100,
+                Set.of(), new MPA(1, "G", 0), new HashSet<>()));
+        userStorage.createUser(new User(1, "user1@email.ru", "user1", "User 1",
+                LocalDate.of(1990, 1, 1), new HashSet<>()));
+
+        // фильм и пользователь проверяются ограничениями таблицы, читается только новый счетчик
+        assertThat(countingFilmStorage.addLike(1, 1).getLikeCount()).isEqualTo(1);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(1);
+
+        countingJdbcTemplate.resetQueryCount();
+        assertThat(countingFilmStorage.deleteLike(1, 1).getLikeCount()).isEqualTo(0);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(1);
+    }
+
+    @Test
+    void addLikesResolvesConflictsInOneQuery() {
+        CountingJdbcTemplate countingJdbcTemplate = new CountingJdbcTemplate(jdbcTemplate);
+        FilmDbStorage countingFilmStorage = new FilmDbStorage(countingJdbcTemplate, referenceData, statements);
+        for (int i = 1; i <= 2; i++) {
+            filmStorage.createFilm(new Film(i, "Film №" + i, "Description", LocalDate.of(2000, 1, i), 100,
+                    Set.of(), new MPA(1, "G", 0), new HashSet<>()));
+            userStorage.createUser(new User(i, "user" + i + "@email.ru", "user" + i, "User " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(2, 2);
+        countingJdbcTemplate.resetQueryCount();
+
+        boolean[] added = countingFilmStorage.addLikes(List.of(new FilmLike(1, 1), new FilmLike(1, 2),
+                new FilmLike(2, 2), new FilmLike(2, 99), new FilmLike(99, 1), new FilmLike(2, 1)));
+
+        assertThat(added).containsExactly(true, true, true, false, false, true);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(1);
+        assertThat(filmStorage.getFilmLikeCounts()).containsEntry(1, 2).containsEntry(2, 2);
+    }
+
     @Test
     void getPopularFilms() {
         Film film1 = new Film(1, "Film №1", "Description about film №1",
@@ -328,6 +443,231 @@ class FilmDbStorageTest {
                 .contains(likedFilm3, likedFilm1, likedFilm5);
     }
 
+    @Test
+    void getPopularFilmsUsesLikeCounter() {
+        Film film1 = new Film(1, "Film №1", "Description about film №1",
+                LocalDate.of(1984, 3, 15), 127,
+                Set.of(new Genre(1, "Комедия")),
+                new MPA(4, "R", 17), new HashSet<>());
+        Film film2 = new Film(2, "Film №2", "Description about film №2",
+                LocalDate.of(1998, 11, 12), 98,
+                Set.of(new Genre(3, "Мультфильм")),
+                new MPA(2, "PG", 0), new HashSet<>());
+        Film film3 = new Film(3, "Film №3", "Description about film №3",
+                LocalDate.of(2011, 4, 23), 162,
+                Set.of(new Genre(4, "Триллер")),
+                new MPA(5, "NC-17", 18), new HashSet<>());
+
+        filmStorage.createFilm(film1);
+        filmStorage.createFilm(film2);
+        filmStorage.createFilm(film3);
+
+        User user1 = new User(1, "user@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>());
+        User user2 = new User(2, "user2@email.ru", "vasya321", "Vasya Ivanov",
+                LocalDate.of(1992, 2, 2), new HashSet<>());
+        userStorage.createUser(user1);
+        userStorage.createUser(user2);
+
+        filmStorage.addLikeToFilm(2, 1);
+        filmStorage.addLikeToFilm(2, 2);
+        filmStorage.addLikeToFilm(3, 2);
+        filmStorage.deleteLikeFromFilm(2, 2);
+        userStorage.deleteUserById(1);
+
+        assertThat(filmStorage.getPopularFilms(10))
+                .extracting(Film::getId)
+                .containsExactly(3, 1, 2);
+        assertThat(jdbcTemplate.queryForList("SELECT film_like_count FROM films ORDER BY film_id", Integer.class))
+                .containsExactly(0, 0, 1);
+    }
+
+    @Test
+    void getFilmsQueryCountDoesNotDependOnFilmsCount() {
+        CountingJdbcTemplate countingJdbcTemplate = new CountingJdbcTemplate(jdbcTemplate);
+        FilmStorage countingFilmStorage = new FilmDbStorage(countingJdbcTemplate, referenceData, statements);
+
+        for (int i = 1; i <= 10; i++) {
+            filmStorage.createFilm(new Film(i, "Film №" + i, "Description about film №" + i,
+                    LocalDate.of(2000, 1, i), 100 + i,
+                    Set.of(new Genre(1, "Комедия"), new Genre(i % 6 + 1, "")),
+                    new MPA(i % 5 + 1, "", 0), new HashSet<>()));
+        }
+
+        User user1 = new User(1, "user@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>());
+        userStorage.createUser(user1);
+        filmStorage.addLikeToFilm(3, 1);
+        filmStorage.addLikeToFilm(7, 1);
+
+        List<Film> allFilms = countingFilmStorage.getFilms();
+
+        assertThat(allFilms).hasSize(10);
+        assertThat(allFilms.get(0).getGenres()).hasSize(2);
+        assertThat(allFilms.get(2).getLikes()).containsExactly(1);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(3);
+
+        countingJdbcTemplate.resetQueryCount();
+        List<Film> popularFilms = countingFilmStorage.getPopularFilms(2);
+
+        assertThat(popularFilms).hasSize(2);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(3);
+
+        countingJdbcTemplate.resetQueryCount();
+        Film foundFilm = countingFilmStorage.getFilmById(7);
+
+        assertThat(foundFilm.getLikes()).containsExactly(1);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(3);
+    }
+
+    @Test
+    void projectionSkipsNotRequestedCollections() {
+        CountingJdbcTemplate countingJdbcTemplate = new CountingJdbcTemplate(jdbcTemplate);
+        FilmStorage countingFilmStorage = new FilmDbStorage(countingJdbcTemplate, referenceData, statements);
+
+        for (int i = 1; i <= 3; i++) {
+            filmStorage.createFilm(new Film(i, "Film №" + i, "Description about film №" + i,
+                    LocalDate.of(2000, 1, i), 100 + i,
+                    Set.of(new Genre(1, "Комедия")),
+                    new MPA(1, "G", 0), new HashSet<>()));
+        }
+        userStorage.createUser(new User(1, "user@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>()));
+        filmStorage.addLikeToFilm(2, 1);
+
+        Projection projection = Projections.parse("id,name,likeCount", null,
+                Projections.FILM_FIELDS, Projections.FILM_RELATIONS);
+        List<Film> films = countingFilmStorage.getFilms(projection);
+
+        assertThat(films).extracting(Film::getGenres).containsOnlyNulls();
+        assertThat(films).extracting(Film::getLikes).containsOnlyNulls();
+        assertThat(films).extracting(Film::getLikeCount).containsExactly(0, 1, 0);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(1);
+
+        countingJdbcTemplate.resetQueryCount();
+        projection = Projections.parse("id", "genres", Projections.FILM_FIELDS, Projections.FILM_RELATIONS);
+        films = countingFilmStorage.getFilmsByIds(List.of(2, 1), projection);
+
+        assertThat(projection.getFields()).containsExactlyInAnyOrder("id", "genres");
+        assertThat(films.get(0).getGenres()).extracting(Genre::getId).containsExactly(1);
+        assertThat(films.get(0).getLikes()).isNull();
+        assertThat(films.get(0).getLikeCount()).isEqualTo(1);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(2);
+
+        assertThatThrownBy(() -> Projections.parse("id,rating", null,
+                Projections.FILM_FIELDS, Projections.FILM_RELATIONS))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> Projections.parse(null, "friends",
+                Projections.FILM_FIELDS, Projections.FILM_RELATIONS))
+                .isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    void keyedQueriesDoNotScanTables() {
+        Object filmIds = new Object[]{1, 2};
+
+        assertUsesIndexes(FilmDbStorage.SELECT_FILM_BY_ID, 1);
+        assertUsesIndexes(FilmDbStorage.SELECT_FILMS_BY_IDS, filmIds);
+        assertUsesIndexes(FilmDbStorage.SELECT_FILMS_AFTER_ID, 1, 10);
+        assertUsesIndexes(FilmDbStorage.SELECT_POPULAR_FILMS, 10);
+        assertUsesIndexes(FilmDbStorage.SELECT_FILMS + " WHERE TRUE" + FilmDbStorage.FILTER_BY_GENRE
+                + FilmDbStorage.FILTER_BY_MPA + FilmDbStorage.ORDER_BY_POPULARITY, 1, 1, 10);
+        assertUsesIndexes(FilmDbStorage.SELECT_FILMS + " WHERE TRUE" + FilmDbStorage.FILTER_BY_RELEASE_YEAR
+                + FilmDbStorage.ORDER_BY_POPULARITY, LocalDate.of(2000, 1, 1), LocalDate.of(2001, 1, 1), 10);
+        assertUsesIndexes(FilmDbStorage.SELECT_GENRES_BY_FILM_IDS, filmIds);
+        assertUsesIndexes(FilmDbStorage.SELECT_LIKES_BY_FILM_IDS, filmIds);
+        assertUsesIndexes(FilmDbStorage.UPDATE_FILM, "Film", "Description", LocalDate.of(2000, 1, 1), 100, 1, 1);
+        assertUsesIndexes(FilmDbStorage.DELETE_FILM_BY_ID, 1);
+        assertUsesIndexes(FilmDbStorage.SELECT_GENRE_IDS_BY_FILM_ID, 1);
+        assertUsesIndexes(FilmDbStorage.DELETE_FILM_GENRE, 1, 1);
+        assertUsesIndexes(FilmDbStorage.DELETE_LIKE, 1, 1);
+        assertUsesIndexes(FilmDbStorage.INCREMENT_LIKE_COUNT, 1);
+        assertUsesIndexes(FilmDbStorage.DECREMENT_LIKE_COUNT, 1);
+        assertUsesIndexes(FilmDbStorage.SELECT_LIKES_BY_FILM_ID, 1);
+        assertUsesIndexes(FilmDbStorage.SELECT_USER_COUNT_BY_ID, 1);
+        assertUsesIndexes(FilmDbStorage.ADD_TO_LIKE_COUNT, 1, 1);
+        assertUsesIndexes(FilmDbStorage.RECOUNT_LIKES, 1, 1);
+        assertUsesIndexes(FilmDbStorage.INSERT_LIKE, 1, 1);
+        assertUsesIndexes(FilmDbStorage.INSERT_NEW_LIKE, 1, 1);
+        assertUsesIndexes(FilmDbStorage.SELECT_LIKES_BY_FILM_IDS_AND_USER_IDS, filmIds, new Object[]{1, 2});
+        assertUsesIndexes(FilmDbStorage.SELECT_LIKE_COUNT, 1);
+        assertUsesIndexes(FilmDbStorage.SELECT_INCREMENTED_LIKE_COUNT, 1);
+        assertUsesIndexes(FilmDbStorage.SELECT_DECREMENTED_LIKE_COUNT, 1);
+        // запросы популярных с фильтрами, которыми отвечают фасетные рейтинги до построения, -
+        // по составным индексам films_genres (genre_id, film_id) и films (film_mpa_id, film_release_date)
+        assertUsesIndexes(FilmDbStorage.SELECT_FILMS + " WHERE TRUE" + FilmDbStorage.FILTER_BY_GENRE
+                + FilmDbStorage.ORDER_BY_POPULARITY, 1, 10);
+        assertUsesIndexes(FilmDbStorage.SELECT_FILMS + " WHERE TRUE" + FilmDbStorage.FILTER_BY_MPA
+                + FilmDbStorage.FILTER_BY_RELEASE_YEAR + FilmDbStorage.ORDER_BY_POPULARITY,
+                1, LocalDate.of(2000, 1, 1), LocalDate.of(2001, 1, 1), 10);
+        assertUsesIndexes(FilmDbStorage.SELECT_FILMS + " WHERE TRUE" + FilmDbStorage.FILTER_BY_GENRE
+                + FilmDbStorage.FILTER_BY_MPA + FilmDbStorage.FILTER_BY_RELEASE_YEAR
+                + FilmDbStorage.ORDER_BY_POPULARITY, 1, 1, LocalDate.of(2000, 1, 1), LocalDate.of(2001, 1, 1), 10);
+    }
+
+    @Test
+    void referenceDataIsServedFromMemory() {
+        CountingJdbcTemplate countingJdbcTemplate = new CountingJdbcTemplate(jdbcTemplate);
+        FilmStorage countingFilmStorage = new FilmDbStorage(countingJdbcTemplate, referenceData, statements);
+
+        assertThat(countingFilmStorage.getAllGenres()).hasSize(6);
+        assertThat(countingFilmStorage.getGenreById(2)).isEqualTo(new Genre(2, "Драма"));
+        assertThat(countingFilmStorage.getAllMPA()).hasSize(5);
+        assertThat(countingFilmStorage.getMPAById(3)).isEqualTo(new MPA(3, "PG-13", 13));
+        assertThatThrownBy(() -> countingFilmStorage.getGenreById(7))
+                .isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> countingFilmStorage.getMPAById(6))
+                .isInstanceOf(NotFoundException.class);
+        assertThat(countingJdbcTemplate.getQueryCount()).isZero();
+
+        Film film1 = new Film(1, "Film №1", "Description about film №1",
+                LocalDate.of(1984, 3, 15), 127,
+                Set.of(new Genre(1, null)),
+                new MPA(4, null, 0), new HashSet<>());
+        filmService.validate(film1, "добавить");
+        filmStorage.createFilm(film1);
+        Film foundFilm = filmStorage.getFilmById(1);
+
+        assertThat(film1.getMpa()).isEqualTo(new MPA(4, "R", 17));
+        assertThat(foundFilm.getMpa()).isSameAs(referenceData.getMPAById(4));
+        assertThat(foundFilm.getGenres()).singleElement().isSameAs(referenceData.getGenreById(1));
+
+        film1.setMpa(new MPA(6, null, 0));
+        assertThatThrownBy(() -> filmService.validate(film1, "обновить"))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Не удалось обновить фильм, т.к. рейтинг возрастного ограничения с id 6 не найден.");
+
+        film1.setMpa(new MPA(4, null, 0));
+        film1.setGenres(Set.of(new Genre(7, null)));
+        assertThatThrownBy(() -> filmService.validate(film1, "обновить"))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Не удалось обновить фильм, т.к. жанр с id 7 не найден.");
+    }
+
+    @Test
+    void exportQueriesAreSortedByIndexes() {
+        assertSortedByIndex(FilmDbStorage.SELECT_FILMS_ORDERED_BY_ID);
+        assertSortedByIndex(FilmDbStorage.SELECT_GENRES_ORDERED_BY_FILM_ID);
+        assertSortedByIndex(FilmDbStorage.SELECT_LIKES_ORDERED_BY_FILM_ID);
+    }
+
+    // порядок дает индекс, поэтому БД не собирает и не сортирует всю таблицу перед выдачей
+    private void assertSortedByIndex(String query) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + query, String.class);
+
+        assertThat(plan)
+                .as("План запроса %s", query)
+                .containsIgnoringCase("index sorted");
+    }
+
+    private void assertUsesIndexes(String query, Object... params) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + query, String.class, params);
+
+        assertThat(plan)
+                .as("План запроса %s", query)
+                .doesNotContainIgnoringCase("tableScan");
+    }
+
     @Test
     void getAllGenres() {
         List<Genre> allGenres = filmStorage.getAllGenres();
@@ -0,0 +1,151 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryFilmStorageTest {
+    private static final int THREADS = 8;
+    private static final int USERS = 200;
+
+    private UserStorage userStorage;
+    private FilmStorage filmStorage;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        Film.resetCount();
+        User.resetCount();
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        executor = Executors.newFixedThreadPool(THREADS);
+
+        for (int i = 1; i <= USERS; i++) {
+            userStorage.createUser(new User(null, "user" + i + "@email.ru", "user" + i, "User " + i,
+                    LocalDate.of(1990, 1, 1), new HashSet<>()));
+        }
+    }
+
+    @AfterEach
+    void clean() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        Film.resetCount();
+        User.resetCount();
+    }
+
+    @Test
+    void concurrentCreateFilmGivesUniqueIds() throws Exception {
+        runConcurrently(thread -> {
+            for (int i = 0; i < 500; i++) {
+                filmStorage.createFilm(newFilm());
+            }
+        });
+
+        List<Film> films = filmStorage.getFilms();
+
+        assertThat(films).hasSize(THREADS * 500);
+        assertThat(films).extracting(Film::getId).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void concurrentLikesAreNotLost() throws Exception {
+        filmStorage.createFilm(newFilm());
+        filmStorage.createFilm(newFilm());
+
+        // каждый поток лайкает всеми пользователями, часть лайков со второго фильма снимается
+        runConcurrently(thread -> {
+            for (int userId = 1; userId <= USERS; userId++) {
+                filmStorage.addLike(1, userId);
+                filmStorage.addLike(2, userId);
+
+                if (userId % 2 == 0) {
+                    filmStorage.deleteLike(2, userId);
+                }
+            }
+        });
+
+        assertThat(filmStorage.getFilmById(1).getLikes()).hasSize(USERS);
+        assertThat(filmStorage.getFilmById(2).getLikes()).allMatch(userId -> userId % 2 == 1);
+        assertThat(filmStorage.getFilmLikeCounts()).containsEntry(1, USERS);
+        assertThat(filmStorage.getPopularFilms(1)).extracting(Film::getId).containsExactly(1);
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+
+        for (int thread = 0; thread < THREADS; thread++) {
+            int threadNumber = thread;
+            Callable<Void> callable = () -> {
+                start.await();
+                task.run(threadNumber);
+                return null;
+            };
+            futures.add(executor.submit(callable));
+        }
+
+        start.countDown();
+
+        for (Future<Void> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void getFilmsAfterId() {
+        for (int i = 0; i < 5; i++) {
+            filmStorage.createFilm(newFilm());
+        }
+        filmStorage.deleteFilmById(3);
+
+        assertThat(filmStorage.getFilmsAfterId(0, 2)).extracting(Film::getId).containsExactly(1, 2);
+        assertThat(filmStorage.getFilmsAfterId(2, 2)).extracting(Film::getId).containsExactly(4, 5);
+        assertThat(filmStorage.getFilmsAfterId(5, 2)).isEmpty();
+    }
+
+    @Test
+    void updateFilmKeepsLikes() {
+        Film film = filmStorage.createFilm(newFilm());
+        filmStorage.addLike(film.getId(), 1);
+
+        Film updatedFilm = newFilm();
+        updatedFilm.setId(film.getId());
+        updatedFilm.setName("Updated film");
+        filmStorage.updateFilm(updatedFilm);
+
+        assertThat(filmStorage.getFilmById(film.getId()).getName()).isEqualTo("Updated film");
+        assertThat(filmStorage.getFilmById(film.getId()).getLikes()).containsExactly(1);
+    }
+
+    private Film newFilm() {
+        return new Film(null, "Film", "Description",
+                LocalDate.of(2000, 1, 1), 100,
+                Set.of(new Genre(1, "Комедия")),
+                new MPA(4, "R", 17), new HashSet<>());
+    }
+
+    private interface ThreadTask {
+        void run(int thread);
+    }
+}
@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LikeChangeBufferTest {
+    private final LikeChangeBuffer buffer = new LikeChangeBuffer();
+
+    @Test
+    void changesAreGroupedByFilmAndCancelOut() {
+        buffer.add(new LikeChange(1, 1, true));
+        buffer.add(new LikeChange(1, 2, true));
+        buffer.add(new LikeChange(2, 1, false));
+        buffer.add(new LikeChange(1, 1, false));
+
+        assertThat(buffer.size()).isEqualTo(2);
+        assertThat(buffer.getChanges(1)).containsExactly(new LikeChange(1, 2, true));
+        assertThat(buffer.getChanges(2)).containsExactly(new LikeChange(2, 1, false));
+        assertThat(buffer.getChanges(3)).isEmpty();
+        assertThat(buffer.getAllChanges()).hasSize(2);
+    }
+
+    @Test
+    void filmAndUserChangesAreRemoved() {
+        buffer.add(new LikeChange(1, 1, true));
+        buffer.add(new LikeChange(1, 2, true));
+        buffer.add(new LikeChange(2, 1, true));
+        buffer.add(new LikeChange(3, 3, true));
+
+        buffer.removeUser(1);
+        assertThat(buffer.size()).isEqualTo(2);
+        assertThat(buffer.getChanges(2)).isEmpty();
+
+        buffer.removeFilm(1);
+        assertThat(buffer.size()).isEqualTo(1);
+        assertThat(buffer.getAllChanges()).containsExactly(new LikeChange(3, 3, true));
+
+        buffer.removeFilm(3);
+        assertThat(buffer.isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,294 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Projection;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.user.UserDeletedEvent;
+import ru.yandex.practicum.filmorate.storage.StatementRegistry;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class WriteBehindLikeStorageTest {
+    private final JdbcTemplate jdbcTemplate;
+    private ReferenceDataRegistry referenceData;
+    private StatementRegistry statements;
+    private FilmDbStorage filmDbStorage;
+    private WriteBehindLikeStorage filmStorage;
+    private UserStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        referenceData = new ReferenceDataRegistry(jdbcTemplate);
+        statements = new StatementRegistry(jdbcTemplate);
+        referenceData.load();
+        filmDbStorage = new FilmDbStorage(jdbcTemplate, referenceData, statements);
+        filmStorage = new WriteBehindLikeStorage(filmDbStorage, 3, 100, false);
+        userStorage = new UserDbStorage(jdbcTemplate, statements);
+
+        for (int i = 1; i <= 2; i++) {
+            filmStorage.createFilm(new Film(i, "Film №" + i, "Description about film №" + i,
+                    LocalDate.of(2000, 1, i), 100 + i,
+                    Set.of(new Genre(1, "Комедия")),
+                    new MPA(4, "R", 17), new HashSet<>()));
+        }
+
+        for (int i = 1; i <= 3; i++) {
+            userStorage.createUser(new User(i, "user" + i + "@email.ru", "user" + i, "User " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+    }
+
+    @Test
+    void likesAreVisibleBeforeFlush() {
+        assertThat(filmStorage.addLike(1, 1).getLikeCount()).isEqualTo(1);
+        assertThat(filmStorage.addLike(1, 2).getLikeCount()).isEqualTo(2);
+        assertThat(filmStorage.addLike(1, 2).getLikeCount()).isEqualTo(2);
+
+        assertThat(filmStorage.getPendingChangesCount()).isEqualTo(2);
+        assertThat(filmDbStorage.getFilmById(1).getLikes()).isEmpty();
+        assertThat(filmStorage.getFilmById(1).getLikes()).containsExactlyInAnyOrder(1, 2);
+        assertThat(filmStorage.getFilmsByIds(List.of(2, 1)))
+                .extracting(film -> film.getLikes().size())
+                .containsExactly(0, 2);
+
+        filmStorage.flush();
+
+        assertThat(filmStorage.getPendingChangesCount()).isZero();
+        assertThat(filmDbStorage.getFilmById(1).getLikes()).containsExactlyInAnyOrder(1, 2);
+        assertThat(filmDbStorage.getFilmLikeCounts()).containsEntry(1, 2).containsEntry(2, 0);
+    }
+
+    @Test
+    void likeAndUnlikeAreCoalesced() {
+        filmStorage.addLike(1, 1);
+        filmStorage.flush();
+
+        filmStorage.addLike(2, 1);
+        filmStorage.deleteLike(2, 1);
+        filmStorage.deleteLike(1, 1);
+        filmStorage.addLike(1, 1);
+
+        assertThat(filmStorage.getPendingChangesCount()).isZero();
+
+        assertThat(filmStorage.deleteLike(1, 1).getLikeCount()).isZero();
+        assertThat(filmStorage.getFilmById(1).getLikes()).isEmpty();
+
+        filmStorage.flush();
+
+        assertThat(filmDbStorage.getFilmLikeCounts()).containsEntry(1, 0).containsEntry(2, 0);
+    }
+
+    @Test
+    void unknownFilmOrUserIsRejectedImmediately() {
+        assertThatThrownBy(() -> filmStorage.addLike(999, 1))
+                .isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> filmStorage.addLike(1, 999))
+                .isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> filmStorage.deleteLike(999, 1))
+                .isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> filmStorage.deleteLike(1, 999))
+                .isInstanceOf(NotFoundException.class)
+                .hasMessage("Пользователь с id 999 не найден");
+        assertThat(filmStorage.getPendingChangesCount()).isZero();
+    }
+
+    @Test
+    void fullBufferIsFlushedByRequest() {
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(1, 2);
+        filmStorage.addLike(1, 3);
+        filmStorage.addLike(2, 1);
+
+        assertThat(filmStorage.getPendingChangesCount()).isEqualTo(1);
+        assertThat(filmDbStorage.getFilmLikeCounts()).containsEntry(1, 3).containsEntry(2, 0);
+    }
+
+    @Test
+    void bulkReadsFlushBuffer() {
+        filmStorage.addLike(2, 1);
+
+        assertThat(filmStorage.getPopularFilms(1))
+                .extracting(Film::getId)
+                .containsExactly(2);
+        assertThat(filmStorage.getPendingChangesCount()).isZero();
+    }
+
+    @Test
+    void changesOfDeletedUserAreDropped() {
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(1, 2);
+        filmStorage.addLike(2, 2);
+
+        // пользователь удален до записи буфера: пакет падает, остальные лайки пишутся по одному
+        userStorage.deleteUserById(2);
+        filmStorage.flush();
+
+        assertThat(filmDbStorage.getFilmById(1).getLikes()).containsExactly(1);
+        assertThat(filmDbStorage.getFilmLikeCounts()).containsEntry(1, 1).containsEntry(2, 0);
+
+        filmStorage.addLike(2, 3);
+        filmStorage.onUserDeleted(new UserDeletedEvent(3, Set.of()));
+        userStorage.deleteUserById(3);
+        filmStorage.flush();
+
+        assertThat(filmStorage.getFilmById(2).getLikes()).isEmpty();
+        assertThatThrownBy(() -> filmStorage.addLike(1, 3))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void deletedFilmLikesAreDropped() {
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(2, 1);
+        filmStorage.deleteFilmById(1);
+
+        assertThat(filmStorage.getPendingChangesCount()).isEqualTo(1);
+
+        filmStorage.flush();
+
+        assertThat(filmDbStorage.getFilmLikeCounts()).containsOnlyKeys(2).containsEntry(2, 1);
+    }
+
+    @Test
+    void flushOnWriteStoresLikeBeforeReturning() {
+        WriteBehindLikeStorage flushingStorage = new WriteBehindLikeStorage(filmDbStorage, 100, 100, true);
+
+        assertThat(flushingStorage.addLike(1, 1).getLikeCount()).isEqualTo(1);
+        assertThat(flushingStorage.getPendingChangesCount()).isZero();
+        assertThat(filmDbStorage.getFilmById(1).getLikes()).containsExactly(1);
+
+        assertThat(flushingStorage.deleteLike(1, 1).getLikeCount()).isZero();
+        assertThat(filmDbStorage.getFilmLikeCounts()).containsEntry(1, 0);
+    }
+
+    // потоки пишут через свои соединения, поэтому тест идет без общей транзакции
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void likeCountIsNotCountedTwiceWhileBatchIsWritten() throws InterruptedException {
+        CountDownLatch batchWritten = new CountDownLatch(1);
+        CountDownLatch releaseFlush = new CountDownLatch(1);
+        WriteBehindLikeStorage blockingStorage = new WriteBehindLikeStorage(
+                new FilmDbStorage(jdbcTemplate, referenceData, statements) {
+                    @Override
+                    public void saveLikeChanges(List<LikeChange> changes) {
+                        super.saveLikeChanges(changes);
+                        batchWritten.countDown();
+                        awaitQuietly(releaseFlush);
+                    }
+                }, 100, 100, false);
+        Projection countOnly = new Projection(null, Set.of());
+
+        blockingStorage.addLike(1, 1);
+        Thread flusher = new Thread(blockingStorage::flush);
+        flusher.start();
+        batchWritten.await();
+        // кэш лайкнувших сброшен: счетчик берется из БД, где пакет уже записан, но еще числится в буфере
+        blockingStorage.onUserDeleted(new UserDeletedEvent(3, Set.of()));
+
+        AtomicInteger likeCount = new AtomicInteger();
+        Thread reader = new Thread(() -> likeCount.set(blockingStorage.getFilmById(1, countOnly).getLikeCount()));
+        reader.start();
+        while (reader.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+        releaseFlush.countDown();
+        reader.join();
+        flusher.join();
+
+        assertThat(likeCount.get()).isEqualTo(1);
+        assertThat(blockingStorage.getFilmById(1, countOnly).getLikeCount()).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void concurrentLikesMatchDatabaseAfterFlush() throws InterruptedException {
+        int threads = 3;
+        // у каждого потока свой пользователь, поэтому итог по его лайкам известен
+        Map<Integer, Set<Integer>> expectedLikes = Map.of(1, ConcurrentHashMap.newKeySet(),
+                2, ConcurrentHashMap.newKeySet());
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+
+        Future<?> flusher = executor.submit(() -> {
+            while (running.get()) {
+                filmStorage.flush();
+            }
+        });
+        for (int i = 1; i <= threads; i++) {
+            int userId = i;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(userId);
+                for (int j = 0; j < 200; j++) {
+                    int filmId = 1 + random.nextInt(2);
+                    if (random.nextBoolean()) {
+                        filmStorage.addLike(filmId, userId);
+                        expectedLikes.get(filmId).add(userId);
+                    } else {
+                        filmStorage.deleteLike(filmId, userId);
+                        expectedLikes.get(filmId).remove(userId);
+                    }
+                    filmStorage.getFilmById(filmId, new Projection(null, Set.of()));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> writer : writers) {
+            assertThatCode(writer::get).doesNotThrowAnyException();
+        }
+        running.set(false);
+        assertThatCode(flusher::get).doesNotThrowAnyException();
+        executor.shutdown();
+        filmStorage.flush();
+
+        for (int filmId = 1; filmId <= 2; filmId++) {
+            Set<Integer> likes = expectedLikes.get(filmId);
+            assertThat(filmDbStorage.getFilmById(filmId).getLikes()).containsExactlyInAnyOrderElementsOf(likes);
+            assertThat(filmDbStorage.getFilmLikeCounts()).containsEntry(filmId, likes.size());
+            assertThat(filmStorage.getFilmById(filmId, new Projection(null, Set.of())).getLikeCount())
+                    .isEqualTo(likes.size());
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
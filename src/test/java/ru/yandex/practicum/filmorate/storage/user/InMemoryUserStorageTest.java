@@ -0,0 +1,129 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryUserStorageTest {
+    private static final int THREADS = 8;
+
+    private UserStorage userStorage;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        User.resetCount();
+        userStorage = new InMemoryUserStorage();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void clean() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        User.resetCount();
+    }
+
+    @Test
+    void concurrentCreateUserGivesUniqueIds() throws Exception {
+        runConcurrently(thread -> {
+            for (int i = 0; i < 500; i++) {
+                userStorage.createUser(newUser(thread * 1000 + i));
+            }
+        });
+
+        List<User> users = userStorage.getUsers();
+
+        assertThat(users).hasSize(THREADS * 500);
+        assertThat(users).extracting(User::getId).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void concurrentFriendshipChangesStayMutual() throws Exception {
+        for (int i = 1; i <= 20; i++) {
+            userStorage.createUser(newUser(i));
+        }
+
+        // встречные добавления и удаления одних и тех же пар пользователей
+        runConcurrently(thread -> {
+            for (int i = 0; i < 2000; i++) {
+                int userId = (i + thread) % 20 + 1;
+                int friendId = (i * 7 + thread * 3) % 20 + 1;
+
+                if (userId == friendId) {
+                    continue;
+                }
+
+                if ((i + thread) % 3 == 0) {
+                    userStorage.deleteFriend(friendId, userId);
+                } else {
+                    userStorage.addFriend(userId, friendId);
+                }
+            }
+        });
+
+        for (User user : userStorage.getUsers()) {
+            for (Integer friendId : user.getFriends()) {
+                assertThat(userStorage.getUserById(friendId).getFriends())
+                        .as("Дружба %d и %d должна быть взаимной", user.getId(), friendId)
+                        .contains(user.getId());
+            }
+        }
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+
+        for (int thread = 0; thread < THREADS; thread++) {
+            int threadNumber = thread;
+            Callable<Void> callable = () -> {
+                start.await();
+                task.run(threadNumber);
+                return null;
+            };
+            futures.add(executor.submit(callable));
+        }
+
+        start.countDown();
+
+        for (Future<Void> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void getUsersAfterId() {
+        for (int i = 1; i <= 5; i++) {
+            userStorage.createUser(newUser(i));
+        }
+        userStorage.deleteUserById(3);
+
+        assertThat(userStorage.getUsersAfterId(0, 2)).extracting(User::getId).containsExactly(1, 2);
+        assertThat(userStorage.getUsersAfterId(2, 2)).extracting(User::getId).containsExactly(4, 5);
+        assertThat(userStorage.getUsersAfterId(5, 2)).isEmpty();
+    }
+
+    private User newUser(int number) {
+        return new User(null, "user" + number + "@email.ru", "user" + number, "User " + number,
+                LocalDate.of(1990, 1, 1), new HashSet<>());
+    }
+
+    private interface ThreadTask {
+        void run(int thread);
+    }
+}
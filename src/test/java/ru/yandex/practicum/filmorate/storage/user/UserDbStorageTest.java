@@ -1,5 +1,10 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,10 +13,25 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.Projection;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.BulkImport;
+import ru.yandex.practicum.filmorate.service.PageCursor;
+import ru.yandex.practicum.filmorate.service.Projections;
 import ru.yandex.practicum.filmorate.service.user.UserService;
+import ru.yandex.practicum.filmorate.storage.CountingJdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.StatementRegistry;
 
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +43,13 @@ import static org.assertj.core.api.Assertions.*;
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
 class UserDbStorageTest {
+    // модули как у ObjectMapper из Spring Boot: конструкторы моделей без @JsonCreator
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .addModule(new ParameterNamesModule(JsonCreator.Mode.DEFAULT))
+            .addModule(new JavaTimeModule())
+            .build();
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
     private final JdbcTemplate jdbcTemplate;
     private UserService userService;
     @Qualifier("userDbStorage")
@@ -30,8 +57,8 @@ class UserDbStorageTest {
 
     @BeforeEach
     void setUp() {
-        userStorage = new UserDbStorage(jdbcTemplate);
-        userService = new UserService(userStorage);
+        userStorage = new UserDbStorage(jdbcTemplate, new StatementRegistry(jdbcTemplate));
+        userService = new UserService(userStorage, event -> { });
     }
 
     @Test
@@ -63,6 +90,50 @@ class UserDbStorageTest {
                 .contains(user1, user2, user3, user4, user5);
     }
 
+    @Test
+    void exportUsersMergesFriends() {
+        for (int i = 1; i <= 4; i++) {
+            userStorage.createUser(new User(i, "user" + i + "@email.ru", "user" + i, "User " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+        userStorage.addFriend(1, 3);
+        userStorage.addFriend(1, 4);
+        userStorage.addFriend(4, 1);
+        userStorage.deleteFriend(1, 3);
+        userStorage.deleteUserById(3);
+
+        List<User> exportedUsers = new ArrayList<>();
+        userService.exportUsers(exportedUsers::add);
+
+        assertThat(exportedUsers)
+                .extracting(User::getId)
+                .containsExactly(1, 2, 4);
+        assertThat(exportedUsers).containsExactlyElementsOf(userStorage.getUsersByIds(List.of(1, 2, 4)));
+        assertThat(exportedUsers.get(0).getFriends()).containsExactly(4);
+    }
+
+    @Test
+    void getUsersPageByCursor() {
+        for (int i = 1; i <= 5; i++) {
+            userStorage.createUser(new User(i, "user" + i + "@email.ru", "user" + i, "User " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+        userStorage.addFriend(2, 1);
+
+        Page<User> firstPage = userService.getUsersPage(null, 3);
+        Page<User> lastPage = userService.getUsersPage(firstPage.getNextCursor(), 3);
+
+        assertThat(firstPage.getItems()).extracting(User::getId).containsExactly(1, 2, 3);
+        assertThat(firstPage.getItems().get(1).getFriends()).containsExactly(1);
+        assertThat(lastPage.getItems()).extracting(User::getId).containsExactly(4, 5);
+        assertThat(lastPage.getNextCursor()).isNull();
+
+        assertThatThrownBy(() -> userService.getUsersPage(firstPage.getNextCursor() + "x", 3))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> userService.getUsersPage(null, PageCursor.MAX_LIMIT + 1))
+                .isInstanceOf(ValidationException.class);
+    }
+
     @Test
     void getUserById() {
         // Подготавливаем данные для теста
@@ -289,4 +360,225 @@ class UserDbStorageTest {
                 .hasSameSizeAs(List.of(user5))
                 .contains(user5);
     }
-}
\ No newline at end of file
+
+    @Test
+    void getCommonFriendListFromFriendIndex() {
+        for (int i = 1; i <= 6; i++) {
+            userService.createUser(new User(i, "user" + i + "@email.ru", "login" + i, "Name " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+
+        for (int i = 3; i <= 6; i++) {
+            userService.addFriend(1, i);
+            userService.addFriend(2, i);
+        }
+
+        assertThat(userService.getCommonFriendIds(1, 2)).containsExactly(3, 4, 5, 6);
+        assertThat(userService.getCommonFriendList(1, 2, 1, 2))
+                .extracting(User::getId)
+                .containsExactly(4, 5);
+        assertThat(userService.getCommonFriendList(1, 2, 3, 10))
+                .extracting(User::getId)
+                .containsExactly(6);
+
+        userService.deleteFriend(2, 4);
+
+        assertThat(userService.getCommonFriendIds(1, 2)).containsExactly(3, 5, 6);
+
+        userService.deleteFriend(1, 5);
+        userService.deleteFriend(2, 5);
+        userService.deleteUserById(5);
+
+        assertThat(userService.getCommonFriendIds(1, 2)).containsExactly(3, 6);
+        assertThat(userService.getCommonFriendList(1, 2))
+                .extracting(User::getId)
+                .containsExactly(3, 6);
+        assertThatThrownBy(() -> userService.getCommonFriendIds(1, 5))
+                .isInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> userService.getCommonFriendList(1, 2, -1, null))
+                .isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    void getFriendSuggestions() {
+        for (int i = 1; i <= 5; i++) {
+            userService.createUser(new User(i, "user" + i + "@email.ru", "login" + i, "Name " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+
+        userService.addFriend(1, 2);
+        userService.addFriend(1, 3);
+        userService.addFriend(2, 4);
+        userService.addFriend(3, 4);
+        userService.addFriend(3, 5);
+
+        assertThat(userService.getFriendSuggestions(1, 10))
+                .extracting(User::getId)
+                .containsExactly(4, 5);
+        assertThat(userService.getFriendSuggestions(5, 10)).isEmpty();
+        assertThatThrownBy(() -> userService.getFriendSuggestions(1, 0))
+                .isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    void autocompleteUsersByLoginAndEmail() {
+        userService.createUser(new User(1, "vanya@email.ru", "vanya123", "Ivan Petrov",
+                LocalDate.of(1990, 1, 1), new HashSet<>()));
+        userService.createUser(new User(2, "ivan@email.ru", "vasya321", "Vasya Ivanov",
+                LocalDate.of(1992, 2, 2), new HashSet<>()));
+        userService.addFriend(2, 1);
+
+        assertThat(userService.autocompleteUsers("va", 10))
+                .extracting(User::getId)
+                .containsExactly(2, 1);
+        assertThat(userService.autocompleteUsers("iva", 10))
+                .extracting(User::getId)
+                .containsExactly(2);
+
+        User user = userService.getUserById(1);
+        user.setLogin("ivan_the_first");
+        userService.updateUser(user);
+
+        assertThat(userService.autocompleteUsers("iva", 10))
+                .extracting(User::getId)
+                .containsExactly(2, 1);
+
+        userService.deleteFriend(2, 1);
+        userService.deleteUserById(1);
+
+        assertThat(userService.autocompleteUsers("iva", 10))
+                .extracting(User::getId)
+                .containsExactly(2);
+    }
+
+    @Test
+    void getUsersQueryCountDoesNotDependOnUsersCount() {
+        CountingJdbcTemplate countingJdbcTemplate = new CountingJdbcTemplate(jdbcTemplate);
+        UserStorage countingUserStorage = new UserDbStorage(countingJdbcTemplate,
+                new StatementRegistry(countingJdbcTemplate));
+
+        for (int i = 1; i <= 10; i++) {
+            userStorage.createUser(new User(i, "user" + i + "@email.ru", "login" + i, "Name " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+
+        for (int i = 2; i <= 10; i++) {
+            userStorage.addFriend(1, i);
+            userStorage.addFriend(i, 1);
+        }
+        userStorage.addFriend(2, 3);
+
+        List<User> allUsers = countingUserStorage.getUsers();
+
+        assertThat(allUsers).hasSize(10);
+        assertThat(allUsers.get(0).getFriends()).hasSize(9);
+        assertThat(allUsers.get(1).getFriends()).containsExactlyInAnyOrder(1, 3);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(2);
+
+        countingJdbcTemplate.resetQueryCount();
+        List<User> friends = countingUserStorage.getFriendList(1);
+
+        assertThat(friends).hasSize(9);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(2);
+
+        countingJdbcTemplate.resetQueryCount();
+        List<User> commonFriends = countingUserStorage.getCommonFriendList(2, 4);
+
+        assertThat(commonFriends).hasSize(1);
+        assertThat(commonFriends.get(0).getFriends()).hasSize(9);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(2);
+    }
+
+    @Test
+    void projectionSkipsFriendsQuery() {
+        CountingJdbcTemplate countingJdbcTemplate = new CountingJdbcTemplate(jdbcTemplate);
+        UserStorage countingUserStorage = new UserDbStorage(countingJdbcTemplate,
+                new StatementRegistry(countingJdbcTemplate));
+
+        for (int i = 1; i <= 3; i++) {
+            userStorage.createUser(new User(i, "user" + i + "@email.ru", "login" + i, "Name " + i,
+                    LocalDate.of(1990, 1, i), new HashSet<>()));
+        }
+        userStorage.addFriend(1, 2);
+        userStorage.addFriend(1, 3);
+
+        Projection projection = Projections.parse("id,login", null,
+                Projections.USER_FIELDS, Projections.USER_RELATIONS);
+
+        assertThat(countingUserStorage.getUsers(projection)).extracting(User::getFriends).containsOnlyNulls();
+        assertThat(countingUserStorage.getFriendList(1, projection))
+                .extracting(User::getId)
+                .containsExactlyInAnyOrder(2, 3);
+        assertThat(countingJdbcTemplate.getQueryCount()).isEqualTo(2);
+
+        projection = Projections.parse("id", "friends", Projections.USER_FIELDS, Projections.USER_RELATIONS);
+
+        assertThat(countingUserStorage.getUserById(1, projection).getFriends()).containsExactlyInAnyOrder(2, 3);
+        assertThat(userService.getUserById(1, Projection.ALL).getFriends()).hasSize(2);
+    }
+
+    @Test
+    void keyedQueriesDoNotScanTables() {
+        assertUsesIndexes(UserDbStorage.SELECT_USER_BY_ID, 1);
+        assertUsesIndexes(UserDbStorage.SELECT_USERS_BY_IDS, (Object) new Object[]{1, 2});
+        assertUsesIndexes(UserDbStorage.SELECT_USERS_AFTER_ID, 1, 10);
+        assertUsesIndexes(UserDbStorage.SELECT_FRIENDS_BY_USER_IDS, (Object) new Object[]{1, 2});
+        assertUsesIndexes(UserDbStorage.SELECT_FRIEND_LIST, 1);
+        assertUsesIndexes(UserDbStorage.SELECT_COMMON_FRIEND_LIST, 1, 2);
+        assertUsesIndexes(UserDbStorage.UPDATE_USER, "user@email.ru", "login", "name", LocalDate.of(1990, 1, 1), 1);
+        assertUsesIndexes(UserDbStorage.DELETE_USER_BY_ID, 1);
+        assertUsesIndexes(UserDbStorage.DECREMENT_LIKE_COUNT_BY_USER, 1);
+        assertUsesIndexes(UserDbStorage.MERGE_FRIENDSHIP, 1, 2);
+        assertUsesIndexes(UserDbStorage.DELETE_FRIENDSHIP, 1, 2);
+        assertUsesIndexes(UserDbStorage.SELECT_LIKED_FILM_IDS, 1);
+        assertUsesIndexes(UserDbStorage.MERGE_FRIENDSHIP_IF_EXISTS, 1, 2);
+        assertUsesIndexes(UserDbStorage.INSERT_USER_IF_UNIQUE, "user@email.ru", "login", "name",
+                LocalDate.of(1990, 1, 1), "user@email.ru", "login");
+    }
+
+    private void assertUsesIndexes(String query, Object... params) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + query, String.class, params);
+
+        assertThat(plan)
+                .as("План запроса %s", query)
+                .doesNotContainIgnoringCase("tableScan");
+    }
+
+    @Test
+    void importUsersAndFriendsInBatches() {
+        ImportResult usersResult = userService.importUsers(bulkImport(false,
+                "{\"email\": \"user@email.ru\", \"login\": \"vanya123\", \"birthday\": \"1990-01-01\"}",
+                "{\"email\": \"user2@email.ru\", \"login\": \"vasya321\", \"name\": \"Vasya\", " +
+                        "\"birthday\": \"1992-02-02\"}",
+                "{\"email\": \"user@email.ru\", \"login\": \"other\", \"birthday\": \"1990-01-01\"}",
+                "{\"email\": \"user3@email.ru\", \"login\": \"with space\", \"birthday\": \"1990-01-01\"}",
+                "{\"email\": \"user3@email.ru\", \"login\": \"vasya321\", \"birthday\": \"1990-01-01\"}"));
+
+        // дубликат внутри того же пакета отсекается так же, как уже сохраненный
+        assertThat(usersResult.getImported()).isEqualTo(2);
+        assertThat(usersResult.getErrors())
+                .extracting(ImportResult.ImportError::getLine)
+                .containsExactlyInAnyOrder(3, 4, 5);
+        assertThat(userStorage.getUsers()).extracting(User::getId).containsExactly(1, 2);
+        assertThat(userStorage.getUserById(1).getName()).isEqualTo("vanya123");
+
+        ImportResult friendsResult = userService.importFriends(bulkImport(true,
+                "userId,friendId",
+                "1,2",
+                "1,2",
+                "2,2",
+                "1,99"));
+
+        assertThat(friendsResult.getImported()).isEqualTo(2);
+        assertThat(friendsResult.getErrors())
+                .extracting(ImportResult.ImportError::getLine)
+                .containsExactly(4, 5);
+        assertThat(userStorage.getUserById(1).getFriends()).containsExactly(2);
+        assertThat(userStorage.getUserById(2).getFriends()).isEmpty();
+    }
+
+    private static BulkImport bulkImport(boolean csv, String... lines) {
+        byte[] body = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        return new BulkImport(new ByteArrayInputStream(body), csv, OBJECT_MAPPER, VALIDATOR);
+    }
+}